@@ -0,0 +1,128 @@
+/**
+ * The ClassLoadingBenchmark class compares the two layouts batch builds can write: one class file per
+ * program in a directory, and a single jar written with {@code --jar}. For each layout it measures writing
+ * every compiled program, and loading every program with a new class loader over the written output, the
+ * way a JVM starting a program finds its class. The programs are written by the seeded ProgramGenerator
+ * and compiled once before measuring. Run it with {@code ant benchmark-classloading} or, for example:
+ *
+ * <pre>
+ * java org.openjdk.jmh.Main ClassLoadingBenchmark -p programs=1000 -p layout=directory,jar
+ * </pre>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassLoadingBenchmark {
+    private static final Path ROOT = Paths.get("build", "benchmarks", "classloading");
+
+    @Param({"directory", "jar"})
+    public String layout;
+
+    @Param({"100", "1000"})
+    public int programs;
+
+    @Param({"4KB"})
+    public String size;
+
+    private String[] classNames;
+    private byte[][] classes;
+    private Path output;
+
+    /**
+     * Generates and compiles the programs and writes them once in the layout, for the loading benchmark.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        KccCompiler compiler = new KccCompiler(new CompilerOptions());
+        long bytes = ProgramGenerator.parseSize(size);
+        classNames = new String[programs];
+        classes = new byte[programs][];
+        for (int i = 0; i < programs; i++) {
+            classNames[i] = "Program" + i;
+            String source = new ProgramGenerator(2, 10, i).generate(bytes);
+            classes[i] = compiler.compile(CharStreams.fromString(source), classNames[i]);
+        }
+        output = "jar".equals(layout) ? ROOT.resolve("programs.jar") : ROOT.resolve("classes");
+        write();
+    }
+
+    /**
+     * Writes every compiled program in the layout, replacing what was written before.
+     *
+     * @return the path written to
+     * @throws IOException if the output cannot be written
+     */
+    @Benchmark
+    public Path write() throws IOException {
+        if ("jar".equals(layout)) {
+            Files.createDirectories(ROOT);
+            try (ProgramJar jar = new ProgramJar(output)) {
+                for (int i = 0; i < programs; i++) {
+                    jar.add(classNames[i], classes[i]);
+                }
+            }
+        } else {
+            Path directory = output.resolve("output");
+            Files.createDirectories(directory);
+            for (int i = 0; i < programs; i++) {
+                Files.write(directory.resolve(classNames[i] + ".class"), classes[i]);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Loads every program with a new class loader over the written output. The classes are loaded and
+     * defined but not initialized.
+     *
+     * @return the number of classes loaded
+     * @throws Exception if a class cannot be found
+     */
+    @Benchmark
+    public int load() throws Exception {
+        URL[] urls = {output.toUri().toURL()};
+        int loaded = 0;
+        try (URLClassLoader loader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader())) {
+            for (String className : classNames) {
+                Class.forName("output." + className, false, loader);
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+}
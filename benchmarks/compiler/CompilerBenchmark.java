@@ -0,0 +1,240 @@
+/**
+ * The CompilerBenchmark class measures each phase of the compiler on its own with JMH: lexing, parsing,
+ * registering the declarations in a SymbolTable, building the IR with the KccVisitor, lowering the
+ * optimized IR through the BytecodeGenerator, and writing the class with getBytecode(). Every phase
+ * starts from the output of the previous one, prepared outside the measurement.
+ *
+ * <p>The input is either a file such as {@code tests/program4.kc} or a size such as {@code 1MB}, for which
+ * the ProgramGenerator writes a program with the given nesting depth and number of variables. The phases
+ * that change their input, code generation and getBytecode(), get a fresh copy before every invocation.
+ * Run the suite with {@code ant benchmark-compiler}, which adds the GC profiler to report the allocation
+ * rate of every phase, or pass JMH options directly, for example:
+ *
+ * <pre>
+ * java org.openjdk.jmh.Main CompilerBenchmark -p input=100KB,1MB -p depth=2,6 -prof gc
+ * </pre>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import lexparse.KnightCodeLexer;
+import lexparse.KnightCodeParser;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompilerBenchmark {
+
+    @Param({"tests/allfeatures.kc", "tests/program4.kc", "1KB", "100KB", "1MB"})
+    public String input;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"20"})
+    public int variables;
+
+    @Param({"-O2"})
+    public String flags;
+
+    private String source;
+    private List<? extends Token> tokens;
+    private KnightCodeParser.FileContext tree;
+    private CompilerOptions options;
+    private PassManager passManager;
+
+    /**
+     * Prepares the input of every phase: the source text, its tokens and its parse tree.
+     *
+     * @throws IOException if the input file cannot be read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (input.endsWith(".kc")) {
+            source = Files.readString(Paths.get(input));
+        } else {
+            source = new ProgramGenerator(depth, variables, 1).generate(ProgramGenerator.parseSize(input));
+        }
+        options = CompilerOptions.parse(flags.split(" "));
+        passManager = PassManager.forOptions(options);
+
+        KnightCodeLexer lexer = new KnightCodeLexer(CharStreams.fromString(source));
+        tokens = lexer.getAllTokens();
+        tree = parse();
+    }
+
+    /**
+     * Lexes the source into tokens.
+     *
+     * @return the number of tokens
+     */
+    @Benchmark
+    public int lex() {
+        KnightCodeLexer lexer = new KnightCodeLexer(CharStreams.fromString(source));
+        int count = 0;
+        while (lexer.nextToken().getType() != Token.EOF) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Parses the tokens of the source with SLL prediction, as the compiler does first.
+     *
+     * @return the parse tree
+     */
+    @Benchmark
+    public KnightCodeParser.FileContext parse() {
+        KnightCodeParser parser = new KnightCodeParser(new CommonTokenStream(new ListTokenSource(tokens)));
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        return parser.file();
+    }
+
+    /**
+     * Registers the declared variables in a new symbol table.
+     *
+     * @return the symbol table
+     */
+    @Benchmark
+    public SymbolTable symbols() {
+        SymbolTable symbolTable = new SymbolTable();
+        new KccVisitor(symbolTable).visitDeclare(tree.declare());
+        return symbolTable;
+    }
+
+    /**
+     * Builds the IR of the program from the parse tree.
+     *
+     * @return the IR
+     */
+    @Benchmark
+    public Ir.Program visit() {
+        return new KccVisitor(new SymbolTable()).visitFile(tree);
+    }
+
+    /**
+     * Runs the optimization passes over a fresh IR of the program.
+     *
+     * @param program the IR, rebuilt before every invocation
+     * @return the optimized IR
+     */
+    @Benchmark
+    public Ir.Program optimize(FreshProgram program) {
+        passManager.run(program.program);
+        return program.program;
+    }
+
+    /**
+     * Splits the optimized IR into methods and lowers it through a new BytecodeGenerator.
+     *
+     * @param program the optimized IR, rebuilt before every invocation
+     * @return the generator holding the class
+     */
+    @Benchmark
+    public BytecodeGenerator codegen(OptimizedProgram program) {
+        return lower(program.program);
+    }
+
+    /**
+     * Writes the class held by a generator into bytes.
+     *
+     * @param generated the generator holding the lowered program, rebuilt before every invocation
+     * @return the bytecode
+     */
+    @Benchmark
+    public byte[] getBytecode(GeneratedProgram generated) {
+        return generated.bytecodeGenerator.getBytecode();
+    }
+
+    /**
+     * Splits and lowers an optimized program as the compiler does. The peephole optimizer and the splitter
+     * are new for every program so that their reports do not grow during the benchmark.
+     *
+     * @param program the optimized IR
+     * @return the generator holding the class
+     */
+    private BytecodeGenerator lower(Ir.Program program) {
+        PeepholeOptimizer peephole = options.getOptimizationLevel() >= 1 ? new PeepholeOptimizer() : null;
+        BytecodeGenerator bytecodeGenerator = new BytecodeGenerator(options, peephole);
+        new MethodSplitter(options.getMaxMethodSize()).split(program);
+        bytecodeGenerator.startClass(program.name);
+        new IrLowering(bytecodeGenerator).lower(program);
+        return bytecodeGenerator;
+    }
+
+    /**
+     * The IR of the program as the visitor builds it.
+     */
+    @State(Scope.Thread)
+    public static class FreshProgram {
+        Ir.Program program;
+
+        @Setup(Level.Invocation)
+        public void setUp(CompilerBenchmark benchmark) {
+            program = benchmark.visit();
+        }
+    }
+
+    /**
+     * The IR of the program after the optimization passes.
+     */
+    @State(Scope.Thread)
+    public static class OptimizedProgram {
+        Ir.Program program;
+
+        @Setup(Level.Invocation)
+        public void setUp(CompilerBenchmark benchmark) {
+            program = benchmark.visit();
+            benchmark.passManager.run(program);
+        }
+    }
+
+    /**
+     * A generator the program has been lowered through, ready to write the class.
+     */
+    @State(Scope.Thread)
+    public static class GeneratedProgram {
+        BytecodeGenerator bytecodeGenerator;
+
+        @Setup(Level.Invocation)
+        public void setUp(CompilerBenchmark benchmark) {
+            Ir.Program program = benchmark.visit();
+            benchmark.passManager.run(program);
+            bytecodeGenerator = benchmark.lower(program);
+        }
+    }
+}
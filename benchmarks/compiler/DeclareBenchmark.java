@@ -0,0 +1,208 @@
+/**
+ * The DeclareBenchmark class measures the compiler on programs with very large DECLARE sections, where
+ * the cost of the symbol table and of finding storage for every variable dominates. The program declares
+ * the requested number of integers and a sixteenth as many strings, sets each of them, and then adds up
+ * the integers and copies the strings down a chain. In the shared layout the two halves end up in
+ * different split methods, so every variable is shared: the first variables become static fields and the
+ * rest are spilled to the static arrays of the class. In the local layout each variable is set and used
+ * by neighbouring statements, so nearly every variable stays a local variable of one split method and is
+ * named in the debug information.
+ *
+ * <p>Before measuring, the program is compiled with verification, run, and its output checked, so a
+ * broken spill fails the benchmark. Every method generated for it, and for a program of 40,000 integers
+ * whose accesses are mostly spilled, must also stay within the size HotSpot still JIT-compiles. Run it with {@code ant benchmark-declare} or, for example:
+ *
+ * <pre>
+ * java org.openjdk.jmh.Main DeclareBenchmark -p variables=100000 -p layout=local -prof gc
+ * </pre>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import lexparse.KnightCodeParser;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeclareBenchmark {
+    // HotSpot does not JIT-compile methods of more bytes of bytecode than this
+    private static final int HUGE_METHOD_LIMIT = 8000;
+    // Integers declared by the program checked before every trial, enough for most of them to be spilled
+    private static final int SPILLED_VARIABLES = 40000;
+
+    @Param({"1000", "100000", "250000"})
+    public int variables;
+
+    @Param({"shared", "local"})
+    public String layout;
+
+    @Param({"-O2"})
+    public String flags;
+
+    private String source;
+    private KnightCodeParser.FileContext tree;
+    private KccCompiler compiler;
+
+    /**
+     * Writes the program, checks what it prints and parses it for the phases measured on their own.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = program(variables, "local".equals(layout));
+        compiler = new KccCompiler(CompilerOptions.parse(flags.split(" ")));
+        tree = compiler.parse(CharStreams.fromString(source), new ErrorReporter("declare"));
+
+        String[] verified = (flags + " --verify").split(" ");
+        KnightCode.Program program = KnightCode.load(source, CompilerOptions.parse(verified));
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        try {
+            program.run();
+        } finally {
+            System.setOut(originalOut);
+        }
+        String expected = sum(variables) + System.lineSeparator() + "text 0" + System.lineSeparator();
+        if (!expected.equals(output.toString())) {
+            throw new IllegalStateException("The program with " + variables + " variables printed " + output);
+        }
+        checkMethodSizes(variables, compiler.compile(CharStreams.fromString(source), null));
+        checkMethodSizes(SPILLED_VARIABLES, compiler.compile(CharStreams.fromString(program(SPILLED_VARIABLES, false)), null));
+    }
+
+    /**
+     * Checks that every method of a generated class is small enough to be JIT-compiled.
+     *
+     * @param variables the number of integer variables of the program
+     * @param bytecode the bytecode of the class
+     * @throws IllegalStateException if a method is too large
+     */
+    private static void checkMethodSizes(int variables, byte[] bytecode) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(bytecode).accept(classNode, 0);
+        for (MethodNode method : classNode.methods) {
+            int size = PeepholeOptimizer.codeSize(method);
+            if (size > HUGE_METHOD_LIMIT) {
+                throw new IllegalStateException("The program with " + variables + " variables has a method "
+                        + method.name + " of " + size + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Registers the declared variables in a new symbol table.
+     *
+     * @return the symbol table
+     */
+    @Benchmark
+    public SymbolTable declare() {
+        SymbolTable symbolTable = new SymbolTable();
+        new KccVisitor(symbolTable).visitDeclare(tree.declare());
+        return symbolTable;
+    }
+
+    /**
+     * Registers the declarations and builds the IR, resolving every variable reference.
+     *
+     * @return the IR
+     */
+    @Benchmark
+    public Ir.Program resolve() {
+        return new KccVisitor(new SymbolTable()).visitFile(tree);
+    }
+
+    /**
+     * Compiles the program from its source text.
+     *
+     * @return the bytecode
+     */
+    @Benchmark
+    public byte[] compile() {
+        return compiler.compile(CharStreams.fromString(source), null);
+    }
+
+    /**
+     * Writes the program for a number of integer variables.
+     *
+     * @param variables the number of integer variables
+     * @param local true to set and use each variable in neighbouring statements, false to set every
+     *              variable before any of them is used
+     * @return the source text
+     */
+    static String program(int variables, boolean local) {
+        int strings = Math.max(2, variables / 16);
+        StringBuilder sb = new StringBuilder(variables * 64);
+        sb.append("PROGRAM Declare\nDECLARE\n    INTEGER total\n");
+        for (int i = 0; i < variables; i++) {
+            sb.append("    INTEGER v").append(i).append('\n');
+        }
+        for (int i = 0; i < strings; i++) {
+            sb.append("    STRING s").append(i).append('\n');
+        }
+        sb.append("BEGIN\n");
+        if (local) {
+            for (int i = 0; i < variables; i++) {
+                sb.append("    SET v").append(i).append(" := ").append(i % 1000).append('\n');
+                sb.append("    SET total := total + v").append(i).append('\n');
+            }
+            sb.append("    SET s0 := \"text 0\"\n");
+        } else {
+            for (int i = 0; i < variables; i++) {
+                sb.append("    SET v").append(i).append(" := ").append(i % 1000).append('\n');
+            }
+            for (int i = 0; i < strings; i++) {
+                sb.append("    SET s").append(i).append(" := \"text ").append(i).append("\"\n");
+            }
+            for (int i = 0; i < variables; i++) {
+                sb.append("    SET total := total + v").append(i).append('\n');
+            }
+        }
+        for (int i = 1; i < strings; i++) {
+            sb.append("    SET s").append(i).append(" := s").append(i - 1).append('\n');
+        }
+        sb.append("    PRINT total\n    PRINT s").append(strings - 1).append("\nEND\n");
+        return sb.toString();
+    }
+
+    /**
+     * Returns the total the program prints.
+     *
+     * @param variables the number of integer variables
+     * @return the sum of the values the variables are set to
+     */
+    private static int sum(int variables) {
+        int total = 0;
+        for (int i = 0; i < variables; i++) {
+            total += i % 1000;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * The OptimizationCheck class checks that the optimizer does not change what programs do. Every KnightCode
+ * file found under the given paths is compiled in memory without optimization and with the given flags,
+ * both builds are run over the same input, and what they print, along with the exception they end with,
+ * must be the same. The loop optimization report of the optimized builds is printed at the end. Run it
+ * with {@code ant check-optimizer} or, for example:
+ *
+ * <pre>
+ * java compiler.OptimizationCheck "-O2 --buffered-output" tests benchmarks/kernels
+ * </pre>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.antlr.v4.runtime.CharStreams;
+
+public class OptimizationCheck {
+    // The standard input of every program: numbers for the READs of integers and a name for strings
+    private static final byte[] INPUT = "20\n5\nKnight\n4\n3\n2\n9\n1\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Checks every KnightCode file under the paths.
+     *
+     * @param args the flags of the optimized build, then the files or directories to check, tests by default
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        String flags = args.length > 0 ? args[0] : "-O2";
+        List<String> paths = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : List.of("tests");
+        KccCompiler plain = new KccCompiler(new CompilerOptions());
+        KccCompiler optimizing = new KccCompiler(CompilerOptions.parse((flags + " --opt-report").split(" ")));
+
+        int failures = 0;
+        List<Path> files = new ArrayList<>();
+        for (String path : paths) {
+            try (Stream<Path> found = Files.walk(Paths.get(path))) {
+                files.addAll(found.filter(file -> file.toString().endsWith(".kc")).sorted().collect(Collectors.toList()));
+            }
+        }
+        PrintStream originalOut = System.out;
+        for (Path file : files) {
+            String expected;
+            String actual;
+            try {
+                expected = run(plain, file);
+                actual = run(optimizing, file);
+            } finally {
+                System.setOut(originalOut);
+                KnightRuntime.setOutput(originalOut);
+            }
+            if (expected.equals(actual)) {
+                System.out.println("OK    " + file);
+            } else {
+                System.out.println("DIFF  " + file + "\n--- -O0\n" + expected + "--- " + flags + "\n" + actual);
+                failures++;
+            }
+        }
+        System.out.print(optimizing.optimizationReport().lines()
+                .dropWhile(line -> !line.startsWith("Loop optimization"))
+                .takeWhile(line -> !line.startsWith("Method") && !line.contains(": estimated "))
+                .collect(Collectors.joining("\n", "", "\n")));
+        System.out.println(files.size() - failures + " of " + files.size() + " programs print the same with " + flags);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compiles a program and runs it over the input.
+     *
+     * @param compiler the compiler
+     * @param file the KnightCode file
+     * @return what the program printed, followed by the exception it ended with, if any
+     * @throws IOException if the file cannot be read
+     */
+    private static String run(KccCompiler compiler, Path file) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(output);
+        System.setOut(printStream);
+        KnightRuntime.setOutput(output);
+        KnightRuntime.setInput(new ByteArrayInputStream(INPUT));
+        String ending = "";
+        try {
+            byte[] bytecode = compiler.compile(CharStreams.fromPath(file), null);
+            KnightCode.define(bytecode).run();
+        } catch (RuntimeException e) {
+            ending = "ended with " + e + "\n";
+        }
+        printStream.flush();
+        return output.toString(StandardCharsets.UTF_8) + ending;
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * The ProgramGenerator class writes synthetic KnightCode programs for the benchmarks. A program declares
+ * the requested number of integer variables and a few strings, then repeats random statements until it
+ * reaches the requested size: SET statements with arithmetic expressions, PRINT statements, and IF and
+ * WHILE statements nested up to the requested depth. The same seed always produces the same program.
+ *
+ * <p>The programs are valid and terminate: every WHILE loop counts down a counter of its own nesting
+ * level that no other statement assigns, and divisions are only by non-zero constants. They read no
+ * input. Large programs can be written to a file from the command line:
+ *
+ * <pre>
+ * java compiler.ProgramGenerator 10MB output/large.kc [depth] [variables] [seed]
+ * </pre>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+public class ProgramGenerator {
+    private static final int STRINGS = 4;
+
+    private final int depth;
+    private final int variables;
+    private final Random random;
+    private Appendable out;
+    private long written;
+
+    /**
+     * Constructs a new ProgramGenerator.
+     *
+     * @param depth the deepest nesting of IF and WHILE statements, 0 for straight-line programs
+     * @param variables the number of integer variables to declare
+     * @param seed the seed of the random choices
+     */
+    public ProgramGenerator(int depth, int variables, long seed) {
+        if (variables < 1) {
+            throw new IllegalArgumentException("At least one variable is needed");
+        }
+        this.depth = depth;
+        this.variables = variables;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a program of at least the given size.
+     *
+     * @param size the size of the program in characters
+     * @return the source text of the program
+     */
+    public String generate(long size) {
+        if (size > Integer.MAX_VALUE - 1024) {
+            throw new IllegalArgumentException("Programs this large must be written to a file");
+        }
+        StringBuilder sb = new StringBuilder((int) size + 1024);
+        generate(size, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Writes a program of at least the given size. The program ends as soon as it reaches the size, so it
+     * is larger by at most one top-level statement and the closing END.
+     *
+     * @param size the size of the program in characters
+     * @param destination where the source text is written
+     * @throws UncheckedIOException if writing fails
+     */
+    public void generate(long size, Appendable destination) {
+        out = destination;
+        written = 0;
+        line(0, "PROGRAM Generated");
+        line(0, "DECLARE");
+        for (int i = 0; i < variables; i++) {
+            line(1, "INTEGER v" + i);
+        }
+        for (int i = 0; i < depth; i++) {
+            line(1, "INTEGER c" + i);
+        }
+        for (int i = 0; i < STRINGS; i++) {
+            line(1, "STRING s" + i);
+        }
+        line(0, "BEGIN");
+        for (int i = 0; i < variables; i++) {
+            line(1, "SET v" + i + " := " + (random.nextInt(9) + 1));
+        }
+        for (int i = 0; i < STRINGS; i++) {
+            line(1, "SET s" + i + " := \"text " + i + "\"");
+        }
+        while (written < size) {
+            statement(0);
+        }
+        line(0, "END");
+        out = null;
+    }
+
+    /**
+     * Writes a random statement.
+     *
+     * @param level the nesting level of the statement, 0 at the top of the program
+     */
+    private void statement(int level) {
+        int choice = random.nextInt(100);
+        if (level < depth && choice < 8) {
+            decision(level);
+        } else if (level < depth && choice < 12) {
+            loop(level);
+        } else if (choice < 18) {
+            line(level + 1, "PRINT " + (random.nextBoolean() ? variable() : "s" + random.nextInt(STRINGS)));
+        } else if (choice < 20) {
+            line(level + 1, "PRINT \"line " + random.nextInt(1000) + "\"");
+        } else if (choice < 22) {
+            line(level + 1, "SET s" + random.nextInt(STRINGS) + " := \"value " + random.nextInt(1000) + "\"");
+        } else {
+            line(level + 1, "SET " + variable() + " := " + expression(3));
+        }
+    }
+
+    /**
+     * Writes an IF statement, with an ELSE branch half of the time.
+     *
+     * @param level the nesting level of the statement
+     */
+    private void decision(int level) {
+        line(level + 1, "IF " + operand() + " " + comparison() + " " + operand() + " THEN");
+        block(level + 1);
+        if (random.nextBoolean()) {
+            line(level + 1, "ELSE");
+            block(level + 1);
+        }
+        line(level + 1, "ENDIF");
+    }
+
+    /**
+     * Writes a WHILE statement running a few times, counted down by the counter of its nesting level.
+     *
+     * @param level the nesting level of the statement
+     */
+    private void loop(int level) {
+        String counter = "c" + level;
+        line(level + 1, "SET " + counter + " := " + (random.nextInt(4) + 1));
+        line(level + 1, "WHILE " + counter + " > 0 DO");
+        block(level + 1);
+        line(level + 2, "SET " + counter + " := " + counter + " - 1");
+        line(level + 1, "ENDWHILE");
+    }
+
+    /**
+     * Writes the statements of an IF or WHILE body.
+     *
+     * @param level the nesting level of the statements
+     */
+    private void block(int level) {
+        int count = random.nextInt(5) + 1;
+        for (int i = 0; i < count; i++) {
+            statement(level);
+        }
+    }
+
+    /**
+     * Returns a random arithmetic expression.
+     *
+     * @param height the largest number of operators nested in the expression
+     * @return the expression text
+     */
+    private String expression(int height) {
+        if (height == 0 || random.nextInt(3) == 0) {
+            return operand();
+        }
+        switch (random.nextInt(5)) {
+            case 0:
+                return expression(height - 1) + " + " + expression(height - 1);
+            case 1:
+                return expression(height - 1) + " - " + expression(height - 1);
+            case 2:
+                return expression(height - 1) + " * " + expression(height - 1);
+            case 3:
+                // Parenthesized so that a following * cannot bind to the divisor
+                return "(" + expression(height - 1) + " / " + (random.nextInt(9) + 1) + ")";
+            default:
+                return "(" + expression(height - 1) + ")";
+        }
+    }
+
+    /**
+     * Returns a random number or integer variable.
+     *
+     * @return the operand text
+     */
+    private String operand() {
+        return random.nextBoolean() ? variable() : Integer.toString(random.nextInt(100));
+    }
+
+    /**
+     * Returns a random integer variable.
+     *
+     * @return the variable name
+     */
+    private String variable() {
+        return "v" + random.nextInt(variables);
+    }
+
+    /**
+     * Returns a random comparison operator.
+     *
+     * @return the operator text
+     */
+    private String comparison() {
+        return new String[] {">", "<", "=", "<>"}[random.nextInt(4)];
+    }
+
+    /**
+     * Writes an indented line.
+     *
+     * @param indent the indentation level
+     * @param text the text of the line
+     */
+    private void line(int indent, String text) {
+        try {
+            for (int i = 0; i < indent; i++) {
+                out.append("    ");
+            }
+            out.append(text).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written += 4L * indent + text.length() + 1;
+    }
+
+    /**
+     * Parses a size such as {@code 1KB}, {@code 10MB} or {@code 512}.
+     *
+     * @param size the size text
+     * @return the size in bytes
+     * @throws NumberFormatException if the size is not a number with an optional KB or MB suffix
+     */
+    public static long parseSize(String size) {
+        String upper = size.toUpperCase();
+        if (upper.endsWith("MB")) {
+            return Long.parseLong(upper.substring(0, upper.length() - 2)) * 1024 * 1024;
+        } else if (upper.endsWith("KB")) {
+            return Long.parseLong(upper.substring(0, upper.length() - 2)) * 1024;
+        }
+        return Long.parseLong(upper);
+    }
+
+    /**
+     * Writes a generated program to a file.
+     *
+     * @param args the size, the output file, and optionally the nesting depth, the number of variables and
+     *             the seed
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java compiler.ProgramGenerator <size> <file.kc> [depth] [variables] [seed]");
+            System.exit(1);
+        }
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int variables = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+        try (Writer writer = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            new ProgramGenerator(depth, variables, seed).generate(parseSize(args[0]), writer);
+        }
+    }
+}
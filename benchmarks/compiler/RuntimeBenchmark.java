@@ -0,0 +1,189 @@
+/**
+ * The RuntimeBenchmark class measures how fast compiled KnightCode programs run, so that a change to the
+ * generated code comes with a measured effect. Each kernel is compiled in-process with the flags of the
+ * benchmark parameter, loaded with {@link KnightCode#load(String, CompilerOptions)} and run with its input
+ * read from memory and its output discarded. JMH reports one row per kernel and set of flags, which puts
+ * the flags side by side.
+ *
+ * <p>The kernels are the loops of {@code tests/program2.kc} and {@code tests/program4.kc}, an
+ * arithmetic-heavy nest of WHILE loops and a loop that prints integers and strings. The {@code --profile}
+ * build measures the cost of the profile counters, including printing the profile after every run. Before measuring,
+ * every kernel is also compiled with {@code -O0} and the outputs of the two builds are compared, so a
+ * flag that changes what a program prints fails the benchmark instead of making it look fast. The size of
+ * the generated class is printed and appended to {@code build/benchmarks/bytecode-sizes.csv}. Run the
+ * suite with {@code ant benchmark-runtime} or, for example:
+ *
+ * <pre>
+ * java org.openjdk.jmh.Main RuntimeBenchmark -p kernel=arithmetic -p flags=-O0,-O2
+ * </pre>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuntimeBenchmark {
+    private static final Path SIZES = Paths.get("build", "benchmarks", "bytecode-sizes.csv");
+
+    /**
+     * The source file and the standard input of every kernel.
+     */
+    private static final Map<String, String[]> KERNELS = Map.of(
+            "program2", new String[] {"tests/program2.kc", "100000\n"},
+            "program4", new String[] {"tests/program4.kc", "Knight\n20000\n20000\n5\n"},
+            "arithmetic", new String[] {"benchmarks/kernels/arithmetic.kc", "100000\n"},
+            "printing", new String[] {"benchmarks/kernels/printing.kc", "100000\n"});
+
+    @Param({"program2", "program4", "arithmetic", "printing"})
+    public String kernel;
+
+    @Param({"-O0", "-O2", "-O2 --buffered-output", "-O2 --profile"})
+    public String flags;
+
+    private KnightCode.Program program;
+    private byte[] input;
+    private final CountingOutputStream sink = new CountingOutputStream();
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+
+    /**
+     * An output stream that discards what is written and counts the bytes.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Compiles and loads the kernel, checks that it prints the same as the kernel compiled with
+     * {@code -O0}, records its bytecode size and redirects standard output and standard error, where
+     * profiled programs write their profile, to a sink.
+     *
+     * @throws IOException if the kernel cannot be read or the size cannot be recorded
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] kernelFiles = KERNELS.get(kernel);
+        if (kernelFiles == null) {
+            throw new IllegalArgumentException("Unknown kernel: " + kernel);
+        }
+        String source = Files.readString(Paths.get(kernelFiles[0]));
+        input = kernelFiles[1].getBytes(StandardCharsets.UTF_8);
+        program = KnightCode.load(source, CompilerOptions.parse(flags.split(" ")));
+
+        originalOut = System.out;
+        byte[] expected = capture(KnightCode.load(source, new CompilerOptions()));
+        byte[] actual = capture(program);
+        if (!Arrays.equals(expected, actual)) {
+            throw new IllegalStateException(kernel + " prints something different when compiled with " + flags);
+        }
+
+        int size = program.getBytecode().length;
+        originalOut.printf("%s [%s]: %d bytes of bytecode%n", kernel, flags, size);
+        Files.createDirectories(SIZES.getParent());
+        Files.writeString(SIZES, kernel + "," + flags + "," + size + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        originalErr = System.err;
+        System.setOut(new PrintStream(sink));
+        System.setErr(new PrintStream(sink));
+        KnightRuntime.setOutput(sink);
+    }
+
+    /**
+     * Restores standard output and standard error.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        KnightRuntime.setOutput(originalOut);
+    }
+
+    /**
+     * Runs the kernel once over its input.
+     *
+     * @return the number of bytes printed so far, so the output cannot be optimized away
+     */
+    @Benchmark
+    public long run() {
+        execute(program);
+        return sink.count;
+    }
+
+    /**
+     * Runs a program once and returns what it printed.
+     *
+     * @param kernelProgram the program to run
+     * @return the bytes printed
+     */
+    private byte[] capture(KnightCode.Program kernelProgram) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(output);
+        System.setOut(printStream);
+        KnightRuntime.setOutput(output);
+        try {
+            execute(kernelProgram);
+        } finally {
+            printStream.flush();
+            System.setOut(originalOut);
+            KnightRuntime.setOutput(originalOut);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Runs a program over the kernel's input.
+     *
+     * @param kernelProgram the program to run
+     */
+    private void execute(KnightCode.Program kernelProgram) {
+        KnightRuntime.setInput(new ByteArrayInputStream(input));
+        kernelProgram.run();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * The StartupTimer class measures the time to first output of a short-lived process: the time from
+ * starting the process to the first byte it writes to standard output. Standard input is closed right
+ * away and the process is stopped as soon as the first byte arrives, so programs waiting for input are
+ * timed up to their first prompt. The command runs a number of times and the minimum, median and mean
+ * are printed, which is how {@code ant benchmark-startup} compares the JVM with and without the CDS
+ * archives. For example:
+ *
+ * <pre>
+ * java compiler.StartupTimer 20 "kcc with CDS" build/cds/kcc tests/program1.kc build/cds/training/Program1
+ * </pre>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class StartupTimer {
+
+    /**
+     * Times a command.
+     *
+     * @param args the number of runs, a label for the report and the command with its arguments
+     * @throws IOException if the command cannot be started
+     * @throws InterruptedException if interrupted while waiting for the command
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.out.println("Usage: java compiler.StartupTimer <runs> <label> <command> [arguments]");
+            return;
+        }
+        int runs = Integer.parseInt(args[0]);
+        String label = args[1];
+        List<String> command = Arrays.asList(args).subList(2, args.length);
+
+        time(command); // the first run warms up the file system cache
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            nanos[i] = time(command);
+        }
+        Arrays.sort(nanos);
+        double mean = Arrays.stream(nanos).average().orElse(0);
+        System.out.println(String.format("%-32s first output after min %8.1f ms, median %8.1f ms, mean %8.1f ms (%d runs)",
+                label, nanos[0] / 1e6, nanos[runs / 2] / 1e6, mean / 1e6, runs));
+    }
+
+    /**
+     * Runs a command once until it writes its first byte to standard output.
+     *
+     * @param command the command with its arguments
+     * @return the time to the first byte in nanoseconds
+     * @throws IOException if the command cannot be started, or ends without writing anything
+     * @throws InterruptedException if interrupted while waiting for the command
+     */
+    private static long time(List<String> command) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        process.getOutputStream().close();
+        try (InputStream out = process.getInputStream()) {
+            if (out.read() < 0) {
+                throw new IOException("No output from " + String.join(" ", command));
+            }
+            return System.nanoTime() - start;
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * The TierUpBenchmark class finds the crossover point between interpreting a KnightCode program and
+ * compiling it. Every operation starts from the source text of a loop running a given number of
+ * iterations and runs it to the end with one of three engines: the interpreter alone, the interpreter
+ * compiling the loop once it is hot, and the compiler generating and loading a class for the whole program
+ * before running it. Below the crossover the interpreter wins because it skips code generation and class
+ * loading; above it the compiled loop pays for them. The rows of each engine over the iteration counts show
+ * where that happens and how close the tier-up engine stays to the better of the two.
+ *
+ * <p>By default the JVM is warm, as in a long-running process such as the compile server. Short-lived
+ * scripts start a JVM for every run, where the code generator is not compiled yet either, which is measured
+ * with single-shot runs in fresh JVMs:
+ *
+ * <pre>
+ * java org.openjdk.jmh.Main TierUpBenchmark -bm ss -f 20 -wi 0 -i 1
+ * </pre>
+ *
+ * Before measuring, every engine is run once and must print what the compiled program prints. Run the
+ * benchmark with {@code ant benchmark-tierup}.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TierUpBenchmark {
+
+    @Param({"interpreter", "tier-up", "compiler"})
+    public String engine;
+
+    @Param({"1", "100", "1000", "10000", "100000", "1000000"})
+    public int iterations;
+
+    private String source;
+    private KccCompiler compiler;
+    private CompilerOptions options;
+    private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    private PrintStream originalOut;
+
+    /**
+     * Writes the program, checks that the engine prints what the compiled program prints and redirects
+     * standard output to a sink.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = "PROGRAM Crossover\n"
+                + "DECLARE\n"
+                + "INTEGER i\n"
+                + "INTEGER sum\n"
+                + "BEGIN\n"
+                + "SET i := " + iterations + "\n"
+                + "WHILE i > 0 DO\n"
+                + "SET sum := sum + i * 3 - sum / 7\n"
+                + "SET i := i - 1\n"
+                + "ENDWHILE\n"
+                + "PRINT sum\n"
+                + "END\n";
+        String[] flags = "interpreter".equals(engine) ? new String[] {"--run", "--tier-up", "0"} : new String[] {"--run"};
+        options = CompilerOptions.parse(flags);
+        compiler = new KccCompiler(options);
+
+        originalOut = System.out;
+        System.setOut(new PrintStream(sink));
+        try {
+            KnightCode.run(source);
+            byte[] expected = sink.toByteArray();
+            sink.reset();
+            run();
+            if (!Arrays.equals(expected, sink.toByteArray())) {
+                throw new IllegalStateException("The " + engine + " engine prints something different from the compiled program");
+            }
+        } finally {
+            System.setOut(originalOut);
+        }
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Restores standard output.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    /**
+     * Runs the program from its source text with the engine.
+     *
+     * @return the number of loops the interpreter compiled, or -1 for the compiler
+     */
+    @Benchmark
+    public int run() {
+        if ("compiler".equals(engine)) {
+            KnightCode.run(source);
+            return -1;
+        }
+        Interpreter interpreter = new Interpreter(compiler.buildIr(CharStreams.fromString(source), CompileStats.forEvents("crossover")), options);
+        interpreter.run();
+        return interpreter.getCompiledLoops();
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * The BatchCompiler class compiles many KnightCode files in a single JVM. Files are compiled in parallel
+ * on a fork-join pool while a dedicated writer thread stores the finished class files, so parsing of
+ * one file overlaps with writing the class file of another. A summary with per-file and total
+ * throughput is printed when the batch completes.
+ *
+ * <p>With {@code --jar <file>} the classes are streamed into a single jar by the writer thread instead,
+ * together with the runtime support classes, a launcher and an index of the programs; see ProgramJar.
+ * The output directory argument is then left out.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchCompiler {
+    private final KccCompiler compiler;
+    private final CompileCache cache;
+    private final CompilerOptions options;
+    private final Path outputDirectory; // null when writing a jar
+    private final Path jarPath; // null when writing class files
+    private ProgramJar jar; // open while a batch is written into a jar
+    private final int threads;
+
+    /**
+     * Holds the outcome of compiling a single file.
+     */
+    static class FileResult {
+        Path source;
+        String className;
+        long sourceBytes;
+        long classBytes;
+        long compileNanos;
+        long writeNanos;
+        byte[] bytecode; // released by the writer once the class file is stored
+        String error; // null if the file compiled and was written successfully
+        CompileStats stats;
+    }
+
+    /**
+     * Constructs a new BatchCompiler.
+     *
+     * @param options the compiler options
+     * @param cache the compile cache, or null to compile every file
+     * @param outputDirectory the directory the generated class files are written to, or null when the options
+     *                        name a jar to write them to
+     */
+    public BatchCompiler(CompilerOptions options, CompileCache cache, Path outputDirectory) {
+        this.options = options;
+        this.compiler = new KccCompiler(options);
+        this.cache = cache;
+        this.outputDirectory = outputDirectory;
+        this.jarPath = options.getJar();
+        this.threads = options.getThreads();
+    }
+
+    /**
+     * Entry point for batch mode, reached through {@code java compiler/kcc --batch ...}.
+     *
+     * @param args the compiler options followed by the output directory, unless {@code --jar} is given, and
+     *             one or more .kc files or directories containing .kc files
+     */
+    public static void main(String[] args) {
+        try {
+            CompilerOptions options = CompilerOptions.parse(args);
+            List<String> arguments = options.getArguments();
+            int firstSource = options.getJar() != null ? 0 : 1;
+            if (arguments.size() < firstSource + 1) {
+                System.out.println("Usage: java compiler/kcc --batch [options] <output directory> <file.kc | directory>...");
+                System.out.println("       java compiler/kcc --batch [options] --jar <file.jar> <file.kc | directory>...");
+                return;
+            }
+
+            Path outputDirectory = firstSource == 1 ? Paths.get(arguments.get(0)) : null;
+            List<Path> sources = collectSources(arguments.subList(firstSource, arguments.size()));
+            CompileCache cache = CompileCache.open(options);
+            BatchCompiler batch = new BatchCompiler(options, cache, outputDirectory);
+            List<FileResult> results = batch.compileAll(sources);
+            if (results.stream().anyMatch(r -> r.error != null)) {
+                System.exit(1);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Error running batch compilation");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Expands the input arguments into the list of .kc files to compile. Directories are searched
+     * recursively for files ending in .kc.
+     *
+     * @param inputs the input files and directories
+     * @return the list of source files
+     * @throws IOException if a directory cannot be read
+     */
+    private static List<Path> collectSources(List<String> inputs) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    sources.addAll(walk.filter(p -> p.toString().endsWith(".kc") && Files.isRegularFile(p))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                sources.add(path);
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Compiles every source file and writes the resulting class files, or the jar holding them, then prints
+     * a summary. Sources whose class name another source also has are reported as failed instead of being
+     * compiled, since their classes would overwrite each other.
+     *
+     * @param sources the source files to compile
+     * @return the result for each file in the order given
+     * @throws IOException if the output directory cannot be created or the jar cannot be written
+     */
+    public List<FileResult> compileAll(List<Path> sources) throws IOException {
+        if (jarPath != null) {
+            jar = new ProgramJar(jarPath);
+        } else {
+            Files.createDirectories(outputDirectory);
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        List<FileResult> results = new ArrayList<>();
+        Map<String, List<Path>> sourcesByClass = new HashMap<>();
+        for (Path source : sources) {
+            sourcesByClass.computeIfAbsent(KccCompiler.extractClassName(source.toString()), name -> new ArrayList<>())
+                    .add(source);
+        }
+        try {
+            List<CompletableFuture<FileResult>> futures = new ArrayList<>();
+            for (Path source : sources) {
+                List<Path> sameClass = sourcesByClass.get(KccCompiler.extractClassName(source.toString()));
+                if (sameClass.size() > 1) {
+                    futures.add(CompletableFuture.completedFuture(duplicate(source, sameClass)));
+                    continue;
+                }
+                futures.add(CompletableFuture.supplyAsync(() -> compileFile(source), pool)
+                        .thenApplyAsync(this::writeFile, writer));
+            }
+            for (CompletableFuture<FileResult> future : futures) {
+                results.add(future.join());
+            }
+        } finally {
+            pool.shutdown();
+            writer.shutdown();
+            if (jar != null) {
+                jar.close();
+            }
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        printSummary(results, totalNanos);
+        return results;
+    }
+
+    /**
+     * Builds the failed result of a source that has the same class name as other sources of the batch.
+     *
+     * @param source the source file
+     * @param sameClass every source of the batch with that class name
+     * @return the result holding the error
+     */
+    private FileResult duplicate(Path source, List<Path> sameClass) {
+        FileResult result = new FileResult();
+        result.source = source;
+        result.className = KccCompiler.extractClassName(source.toString());
+        result.stats = CompileStats.forEvents(source.toString());
+        result.error = "Class name " + result.className + " is used by more than one source: "
+                + sameClass.stream().map(Path::toString).collect(Collectors.joining(", "));
+        return result;
+    }
+
+    /**
+     * Compiles a single file. Runs on one of the compiler threads. A file nested too deeply for the stack
+     * fails on its own rather than ending the batch.
+     *
+     * @param source the source file to compile
+     * @return the result holding the bytecode size and compile time
+     */
+    private FileResult compileFile(Path source) {
+        FileResult result = new FileResult();
+        result.source = source;
+        result.className = KccCompiler.extractClassName(source.toString());
+
+        result.stats = options.isStats() ? new CompileStats(source.toString()) : CompileStats.forEvents(source.toString());
+
+        long start = System.nanoTime();
+        try {
+            result.sourceBytes = Files.size(source);
+            byte[] bytecode = compiler.compile(source, result.className, cache, result.stats);
+            result.classBytes = bytecode.length;
+            result.compileNanos = System.nanoTime() - start;
+            result.bytecode = bytecode;
+        } catch (Exception | StackOverflowError e) {
+            result.compileNanos = System.nanoTime() - start;
+            result.error = KccCompiler.failure(e);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the class file of a compiled source, or adds it to the jar. Runs on the single writer thread.
+     *
+     * @param result the result of compiling the source
+     * @return the same result with the write time filled in
+     */
+    private FileResult writeFile(FileResult result) {
+        if (result.bytecode == null) {
+            return result;
+        }
+        long start = System.nanoTime();
+        result.stats.begin("write");
+        try {
+            if (jar != null) {
+                jar.add(result.className, result.bytecode);
+            } else {
+                Files.write(outputDirectory.resolve(result.className + ".class"), result.bytecode);
+            }
+        } catch (IOException e) {
+            result.error = "Unable to write class file: " + e.getMessage();
+        }
+        result.stats.end();
+        result.writeNanos = System.nanoTime() - start;
+        result.bytecode = null;
+        return result;
+    }
+
+    /**
+     * Prints the per-file results followed by the totals and overall throughput.
+     *
+     * @param results the results of every file in the batch
+     * @param totalNanos the wall time of the whole batch
+     */
+    private void printSummary(List<FileResult> results, long totalNanos) {
+        long sourceBytes = 0;
+        long classBytes = 0;
+        int failed = 0;
+
+        System.out.println(String.format("%-40s %10s %10s %10s %10s", "File", "Source B", "Class B", "Compile ms", "Write ms"));
+        for (FileResult r : results) {
+            if (r.error != null) {
+                failed++;
+                System.out.println(String.format("%-40s FAILED", r.source));
+                System.err.println(r.error);
+                continue;
+            }
+            sourceBytes += r.sourceBytes;
+            classBytes += r.classBytes;
+            System.out.println(String.format("%-40s %10d %10d %10.2f %10.2f", r.source, r.sourceBytes, r.classBytes,
+                    r.compileNanos / 1e6, r.writeNanos / 1e6));
+        }
+
+        double seconds = totalNanos / 1e9;
+        System.out.println("----------------------------------------------------------------------------------------------------------------------------------");
+        System.out.println(String.format("%d files compiled, %d failed, %d threads, %.2f ms total", results.size() - failed,
+                failed, threads, totalNanos / 1e6));
+        System.out.println(String.format("Throughput: %.1f files/s, %.1f KB/s of source, %d bytes of bytecode written",
+                results.size() / seconds, sourceBytes / 1024.0 / seconds, classBytes));
+        System.out.println(String.format("%d of %d files needed the full LL parser after SLL parsing failed",
+                compiler.getFallbackCount(), compiler.getParseCount()));
+        if (jar != null) {
+            System.out.println(String.format("%d programs and the runtime written to %s", jar.size(), jar.getPath()));
+        }
+        if (cache != null) {
+            System.out.println(cache);
+        }
+        if (options.isOptimizationReport()) {
+            System.out.print(compiler.optimizationReport());
+        }
+        if (options.isStats()) {
+            CompileStats total = new CompileStats(null);
+            for (FileResult r : results) {
+                total.add(r.stats);
+            }
+            System.out.print(total.report());
+        }
+    }
+}
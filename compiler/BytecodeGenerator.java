@@ -3,6 +3,28 @@
  * It uses the ASM library to generate Java bytecode dynamically based on the parsed
  * source code of KnightCode.
  *
+ * <p>KnightCode only has {@code int} and {@code String} values, so the generator knows the type of every
+ * local variable and stack slot and writes the stack map frames itself instead of having ASM compute
+ * them. Every local variable a method uses is initialized when the method starts, which keeps the
+ * locals of all frames in a method the same; the generator tracks the types on the operand stack and
+ * emits a frame at every label, which only ever marks a jump target.
+ *
+ * <p>With {@code --profile} every run of statements that always execute together increments its own
+ * counter in a static {@code long[]} of the class. When the main method returns or throws, the counters are handed to
+ * the runtime support class together with the source line of each counter, and it prints the profile.
+ *
+ * <p>Variables that cannot be local variables or static fields of their own, because a method would need
+ * more local variable slots than the class file format allows or the class would need more fields than
+ * its constant pool can name, are spilled to elements of the static {@code int[]} and {@code String[]}
+ * arrays of the class, created by its static initializer. Each array holds at most 32768 variables, so
+ * every element is addressed with a SIPUSH instead of a constant pool entry of its own.
+ *
+ * <p>Unless {@code --strip-debug} is given, the class names its {@code .kc} source file, every statement
+ * starts a line number entry with its source line, and every local variable is listed under its KnightCode
+ * name from where it is initialized to the end of the method, so stack traces, debuggers and profilers
+ * point at KnightCode lines and variables. The labels of this information are never jump targets, so they
+ * do not get frames.
+ *
  * @author Brent Reynolds
  * @version 1.0
  * @assignment Assignment 5
@@ -11,21 +33,110 @@
  */
 package compiler;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
 
 public class BytecodeGenerator implements Opcodes {
+    // Internal name of the runtime support class that generated programs call
+    private static final String RUNTIME = "compiler/KnightRuntime";
+    private static final String STRING = "java/lang/String";
+    // Names of the profile members; KnightCode identifiers cannot contain '$', so they never clash
+    private static final String PROFILE_FIELD = "$profile";
+    private static final String WRITE_PROFILE = "$writeProfile";
+    private static final int PROFILE_CHUNK = 16384; // characters of the counter table per string constant
+    private static final String SPILLED_INTEGERS = "$integers";
+    private static final String SPILLED_STRINGS = "$strings";
+    private static final int SPILL_ARRAY_SIZE = Short.MAX_VALUE + 1; // spilled variables per array
+    // The largest number of bytes counting one run of statements takes
+    static final int PROFILE_COUNTER_SIZE = 11;
+    // The most distinct local variable names a class lists; each takes a constant of the 65535 a class can have
+    private static final int MAX_DEBUG_NAMES = 4096;
+
     private ClassWriter classWriter;
     private MethodVisitor methodVisitor;
     private String className;
+    private PeepholeOptimizer peephole; // null when peephole optimization is disabled
+    private MethodNode methodNode; // the method being built when it is peephole optimized
+    private boolean bufferedOutput;
+    private int classVersion = V17;
+    private final List<Object> locals = new ArrayList<>(); // verification types of the current method's locals
+    private final List<Object> stack = new ArrayList<>(); // verification types on the operand stack
+    private boolean framePending; // a label was placed and its frame is written before the next instruction
+    private Label mainEnd; // the end of the code covered by the handler that flushes buffered output
+    private Label mainHandler;
+    private boolean profile;
+    private final StringBuilder profileSlots = new StringBuilder(); // the source lines of every counter
+    private int profileCounters;
+    private final int[] spilled = new int[VarType.values().length]; // the number of spilled variables of each type
+    private boolean debugInfo = true;
+    private int lastLine; // the source line of the last line number entry of the current method, 0 before the first
+    private final List<LocalVariable> localVariables = new ArrayList<>(); // the named locals of the current method
+    private final Set<String> debugNames = new HashSet<>(); // the local variable names the class lists
+
+    /**
+     * A local variable of the current method as the LocalVariableTable lists it.
+     */
+    private static class LocalVariable {
+        final String name;
+        final String descriptor;
+        final Label start;
+        final int index;
+
+        LocalVariable(String name, String descriptor, Label start, int index) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.start = start;
+            this.index = index;
+        }
+    }
 
     
     public BytecodeGenerator() {
         
     }
 
+    /**
+     * Constructs a BytecodeGenerator.
+     *
+     * @param options the compiler options selecting the class file version and how PRINT writes its output
+     * @param peephole the peephole optimizer every method is run through before it is written to the
+     *                 class, or null to write instructions straight to the class
+     */
+    public BytecodeGenerator(CompilerOptions options, PeepholeOptimizer peephole) {
+        this.peephole = peephole;
+        this.bufferedOutput = options.isBufferedOutput();
+        this.profile = options.isProfile();
+        this.debugInfo = options.isDebugInfo();
+        this.classVersion = classVersion(options.getTarget());
+    }
+
+    /**
+     * Returns the class file version of a Java release.
+     *
+     * @param target the Java release, 8, 17 or 21
+     * @return the class file version
+     */
+    private static int classVersion(int target) {
+        switch (target) {
+            case 8:
+                return V1_8;
+            case 17:
+                return V17;
+            case 21:
+                return V21;
+            default:
+                throw new IllegalArgumentException("Unsupported target: " + target);
+        }
+    }
+
     /**
      * Starts the bytecode generation for a class with the specified name.
      * This method sets up the class header using ASM and initializes a constructor.
@@ -33,9 +144,24 @@ public class BytecodeGenerator implements Opcodes {
      * @param name the name of the class to generate bytecode for
      */
     public void startClass(String name) {
+        startClass(name, null);
+    }
+
+    /**
+     * Starts the bytecode generation for a class compiled from a source file, which stack traces name
+     * unless debug information is stripped.
+     *
+     * @param name the name of the class to generate bytecode for
+     * @param sourceFile the file name of the KnightCode source, without its directory, or null if unknown
+     */
+    public void startClass(String name, String sourceFile) {
         this.className = name.replace(".class", "").replaceAll("/", ".");
-        this.classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-        classWriter.visit(V1_8, ACC_PUBLIC + ACC_SUPER, "output/" + this.className, null, "java/lang/Object", null);
+        this.classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        debugNames.clear();
+        classWriter.visit(classVersion, ACC_PUBLIC + ACC_SUPER, "output/" + this.className, null, "java/lang/Object", null);
+        if (debugInfo && sourceFile != null) {
+            classWriter.visitSource(sourceFile, null);
+        }
         initConstructor();
     }
 
@@ -56,49 +182,449 @@ public class BytecodeGenerator implements Opcodes {
      * Starts the main method for the class.
      */
     public void startMainMethod() {
-        this.methodVisitor = classWriter.visitMethod(ACC_PUBLIC + ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
-        methodVisitor.visitCode();
+        startMethod(ACC_PUBLIC + ACC_STATIC, "main", "([Ljava/lang/String;)V");
+        locals.add("[Ljava/lang/String;");
+        nameVariable("args", "[Ljava/lang/String;", 0);
+        if (bufferedOutput || profile) {
+            // Cover the whole body with a handler so the output is flushed and the profile written when
+            // the program throws
+            Label mainStart = new Label();
+            mainEnd = new Label();
+            mainHandler = new Label();
+            methodVisitor.visitTryCatchBlock(mainStart, mainEnd, mainHandler, null);
+            methodVisitor.visitLabel(mainStart);
+        }
     }
 
     /**
      * Finalizes the main method.
      */
     public void finalizeMainMethod() {
-        methodVisitor.visitInsn(RETURN);
+        if (bufferedOutput || profile) {
+            methodVisitor.visitLabel(mainEnd);
+            exitMain();
+            code().visitInsn(RETURN);
+            // The handler only needs the exception, so its frame drops every local but the arguments
+            methodVisitor.visitLabel(mainHandler);
+            methodVisitor.visitFrame(F_NEW, 1, new Object[] {"[Ljava/lang/String;"}, 1, new Object[] {"java/lang/Throwable"});
+            framePending = false;
+            exitMain();
+            code().visitInsn(ATHROW);
+            finishLocalVariables();
+            methodVisitor.visitMaxs(-1, -1);
+            methodVisitor.visitEnd();
+            writeMethod();
+            return;
+        }
+        finalizeMethod();
+    }
+
+    /**
+     * Starts a private static method without parameters or result, used for the parts a large program
+     * is split into.
+     *
+     * @param name the name of the method
+     */
+    public void startSplitMethod(String name) {
+        startMethod(ACC_PRIVATE + ACC_STATIC, name, "()V");
+        locals.add(TOP); // local variable indexes start at 1 as in main
+    }
+
+    /**
+     * Finalizes the method started last.
+     */
+    public void finalizeMethod() {
+        code().visitInsn(RETURN);
+        finishLocalVariables();
         methodVisitor.visitMaxs(-1, -1); 
         methodVisitor.visitEnd();
+        writeMethod();
     }
 
     /**
-     * Loads a variable onto the stack based on its type.
+     * Starts a method. When peephole optimization is enabled the method is built as a tree so the
+     * optimizer can rewrite it before it is written to the class.
      *
-     * @param index the index of the variable in the local variable table
-     * @param type the type of the variable, currently supports "INTEGER" and "STRING"
+     * @param access the access flags of the method
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
      */
-    public void loadVariable(int index, String type) {
-        if ("INTEGER".equals(type)) {
-            methodVisitor.visitVarInsn(ILOAD, index);
-        } else if ("STRING".equals(type)) {
-            methodVisitor.visitVarInsn(ALOAD, index);
+    private void startMethod(int access, String name, String descriptor) {
+        if (peephole != null) {
+            this.methodNode = new MethodNode(ASM9, access, name, descriptor, null, null);
+            this.methodVisitor = methodNode;
         } else {
-            throw new IllegalArgumentException("Unsupported variable type: " + type);
+            this.methodVisitor = classWriter.visitMethod(access, name, descriptor, null, null);
         }
+        methodVisitor.visitCode();
+        locals.clear();
+        stack.clear();
+        framePending = false;
+        lastLine = 0;
+        localVariables.clear();
     }
 
     /**
-     * Stores a variable from the stack based on its type.
+     * Initializes a local variable of the current method to 0 or null. Every local variable a method uses
+     * must be initialized before the first label of the method.
      *
      * @param index the index of the variable in the local variable table
-     * @param type the type of the variable, currently supports "INTEGER" and "STRING"
+     * @param type the type of the variable
+     * @param name the KnightCode name of the variable, listed in the debug information
+     */
+    public void initializeVariable(int index, VarType type, String name) {
+        code().visitInsn(type == VarType.INTEGER ? ICONST_0 : ACONST_NULL);
+        code().visitVarInsn(type.storeOpcode, index);
+        while (locals.size() <= index) {
+            locals.add(TOP);
+        }
+        locals.set(index, type.verificationType);
+        nameVariable(name, type.descriptor, index);
+    }
+
+    /**
+     * Lists a local variable of the current method in the debug information, from here to the end of the
+     * method. Once the class lists as many names as it may, locals with further names are left unnamed, so
+     * a program with a huge number of variables still fits the constant pool.
+     *
+     * @param name the name of the variable
+     * @param descriptor the descriptor of its type
+     * @param index the index of the variable in the local variable table
+     */
+    private void nameVariable(String name, String descriptor, int index) {
+        if (debugInfo && (debugNames.contains(name) || debugNames.size() < MAX_DEBUG_NAMES)) {
+            debugNames.add(name);
+            Label start = new Label();
+            methodVisitor.visitLabel(start);
+            localVariables.add(new LocalVariable(name, descriptor, start, index));
+        }
+    }
+
+    /**
+     * Ends the scope of the named local variables of the current method after its last instruction.
+     */
+    private void finishLocalVariables() {
+        if (localVariables.isEmpty()) {
+            return;
+        }
+        Label end = new Label();
+        methodVisitor.visitLabel(end);
+        for (LocalVariable variable : localVariables) {
+            methodVisitor.visitLocalVariable(variable.name, variable.descriptor, null, variable.start, end, variable.index);
+        }
+    }
+
+    /**
+     * Starts a line number entry for the code emitted next, unless debug information is stripped or the
+     * code emitted last already has the same line.
+     *
+     * @param line the source line, 0 if unknown
+     */
+    public void lineNumber(int line) {
+        if (!debugInfo || line <= 0 || line == lastLine) {
+            return;
+        }
+        Label start = new Label();
+        methodVisitor.visitLabel(start);
+        methodVisitor.visitLineNumber(line, start);
+        lastLine = line;
+    }
+
+    /**
+     * Returns the visitor the next instruction is emitted through. If a label was just placed, its frame
+     * is written first, describing the locals and the stack as they are before the instruction.
+     *
+     * @return the visitor of the current method
+     */
+    private MethodVisitor code() {
+        if (framePending) {
+            framePending = false;
+            methodVisitor.visitFrame(F_NEW, locals.size(), locals.toArray(), stack.size(), stack.toArray());
+        }
+        return methodVisitor;
+    }
+
+    /**
+     * Records a value pushed onto the operand stack.
+     *
+     * @param type the verification type of the value
+     */
+    private void stackPush(Object type) {
+        stack.add(type);
+    }
+
+    /**
+     * Records values popped from the operand stack. A pending frame is written first, since it describes
+     * the stack before the instruction that pops the values.
+     *
+     * @param count the number of values popped
+     */
+    private void stackPop(int count) {
+        code();
+        for (int i = 0; i < count; i++) {
+            stack.remove(stack.size() - 1);
+        }
+    }
+
+    /**
+     * Runs the finished method through the peephole optimizer and writes it to the class, when it was
+     * built as a tree.
+     */
+    private void writeMethod() {
+        if (methodNode != null) {
+            peephole.optimize(className, methodNode);
+            methodNode.accept(classWriter);
+            methodNode = null;
+        }
+    }
+
+    /**
+     * Calls one of the methods a large program is split into.
+     *
+     * @param name the name of the method
      */
-    public void storeVariable(int index, String type) {
-        if ("INTEGER".equals(type)) {
-            methodVisitor.visitVarInsn(ISTORE, index);
-        } else if ("STRING".equals(type)) {
-            methodVisitor.visitVarInsn(ASTORE, index);
+    public void callSplitMethod(String name) {
+        code().visitMethodInsn(INVOKESTATIC, "output/" + className, name, "()V", false);
+    }
+
+    /**
+     * Declares a private static field holding a variable shared by the methods a large program is split
+     * into.
+     *
+     * @param name the name of the variable
+     * @param type the type of the variable
+     */
+    public void addField(String name, VarType type) {
+        classWriter.visitField(ACC_PRIVATE + ACC_STATIC, name, type.descriptor, null, null).visitEnd();
+    }
+
+    /**
+     * Loads a variable kept in a static field onto the stack.
+     *
+     * @param name the name of the variable
+     * @param type the type of the variable
+     */
+    public void loadField(String name, VarType type) {
+        code().visitFieldInsn(GETSTATIC, "output/" + className, name, type.descriptor);
+        stackPush(type.verificationType);
+    }
+
+    /**
+     * Stores the value on the stack in a variable kept in a static field.
+     *
+     * @param name the name of the variable
+     * @param type the type of the variable
+     */
+    public void storeField(String name, VarType type) {
+        code().visitFieldInsn(PUTSTATIC, "output/" + className, name, type.descriptor);
+        stackPop(1);
+    }
+
+    /**
+     * Spills a variable to an element of the static array of its type.
+     *
+     * @param type the type of the variable
+     * @return the index of the element holding the variable
+     */
+    public int spillVariable(VarType type) {
+        return spilled[type.ordinal()]++;
+    }
+
+    /**
+     * Loads a spilled variable onto the stack.
+     *
+     * @param index the index of the element holding the variable
+     * @param type the type of the variable
+     */
+    public void loadSpilled(int index, VarType type) {
+        code().visitFieldInsn(GETSTATIC, "output/" + className, spillField(type, index / SPILL_ARRAY_SIZE),
+                "[" + type.descriptor);
+        pushIndex(index % SPILL_ARRAY_SIZE);
+        code().visitInsn(type.arrayLoadOpcode);
+        stackPush(type.verificationType);
+    }
+
+    /**
+     * Stores the value on the stack in a spilled variable. The array and the index are pushed after the
+     * value and swapped under it, so the value can be computed first as for every other store.
+     *
+     * @param index the index of the element holding the variable
+     * @param type the type of the variable
+     */
+    public void storeSpilled(int index, VarType type) {
+        code().visitFieldInsn(GETSTATIC, "output/" + className, spillField(type, index / SPILL_ARRAY_SIZE),
+                "[" + type.descriptor);
+        code().visitInsn(SWAP);
+        pushIndex(index % SPILL_ARRAY_SIZE);
+        code().visitInsn(SWAP);
+        code().visitInsn(type.arrayStoreOpcode);
+        stackPop(1);
+    }
+
+    /**
+     * Returns the name of a static array holding spilled variables.
+     *
+     * @param type the type of the variables
+     * @param array the number of the array among those of the type
+     * @return the name of the field
+     */
+    private static String spillField(VarType type, int array) {
+        return (type == VarType.INTEGER ? SPILLED_INTEGERS : SPILLED_STRINGS) + array;
+    }
+
+    /**
+     * Pushes an array index or other constant with the shortest instruction. The operand stack types are
+     * not tracked, as the constant is consumed by the instructions that follow it.
+     *
+     * @param value the constant, not negative
+     */
+    private void pushIndex(int value) {
+        if (value <= 5) {
+            code().visitInsn(ICONST_0 + value);
+        } else if (value <= Short.MAX_VALUE) {
+            code().visitIntInsn(value <= Byte.MAX_VALUE ? BIPUSH : SIPUSH, value);
+        } else {
+            code().visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Emits what runs whenever the main method ends: flushing the buffered output and writing the profile.
+     */
+    private void exitMain() {
+        if (bufferedOutput) {
+            flushOutput();
+        }
+        if (profile) {
+            code().visitMethodInsn(INVOKESTATIC, "output/" + className, WRITE_PROFILE, "()V", false);
+        }
+    }
+
+    /**
+     * Counts an execution of a run of statements when profiling is enabled, by incrementing a counter of
+     * its own. The instructions leave the operand stack as they find it.
+     *
+     * @param lines the source line of every statement in the run; nothing is counted if it is empty
+     * @param loopLine the source line of the WHILE loop the run starts the body of, whose iterations the
+     *                 counter also counts, or 0
+     */
+    public void countExecution(List<Integer> lines, int loopLine) {
+        if (!profile || lines.isEmpty()) {
+            return;
+        }
+        if (profileCounters > 0) {
+            profileSlots.append(',');
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            profileSlots.append(i > 0 ? " " : "").append(lines.get(i));
+        }
+        if (loopLine > 0) {
+            profileSlots.append(' ').append(loopLine).append('*');
+        }
+        int counter = profileCounters++;
+
+        code().visitFieldInsn(GETSTATIC, "output/" + className, PROFILE_FIELD, "[J");
+        pushIndex(counter);
+        code().visitInsn(DUP2);
+        code().visitInsn(LALOAD);
+        code().visitInsn(LCONST_1);
+        code().visitInsn(LADD);
+        code().visitInsn(LASTORE);
+    }
+
+    /**
+     * Adds the static arrays of the class and the static initializer creating them: the profile counters
+     * and the arrays of spilled variables, when there are any.
+     */
+    private void finishStaticInitializer() {
+        boolean spilling = spilled[VarType.INTEGER.ordinal()] > 0 || spilled[VarType.STRING.ordinal()] > 0;
+        if (!profile && !spilling) {
+            return;
+        }
+        MethodVisitor mv = classWriter.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        if (profile) {
+            classWriter.visitField(ACC_PRIVATE + ACC_STATIC + ACC_FINAL + ACC_SYNTHETIC, PROFILE_FIELD, "[J", null, null)
+                    .visitEnd();
+            mv.visitLdcInsn(profileCounters);
+            mv.visitIntInsn(NEWARRAY, T_LONG);
+            mv.visitFieldInsn(PUTSTATIC, "output/" + className, PROFILE_FIELD, "[J");
+        }
+        for (VarType type : VarType.values()) {
+            String descriptor = "[" + type.descriptor;
+            for (int array = 0; array * SPILL_ARRAY_SIZE < spilled[type.ordinal()]; array++) {
+                classWriter.visitField(ACC_PRIVATE + ACC_STATIC + ACC_FINAL + ACC_SYNTHETIC, spillField(type, array),
+                        descriptor, null, null).visitEnd();
+                mv.visitLdcInsn(Math.min(SPILL_ARRAY_SIZE, spilled[type.ordinal()] - array * SPILL_ARRAY_SIZE));
+                if (type == VarType.INTEGER) {
+                    mv.visitIntInsn(NEWARRAY, T_INT);
+                } else {
+                    mv.visitTypeInsn(ANEWARRAY, STRING);
+                }
+                mv.visitFieldInsn(PUTSTATIC, "output/" + className, spillField(type, array), descriptor);
+            }
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    /**
+     * Adds the method handing the profile counters and their source lines to the runtime support class.
+     * The table of source lines is split into several string constants when it is too long for one.
+     */
+    private void finishProfile() {
+        MethodVisitor mv = classWriter.visitMethod(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, WRITE_PROFILE, "()V", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(className);
+        mv.visitFieldInsn(GETSTATIC, "output/" + className, PROFILE_FIELD, "[J");
+        String slots = profileSlots.toString();
+        if (slots.length() <= PROFILE_CHUNK) {
+            mv.visitLdcInsn(slots);
         } else {
-            throw new IllegalArgumentException("Unsupported type: " + type);
+            mv.visitTypeInsn(NEW, "java/lang/StringBuilder");
+            mv.visitInsn(DUP);
+            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V", false);
+            for (int start = 0; start < slots.length(); start += PROFILE_CHUNK) {
+                mv.visitLdcInsn(slots.substring(start, Math.min(start + PROFILE_CHUNK, slots.length())));
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append",
+                        "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
         }
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "writeProfile", "(Ljava/lang/String;[JLjava/lang/String;)V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    /**
+     * Flushes the output buffer of the runtime support class.
+     */
+    private void flushOutput() {
+        code().visitMethodInsn(INVOKESTATIC, RUNTIME, "flush", "()V", false);
+    }
+
+    /**
+     * Loads a variable onto the stack based on its type.
+     *
+     * @param index the index of the variable in the local variable table
+     * @param type the type of the variable
+     */
+    public void loadVariable(int index, VarType type) {
+        code().visitVarInsn(type.loadOpcode, index);
+        stackPush(type.verificationType);
+    }
+
+    /**
+     * Stores a variable from the stack based on its type.
+     *
+     * @param index the index of the variable in the local variable table
+     * @param type the type of the variable
+     */
+    public void storeVariable(int index, VarType type) {
+        code().visitVarInsn(type.storeOpcode, index);
+        stackPop(1);
     }
     
 
@@ -110,9 +636,9 @@ public class BytecodeGenerator implements Opcodes {
      */
     public void storeString(int index, String value) {
         // Push the string value onto the stack
-        methodVisitor.visitLdcInsn(value);
+        code().visitLdcInsn(value);
         // Store the string at the local variable index
-        methodVisitor.visitVarInsn(ASTORE, index);
+        code().visitVarInsn(ASTORE, index);
     }
 
     /**
@@ -121,7 +647,26 @@ public class BytecodeGenerator implements Opcodes {
      * @param value the integer value to push onto the stack
      */
     public void pushValue(int value) {
-        methodVisitor.visitLdcInsn(value);
+        code().visitLdcInsn(value);
+        stackPush(INTEGER);
+    }
+
+    /**
+     * Pushes a string constant onto the stack.
+     *
+     * @param value the string value to push onto the stack
+     */
+    public void pushString(String value) {
+        code().visitLdcInsn(value);
+        stackPush(STRING);
+    }
+
+    /**
+     * Discards the value on top of the stack.
+     */
+    public void pop() {
+        code().visitInsn(POP);
+        stackPop(1);
     }
 
     /**
@@ -130,9 +675,14 @@ public class BytecodeGenerator implements Opcodes {
      * @param text the text to be printed
      */
     public void printString(String text) {
-        methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
-        methodVisitor.visitLdcInsn(text);
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        if (bufferedOutput) {
+            code().visitLdcInsn(text);
+            code().visitMethodInsn(INVOKESTATIC, RUNTIME, "println", "(Ljava/lang/String;)V", false);
+            return;
+        }
+        code().visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        code().visitLdcInsn(text);
+        code().visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
     }
 
     /**
@@ -142,18 +692,42 @@ public class BytecodeGenerator implements Opcodes {
      * @param index the index of the string variable in the local variable table
      */
     public void printStringVariable(int index) {
-        methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
-        methodVisitor.visitVarInsn(ALOAD, index);
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        if (bufferedOutput) {
+            code().visitVarInsn(ALOAD, index);
+            code().visitMethodInsn(INVOKESTATIC, RUNTIME, "println", "(Ljava/lang/String;)V", false);
+            return;
+        }
+        code().visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        code().visitVarInsn(ALOAD, index);
+        code().visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+    }
+
+    /**
+     * Prints the string on top of the stack to the console.
+     */
+    public void printStringValue() {
+        stackPop(1);
+        if (bufferedOutput) {
+            code().visitMethodInsn(INVOKESTATIC, RUNTIME, "println", "(Ljava/lang/String;)V", false);
+            return;
+        }
+        code().visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        code().visitInsn(SWAP);
+        code().visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
     }
 
     /**
     * Prints an integer to the console.
     */
     public void printInteger() {
-        methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
-        methodVisitor.visitInsn(SWAP); 
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(I)V", false);
+        stackPop(1);
+        if (bufferedOutput) {
+            code().visitMethodInsn(INVOKESTATIC, RUNTIME, "println", "(I)V", false);
+            return;
+        }
+        code().visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        code().visitInsn(SWAP); 
+        code().visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(I)V", false);
     }
 
     /**
@@ -163,144 +737,169 @@ public class BytecodeGenerator implements Opcodes {
     * @param index the index of the integer variable in the local variable table
     */
     public void printIntegerVariable(int index) {
-        methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
-        methodVisitor.visitVarInsn(ILOAD, index);
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(I)V", false);
+        if (bufferedOutput) {
+            code().visitVarInsn(ILOAD, index);
+            code().visitMethodInsn(INVOKESTATIC, RUNTIME, "println", "(I)V", false);
+            return;
+        }
+        code().visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        code().visitVarInsn(ILOAD, index);
+        code().visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(I)V", false);
     }
     
     /**
      * Adds two integers from the stack and pushes the result back to the stack.
     */
     public void addIntegers() {
-        methodVisitor.visitInsn(IADD);
+        code().visitInsn(IADD);
+        stackPop(1);
     }
 
     /**
     * Subtracts the top integer from the second top integer on the stack and pushes the result back to the stack.
     */
     public void subtractIntegers() {
-        methodVisitor.visitInsn(ISUB);
+        code().visitInsn(ISUB);
+        stackPop(1);
     }
 
     /**
     * Multiplies two integers from the stack and pushes the result back to the stack.
     */
     public void multiplyIntegers() {
-        methodVisitor.visitInsn(IMUL);
+        code().visitInsn(IMUL);
+        stackPop(1);
     }
 
     /**
     * Divides the second top integer by the top integer on the stack and pushes the result back to the stack.
     */
     public void divideIntegers() {
-        methodVisitor.visitInsn(IDIV);
+        code().visitInsn(IDIV);
+        stackPop(1);
+    }
+
+    /**
+    * Shifts the second top integer on the stack left by the top integer and pushes the result back to the stack.
+    */
+    public void shiftLeft() {
+        code().visitInsn(ISHL);
+        stackPop(1);
+    }
+
+    /**
+    * Shifts the second top integer on the stack right by the top integer, keeping its sign, and pushes the result back to the stack.
+    */
+    public void shiftRight() {
+        code().visitInsn(ISHR);
+        stackPop(1);
+    }
+
+    /**
+    * Shifts the second top integer on the stack right by the top integer, filling with zeros, and pushes the result back to the stack.
+    */
+    public void unsignedShiftRight() {
+        code().visitInsn(IUSHR);
+        stackPop(1);
     }
 
     /**
     * Compares two integers from the stack for greater than condition and pushes the boolean result (0 or 1) back to the stack.
     */
     public void compareGreaterThan() {
-        Label trueLabel = new Label();
-        Label endLabel = new Label();
-    
-        methodVisitor.visitJumpInsn(IF_ICMPGT, trueLabel);
-        methodVisitor.visitInsn(ICONST_0); // false
-        methodVisitor.visitJumpInsn(GOTO, endLabel);
-        methodVisitor.visitLabel(trueLabel);
-        methodVisitor.visitInsn(ICONST_1); // true
-        methodVisitor.visitLabel(endLabel);
+        compareValue(IF_ICMPGT);
     }
     
     /**
     * Compares two integers from the stack for less than condition and pushes the boolean result (0 or 1) back to the stack.
     */
     public void compareLessThan() {
-        Label trueLabel = new Label();
-        Label endLabel = new Label();
-    
-        methodVisitor.visitJumpInsn(IF_ICMPLT, trueLabel);
-        methodVisitor.visitInsn(ICONST_0); // false
-        methodVisitor.visitJumpInsn(GOTO, endLabel);
-        methodVisitor.visitLabel(trueLabel);
-        methodVisitor.visitInsn(ICONST_1); // true
-        methodVisitor.visitLabel(endLabel);
+        compareValue(IF_ICMPLT);
     }
     
     /**
     * Compares two integers from the stack to see if they are equal and pushes the boolean result (0 or 1) back to the stack.
     */
     public void compareEquals() {
-        Label trueLabel = new Label();
-        Label endLabel = new Label();
-    
-        methodVisitor.visitJumpInsn(IF_ICMPEQ, trueLabel);
-        methodVisitor.visitInsn(ICONST_0); // false
-        methodVisitor.visitJumpInsn(GOTO, endLabel);
-        methodVisitor.visitLabel(trueLabel);
-        methodVisitor.visitInsn(ICONST_1); // true
-        methodVisitor.visitLabel(endLabel);
+        compareValue(IF_ICMPEQ);
     }
     
     /**
     * Compares two integers from the stack to see if they are not equal and pushes the boolean result (0 or 1) back to the stack.
     */
     public void compareNotEquals() {
+        compareValue(IF_ICMPNE);
+    }
+    
+    /**
+     * Compares the two integers on top of the stack and replaces them with 1 if the comparison holds and
+     * 0 otherwise.
+     *
+     * @param opcode the conditional jump taken when the comparison holds
+     */
+    private void compareValue(int opcode) {
         Label trueLabel = new Label();
         Label endLabel = new Label();
-    
-        methodVisitor.visitJumpInsn(IF_ICMPNE, trueLabel);
-        methodVisitor.visitInsn(ICONST_0); // false
-        methodVisitor.visitJumpInsn(GOTO, endLabel);
-        methodVisitor.visitLabel(trueLabel);
-        methodVisitor.visitInsn(ICONST_1); // true
-        methodVisitor.visitLabel(endLabel);
+
+        stackPop(2);
+        code().visitJumpInsn(opcode, trueLabel);
+        code().visitInsn(ICONST_0); // false
+        code().visitJumpInsn(GOTO, endLabel);
+        label(trueLabel);
+        code().visitInsn(ICONST_1); // true
+        stackPush(INTEGER);
+        label(endLabel);
     }
-    
+
     /**
-     * Reads an integer and stores it at the specified index.
+     * Reads an integer and stores it at the specified index. The input is read through the buffered
+     * runtime support class shared by every READ of the program.
      *
      * @param index the index where the read integer will be stored
      */
     public void readInteger(int index) {
-        // Instantiate Scanner System.in
-        methodVisitor.visitTypeInsn(NEW, "java/util/Scanner");
-        methodVisitor.visitInsn(DUP);
-        methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "in", "Ljava/io/InputStream;");
-        methodVisitor.visitMethodInsn(INVOKESPECIAL, "java/util/Scanner", "<init>", "(Ljava/io/InputStream;)V", false);
-        
-        // Call Scanner.nextInt()
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/util/Scanner", "nextInt", "()I", false);
-        
-        // Store the result in the local variable table
-        methodVisitor.visitVarInsn(ISTORE, index);
+        readIntegerValue();
+        code().visitVarInsn(ISTORE, index);
+        stackPop(1);
+    }
+
+    /**
+     * Reads an integer and pushes it onto the stack.
+     */
+    public void readIntegerValue() {
+        code().visitMethodInsn(INVOKESTATIC, RUNTIME, "readInt", "()I", false);
+        stackPush(INTEGER);
     }
     
     /**
-     * Reads a string and stores it at the specified index.
+     * Reads a string and stores it at the specified index. The input is read through the buffered
+     * runtime support class shared by every READ of the program.
      *
      * @param index the index where the read string will be stored
      */
     public void readString(int index) {
-        // Instantiate Scanner System.in
-        methodVisitor.visitTypeInsn(NEW, "java/util/Scanner");
-        methodVisitor.visitInsn(DUP);
-        methodVisitor.visitFieldInsn(GETSTATIC, "java/lang/System", "in", "Ljava/io/InputStream;");
-        methodVisitor.visitMethodInsn(INVOKESPECIAL, "java/util/Scanner", "<init>", "(Ljava/io/InputStream;)V", false);
-        
-        // Call Scanner.nextLine()
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/util/Scanner", "nextLine", "()Ljava/lang/String;", false);
-        
-        // Store the result in the local variable table
-        methodVisitor.visitVarInsn(ASTORE, index);
+        readStringValue();
+        code().visitVarInsn(ASTORE, index);
+        stackPop(1);
+    }
+
+    /**
+     * Reads a line and pushes it onto the stack.
+     */
+    public void readStringValue() {
+        code().visitMethodInsn(INVOKESTATIC, RUNTIME, "readLine", "()Ljava/lang/String;", false);
+        stackPush(STRING);
     }
     
     /**
-     * Defines a label at the location in the method where this is called.
+     * Defines a label at the location in the method where this is called. Labels are only used as jump
+     * targets, so the frame of the label is written before the next instruction.
      *
      * @param label the label to define
      */
     public void label(Label label) {
         methodVisitor.visitLabel(label);
+        framePending = true;
     }
 
     /**
@@ -309,7 +908,7 @@ public class BytecodeGenerator implements Opcodes {
      * @param label the label to jump to
      */
     public void goTo(Label label) {
-        methodVisitor.visitJumpInsn(GOTO, label);
+        code().visitJumpInsn(GOTO, label);
     }
 
     /**
@@ -318,7 +917,8 @@ public class BytecodeGenerator implements Opcodes {
      * @param falseLabel the label to jump to if the top of the stack is false
      */
     public void ifFalseJump(Label falseLabel) {
-        methodVisitor.visitJumpInsn(IFEQ, falseLabel);
+        stackPop(1);
+        code().visitJumpInsn(IFEQ, falseLabel);
     }
 
     /**
@@ -327,7 +927,8 @@ public class BytecodeGenerator implements Opcodes {
      * @param label the label to jump to if the comparison is true
      */
     public void compareGreaterThan(Label label) {
-        methodVisitor.visitJumpInsn(IF_ICMPGT, label);
+        stackPop(2);
+        code().visitJumpInsn(IF_ICMPGT, label);
     }
 
     /**
@@ -336,7 +937,8 @@ public class BytecodeGenerator implements Opcodes {
      * @param label the label to jump to if the comparison is true
      */
     public void compareGreaterThanOrEqual(Label label) {
-        methodVisitor.visitJumpInsn(IF_ICMPGE, label);
+        stackPop(2);
+        code().visitJumpInsn(IF_ICMPGE, label);
     }
     
     /**
@@ -345,7 +947,8 @@ public class BytecodeGenerator implements Opcodes {
      * @param label the label to jump to if the comparison is true
      */
     public void compareLessThan(Label label) {
-        methodVisitor.visitJumpInsn(IF_ICMPLT, label);
+        stackPop(2);
+        code().visitJumpInsn(IF_ICMPLT, label);
     }
     
     /**
@@ -354,7 +957,8 @@ public class BytecodeGenerator implements Opcodes {
      * @param label the label to jump to if the comparison is true
      */
     public void compareLessThanOrEqual(Label label) {
-        methodVisitor.visitJumpInsn(IF_ICMPLE, label);
+        stackPop(2);
+        code().visitJumpInsn(IF_ICMPLE, label);
     }
 
     /**
@@ -363,7 +967,8 @@ public class BytecodeGenerator implements Opcodes {
      * @param label the label to jump to if the comparison is true
      */
     public void compareEquals(Label label) {
-        methodVisitor.visitJumpInsn(IF_ICMPEQ, label);
+        stackPop(2);
+        code().visitJumpInsn(IF_ICMPEQ, label);
     }
     
     /**
@@ -372,7 +977,8 @@ public class BytecodeGenerator implements Opcodes {
      * @param label the label to jump to if the comparison is true
      */
     public void compareNotEquals(Label label) {
-        methodVisitor.visitJumpInsn(IF_ICMPNE, label);
+        stackPop(2);
+        code().visitJumpInsn(IF_ICMPNE, label);
     }
     
 
@@ -382,6 +988,10 @@ public class BytecodeGenerator implements Opcodes {
      * @return the array of bytes representing the bytecode of the class
      */
     public byte[] getBytecode() {
+        finishStaticInitializer();
+        if (profile) {
+            finishProfile();
+        }
         classWriter.visitEnd(); 
         return classWriter.toByteArray();
     }
@@ -0,0 +1,74 @@
+/**
+ * The ClassVerifier class checks a generated class before it is written, for {@code --verify}. ASM's
+ * CheckClassAdapter checks that the class is well formed and runs a data flow analysis of every method,
+ * and the class is then defined in a throwaway class loader, which never asks its parent for a class of
+ * the same name, and linked without being initialized so the JVM's own verifier checks the stack map
+ * frames the BytecodeGenerator wrote. A class targeting a newer Java version than the running JVM cannot be
+ * linked, so it only gets ASM's checks.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+public final class ClassVerifier {
+
+    private ClassVerifier() {
+    }
+
+    /**
+     * Verifies a generated class.
+     *
+     * @param bytecode the bytecode of the class
+     * @return a description of the problems found, or null if the class is valid
+     */
+    public static String verify(byte[] bytecode) {
+        ClassReader reader = new ClassReader(bytecode);
+        StringWriter problems = new StringWriter();
+        try {
+            CheckClassAdapter.verify(reader, ClassVerifier.class.getClassLoader(), false, new PrintWriter(problems));
+        } catch (RuntimeException e) {
+            problems.write(e.toString());
+        }
+        if (problems.getBuffer().length() > 0) {
+            return problems.toString();
+        }
+
+        int majorVersion = ((bytecode[6] & 0xFF) << 8) | (bytecode[7] & 0xFF);
+        if (majorVersion > Runtime.version().feature() + 44) {
+            return null;
+        }
+
+        String name = reader.getClassName().replace('/', '.');
+        try {
+            Class<?> generated = Class.forName(name, false, new ClassLoader(ClassVerifier.class.getClassLoader()) {
+                @Override
+                protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+                    if (!className.equals(name)) {
+                        return super.loadClass(className, resolve);
+                    }
+                    // Define the generated class here instead of asking the parent, which could find a stale
+                    // class file of the same name on the class path
+                    synchronized (getClassLoadingLock(className)) {
+                        Class<?> loaded = findLoadedClass(className);
+                        return loaded != null ? loaded : defineClass(name, bytecode, 0, bytecode.length);
+                    }
+                }
+            });
+            // Reflecting on the methods links the class, which verifies it without running its static initializer
+            generated.getDeclaredMethods();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return e.toString();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * The CompilationEvent class is the JFR event recorded for every compiled KnightCode source. Its duration
+ * covers the whole compilation and its fields hold the sizes reported by {@code --stats}.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("knightcode.Compilation")
+@Label("Compilation")
+@Category("KnightCode")
+@StackTrace(false)
+@Description("The compilation of one KnightCode source")
+public class CompilationEvent extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Parse Tree Nodes")
+    long parseTreeNodes;
+
+    @Label("Variables")
+    long variables;
+
+    @Label("Class Size")
+    @DataAmount
+    long classSize;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
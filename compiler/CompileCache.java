@@ -0,0 +1,252 @@
+/**
+ * The CompileCache class stores compiled class files on disk so unchanged sources do not have to be
+ * compiled again. Entries are keyed by a SHA-256 hash of the source bytes, the class name, the code
+ * generation options, the compiler version and a fingerprint of the compiler's own class files.
+ *
+ * <p>Entries are written to a temporary file and then atomically renamed into place, so several builds
+ * can share one cache directory. Reading an entry refreshes its modification time, and once the cache
+ * grows past its size budget the least recently used entries are deleted.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class CompileCache {
+    private static final String EXTENSION = ".class";
+    private static String compilerFingerprint;
+
+    private final Path directory;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Opens a cache directory, creating it if needed.
+     *
+     * @param directory the directory holding the cached class files
+     * @param maxSize the size budget of the cache in bytes
+     * @throws IOException if the directory cannot be created or read
+     */
+    public CompileCache(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        size.set(entries().stream().mapToLong(CompileCache::sizeOf).sum());
+    }
+
+    /**
+     * Opens the cache selected by the compiler options.
+     *
+     * @param options the compiler options
+     * @return the cache, or null if caching is disabled
+     * @throws IOException if the cache directory cannot be created or read
+     */
+    public static CompileCache open(CompilerOptions options) throws IOException {
+        if (options.getCacheDirectory() == null) {
+            return null;
+        }
+        return new CompileCache(options.getCacheDirectory(), options.getCacheSize());
+    }
+
+    /**
+     * Computes the cache key of a compilation.
+     *
+     * @param source the bytes of the KnightCode source
+     * @param className the name of the class to generate
+     * @param codegenKey the key of the code generation options
+     * @return the hex encoded SHA-256 key
+     */
+    public String key(byte[] source, String className, String codegenKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((KccCompiler.VERSION + '\0' + compilerFingerprint() + '\0' + codegenKey + '\0' + className + '\0').getBytes(StandardCharsets.UTF_8));
+            digest.update(source);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Looks up a compiled class and marks it as recently used.
+     *
+     * @param key the cache key
+     * @return the cached bytecode, or null if there is no entry for the key
+     */
+    public byte[] get(String key) {
+        Path entry = directory.resolve(key + EXTENSION);
+        try {
+            byte[] bytecode = Files.readAllBytes(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return bytecode;
+        } catch (IOException e) {
+            // Missing, or evicted by another build while it was being read
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a compiled class, evicting the least recently used entries if the cache is over budget.
+     * Failing to store an entry is not an error; the class simply is not cached.
+     *
+     * @param key the cache key
+     * @param bytecode the bytecode to store
+     */
+    public void put(String key, byte[] bytecode) {
+        Path entry = directory.resolve(key + EXTENSION);
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.write(temp, bytecode);
+                try {
+                    Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            return;
+        }
+        if (size.addAndGet(bytecode.length) > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its budget. The directory is
+     * rescanned first because other builds may have added or removed entries.
+     */
+    private synchronized void evict() {
+        List<Path> entries = entries();
+        entries.sort(Comparator.comparing(CompileCache::lastModified));
+        long total = entries.stream().mapToLong(CompileCache::sizeOf).sum();
+        for (Path entry : entries) {
+            if (total <= maxSize) {
+                break;
+            }
+            long entrySize = sizeOf(entry);
+            try {
+                if (Files.deleteIfExists(entry)) {
+                    evictions.incrementAndGet();
+                }
+                total -= entrySize;
+            } catch (IOException e) {
+                // Another build is using or removing it; leave it for next time
+            }
+        }
+        size.set(total);
+    }
+
+    /**
+     * Lists the entries in the cache directory.
+     *
+     * @return the paths of the cached class files
+     */
+    private List<Path> entries() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(EXTENSION)).collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private static long sizeOf(Path entry) {
+        try {
+            return Files.size(entry);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModified(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Identifies the compiler build so that entries produced by a different build are never reused. The
+     * fingerprint covers the names, sizes and modification times of the compiler's class files, or of the
+     * jar they were loaded from.
+     *
+     * @return the compiler fingerprint
+     */
+    private static synchronized String compilerFingerprint() {
+        if (compilerFingerprint != null) {
+            return compilerFingerprint;
+        }
+        StringBuilder sb = new StringBuilder();
+        try {
+            Path location = Paths.get(CompileCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            Path classes = Files.isDirectory(location) ? location.resolve("compiler") : location;
+            if (Files.isDirectory(classes)) {
+                try (Stream<Path> files = Files.list(classes)) {
+                    for (Path file : files.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList())) {
+                        sb.append(file.getFileName()).append(':').append(sizeOf(file)).append(':').append(lastModified(file).toMillis()).append(';');
+                    }
+                }
+            } else {
+                sb.append(location.getFileName()).append(':').append(sizeOf(location)).append(':').append(lastModified(location).toMillis());
+            }
+        } catch (IOException | URISyntaxException | SecurityException | NullPointerException e) {
+            sb.append("unknown");
+        }
+        compilerFingerprint = sb.toString();
+        return compilerFingerprint;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the hit and miss statistics of the cache.
+     *
+     * @return a one line summary of the cache statistics
+     */
+    @Override
+    public String toString() {
+        long lookups = hits.get() + misses.get();
+        return String.format("Cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d KB in %s", hits.get(), misses.get(),
+                lookups == 0 ? 0.0 : 100.0 * hits.get() / lookups, evictions.get(), size.get() / 1024, directory);
+    }
+}
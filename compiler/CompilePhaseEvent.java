@@ -0,0 +1,37 @@
+/**
+ * The CompilePhaseEvent class is the JFR event recorded for every phase of a compilation, such as lexing,
+ * parsing or code generation. It is committed by CompileStats whenever a recording enables it, with or
+ * without {@code --stats}, so recordings of batch builds show where the compile time goes.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("knightcode.CompilePhase")
+@Label("Compile Phase")
+@Category("KnightCode")
+@StackTrace(false)
+@Description("A phase of compiling one KnightCode source")
+public class CompilePhaseEvent extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,304 @@
+/**
+ * The CompileStats class measures the phases of a compilation for {@code --stats}: the wall time and the
+ * bytes allocated by the compiling thread in each phase, and the number of tokens, parse tree nodes and
+ * variables and the size of the generated class. Every phase is also recorded as a
+ * {@link CompilePhaseEvent} and every compilation as a {@link CompilationEvent}, so a JFR recording of a
+ * batch build holds the same data without {@code --stats}.
+ *
+ * <p>When neither {@code --stats} nor a recording asks for them the compiler uses an inactive instance,
+ * whose methods do nothing, so an ordinary compilation does not pay for reading clocks and counting parse
+ * tree nodes. The statistics of many compilations can be added up for the batch summary.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+public class CompileStats {
+    private static final CompileStats INACTIVE = new CompileStats(null, false);
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final String source;
+    private final boolean active;
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final CompilationEvent compilation = new CompilationEvent();
+    private int compilations;
+    private int cached;
+    private long tokens;
+    private long parseTreeNodes;
+    private long variables;
+    private long classSize;
+
+    private String currentPhase; // the phase begun and not ended yet
+    private long phaseStart;
+    private long phaseAllocatedStart;
+    private CompilePhaseEvent phaseEvent;
+
+    /**
+     * The time and allocation of one phase, summed over every time it ran.
+     */
+    private static class Phase {
+        long nanos;
+        long allocated;
+    }
+
+    /**
+     * Constructs statistics for the compilation of a source.
+     *
+     * @param source the name of the source, used in the JFR events
+     */
+    public CompileStats(String source) {
+        this(source, true);
+    }
+
+    /**
+     * Constructs statistics.
+     *
+     * @param source the name of the source
+     * @param active false for the instance that records nothing
+     */
+    private CompileStats(String source, boolean active) {
+        this.source = source;
+        this.active = active;
+        if (active) {
+            compilation.begin();
+        }
+    }
+
+    /**
+     * Returns the statistics a compilation should record when no {@code --stats} were asked for: new
+     * statistics if a JFR recording enables the compile events, otherwise the inactive instance.
+     *
+     * @param source the name of the source
+     * @return the statistics to record into
+     */
+    public static CompileStats forEvents(String source) {
+        if (new CompilationEvent().isEnabled() || new CompilePhaseEvent().isEnabled()) {
+            return new CompileStats(source);
+        }
+        return INACTIVE;
+    }
+
+    /**
+     * Returns the thread bean able to report allocated bytes, if the JVM has one.
+     *
+     * @return the bean, or null if per-thread allocation cannot be measured
+     */
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far.
+     *
+     * @return the allocated bytes, or 0 if they cannot be measured
+     */
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Checks if these statistics record anything.
+     *
+     * @return false for the inactive instance
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Starts measuring a phase. The phase must be ended on the same thread before the next one begins.
+     *
+     * @param phase the name of the phase
+     */
+    public void begin(String phase) {
+        if (!active) {
+            return;
+        }
+        currentPhase = phase;
+        phaseEvent = new CompilePhaseEvent();
+        phaseEvent.begin();
+        phaseAllocatedStart = allocatedBytes();
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Ends the phase begun last, records its time and allocation and commits its JFR event.
+     */
+    public void end() {
+        if (!active) {
+            return;
+        }
+        long nanos = System.nanoTime() - phaseStart;
+        long allocated = allocatedBytes() - phaseAllocatedStart;
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.source = source;
+            phaseEvent.phase = currentPhase;
+            phaseEvent.allocated = allocated;
+            phaseEvent.commit();
+        }
+        Phase phase = phases.computeIfAbsent(currentPhase, name -> new Phase());
+        phase.nanos += nanos;
+        phase.allocated += allocated;
+        currentPhase = null;
+        phaseEvent = null;
+    }
+
+    /**
+     * Records the number of tokens the lexer produced.
+     *
+     * @param count the number of tokens
+     */
+    public void setTokens(int count) {
+        if (active) {
+            tokens = count;
+        }
+    }
+
+    /**
+     * Counts the nodes of a parse tree, rule contexts and tokens alike.
+     *
+     * @param tree the root of the parse tree
+     */
+    public void countParseTree(ParseTree tree) {
+        if (!active) {
+            return;
+        }
+        long count = 0;
+        Deque<ParseTree> pending = new ArrayDeque<>();
+        pending.push(tree);
+        while (!pending.isEmpty()) {
+            ParseTree node = pending.pop();
+            count++;
+            for (int i = 0; i < node.getChildCount(); i++) {
+                pending.push(node.getChild(i));
+            }
+        }
+        parseTreeNodes = count;
+    }
+
+    /**
+     * Records the number of declared variables.
+     *
+     * @param count the number of variables
+     */
+    public void setVariables(int count) {
+        if (active) {
+            variables = count;
+        }
+    }
+
+    /**
+     * Records that the class was taken from the compile cache instead of being compiled.
+     */
+    public void setCached() {
+        if (active) {
+            cached = 1;
+        }
+    }
+
+    /**
+     * Ends the compilation: records the size of the generated class and commits the JFR event of the
+     * whole compilation.
+     *
+     * @param size the size of the generated class in bytes
+     */
+    public void finish(int size) {
+        if (!active) {
+            return;
+        }
+        classSize = size;
+        compilations = 1;
+        compilation.end();
+        if (compilation.shouldCommit()) {
+            compilation.source = source;
+            compilation.tokens = tokens;
+            compilation.parseTreeNodes = parseTreeNodes;
+            compilation.variables = variables;
+            compilation.classSize = classSize;
+            long allocated = 0;
+            for (Phase phase : phases.values()) {
+                allocated += phase.allocated;
+            }
+            compilation.allocated = allocated;
+            compilation.commit();
+        }
+    }
+
+    /**
+     * Adds the statistics of another compilation to these, for a total over a batch.
+     *
+     * @param other the statistics to add
+     */
+    public synchronized void add(CompileStats other) {
+        synchronized (other) {
+            for (Map.Entry<String, Phase> entry : other.phases.entrySet()) {
+                Phase phase = phases.computeIfAbsent(entry.getKey(), name -> new Phase());
+                phase.nanos += entry.getValue().nanos;
+                phase.allocated += entry.getValue().allocated;
+            }
+            compilations += other.compilations;
+            cached += other.cached;
+            tokens += other.tokens;
+            parseTreeNodes += other.parseTreeNodes;
+            variables += other.variables;
+            classSize += other.classSize;
+        }
+    }
+
+    /**
+     * Returns the statistics report: the time and allocation of each phase followed by the sizes.
+     *
+     * @return the report
+     */
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        if (compilations > 1) {
+            sb.append(String.format("Totals over %d compilations%n", compilations));
+        }
+        sb.append(String.format("%-12s %12s %14s%n", "Phase", "Time ms", "Allocated KB"));
+        long totalNanos = 0;
+        long totalAllocated = 0;
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            sb.append(String.format("%-12s %12.3f %14s%n", entry.getKey(), phase.nanos / 1e6, kilobytes(phase.allocated)));
+            totalNanos += phase.nanos;
+            totalAllocated += phase.allocated;
+        }
+        sb.append(String.format("%-12s %12.3f %14s%n", "Total", totalNanos / 1e6, kilobytes(totalAllocated)));
+        if (cached > 0) {
+            sb.append(String.format("%d classes taken from the compile cache%n", cached));
+        }
+        sb.append(String.format("Tokens: %d, parse tree nodes: %d, variables: %d, class size: %d bytes%n",
+                tokens, parseTreeNodes, variables, classSize));
+        return sb.toString();
+    }
+
+    /**
+     * Formats an allocated amount in kilobytes.
+     *
+     * @param bytes the amount in bytes
+     * @return the amount, or n/a if the JVM cannot measure allocation
+     */
+    private static String kilobytes(long bytes) {
+        return THREADS != null ? String.format("%.1f", bytes / 1024.0) : "n/a";
+    }
+}
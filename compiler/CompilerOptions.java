@@ -0,0 +1,226 @@
+/**
+ * The CompilerOptions class holds the command-line options of the KnightCode compiler. Options start with
+ * {@code -} and come before the input and output paths, which are kept in order as the arguments.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompilerOptions {
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path cacheDirectory; // null when the compile cache is disabled
+    private long cacheSize = 64L * 1024 * 1024;
+    private int optimizationLevel = 0;
+    private boolean optimizationReport;
+    private boolean bufferedOutput;
+    private int maxMethodSize = MethodSplitter.DEFAULT_MAX_METHOD_SIZE;
+    private int unrollFactor = LoopUnrolling.DEFAULT_FACTOR;
+    private int target = 17;
+    private boolean verify;
+    private boolean stripDebug; // leave out the source file, line numbers and local variable names
+    private boolean stats;
+    private boolean profile;
+    private boolean stream;
+    private Path jar; // null when classes are written as separate files
+    private boolean run;
+    private int tierUpThreshold = Interpreter.DEFAULT_TIER_UP_THRESHOLD;
+    private final List<String> arguments = new ArrayList<>();
+
+    /**
+     * Parses the command-line options.
+     *
+     * @param args the command line arguments
+     * @return the parsed options
+     * @throws IllegalArgumentException if an option is unknown or is missing its value
+     */
+    public static CompilerOptions parse(String[] args) {
+        CompilerOptions options = new CompilerOptions();
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            String option = args[i++];
+            switch (option) {
+                case "--threads":
+                    options.threads = Integer.parseInt(value(args, i++, option));
+                    break;
+                case "--cache":
+                    options.cacheDirectory = Paths.get(value(args, i++, option));
+                    break;
+                case "--cache-size":
+                    options.cacheSize = Long.parseLong(value(args, i++, option)) * 1024 * 1024;
+                    break;
+                case "-O0":
+                case "-O1":
+                case "-O2":
+                    options.optimizationLevel = option.charAt(2) - '0';
+                    break;
+                case "--opt-report":
+                    options.optimizationReport = true;
+                    break;
+                case "--buffered-output":
+                    options.bufferedOutput = true;
+                    break;
+                case "--max-method-size":
+                    options.maxMethodSize = Integer.parseInt(value(args, i++, option));
+                    if (options.maxMethodSize < MethodSplitter.MIN_MAX_METHOD_SIZE) {
+                        throw new IllegalArgumentException("--max-method-size needs a budget of at least "
+                                + MethodSplitter.MIN_MAX_METHOD_SIZE + " bytes");
+                    }
+                    break;
+                case "--unroll":
+                    options.unrollFactor = Integer.parseInt(value(args, i++, option));
+                    if (options.unrollFactor < 1) {
+                        throw new IllegalArgumentException("--unroll needs a factor of 1 or more (1 to not unroll)");
+                    }
+                    break;
+                case "--target":
+                    options.target = Integer.parseInt(value(args, i++, option));
+                    if (options.target != 8 && options.target != 17 && options.target != 21) {
+                        throw new IllegalArgumentException("Unsupported target: " + options.target + " (use 8, 17 or 21)");
+                    }
+                    break;
+                case "--verify":
+                    options.verify = true;
+                    break;
+                case "--strip-debug":
+                    options.stripDebug = true;
+                    break;
+                case "--stats":
+                    options.stats = true;
+                    break;
+                case "--profile":
+                    options.profile = true;
+                    break;
+                case "--stream":
+                    options.stream = true;
+                    break;
+                case "--jar":
+                    options.jar = Paths.get(value(args, i++, option));
+                    break;
+                case "--run":
+                    options.run = true;
+                    break;
+                case "--tier-up":
+                    options.tierUpThreshold = Integer.parseInt(value(args, i++, option));
+                    if (options.tierUpThreshold < 0) {
+                        throw new IllegalArgumentException("--tier-up needs a number of back-edges, or 0 to never compile");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        while (i < args.length) {
+            options.arguments.add(args[i++]);
+        }
+        return options;
+    }
+
+    /**
+     * Returns the value following an option.
+     *
+     * @param args the command line arguments
+     * @param index the index of the value
+     * @param option the option the value belongs to
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Returns a key identifying the options that change the generated bytecode. Compiled classes can only
+     * be reused between compilations whose keys are equal.
+     *
+     * @return the key of the code generation options
+     */
+    public String getCodegenKey() {
+        return "O" + optimizationLevel + (bufferedOutput ? " buffered-output" : "") + (profile ? " profile" : "")
+                + " max-method-size " + maxMethodSize + " unroll " + unrollFactor + " target " + target
+                + (stripDebug ? " strip-debug" : "");
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    public boolean isOptimizationReport() {
+        return optimizationReport;
+    }
+
+    public boolean isBufferedOutput() {
+        return bufferedOutput;
+    }
+
+    public int getMaxMethodSize() {
+        return maxMethodSize;
+    }
+
+    public int getUnrollFactor() {
+        return unrollFactor;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    public boolean isDebugInfo() {
+        return !stripDebug;
+    }
+
+    public boolean isStats() {
+        return stats;
+    }
+
+    public boolean isProfile() {
+        return profile;
+    }
+
+    public boolean isStream() {
+        return stream;
+    }
+
+    public Path getJar() {
+        return jar;
+    }
+
+    public boolean isRun() {
+        return run;
+    }
+
+    public int getTierUpThreshold() {
+        return tierUpThreshold;
+    }
+
+    public List<String> getArguments() {
+        return arguments;
+    }
+}
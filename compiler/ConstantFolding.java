@@ -0,0 +1,146 @@
+/**
+ * The ConstantFolding pass evaluates constant subexpressions at compile time and simplifies arithmetic
+ * with identity and annihilator operands. Folding follows the JVM's int semantics exactly: additions and
+ * multiplications wrap on overflow and divisions round toward zero. Divisions by a constant zero are left
+ * alone so they still throw at run time, and {@code x * 0} is only simplified when evaluating {@code x}
+ * cannot throw.
+ *
+ * <ul>
+ *   <li>{@code 2 * 3 + 4} becomes {@code 10}, and comparisons of constants become 1 or 0</li>
+ *   <li>{@code x * 1}, {@code 1 * x}, {@code x + 0}, {@code 0 + x}, {@code x - 0} and {@code x / 1} become {@code x}</li>
+ *   <li>{@code x * 0} and {@code 0 * x} become {@code 0}</li>
+ *   <li>{@code (x + 2) + 3} becomes {@code x + 5}, and likewise for multiplication</li>
+ * </ul>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+public class ConstantFolding implements IrPass {
+
+    @Override
+    public String getName() {
+        return "constant-folding";
+    }
+
+    @Override
+    public void run(Ir.Program program) {
+        Ir.rewriteExpressions(program.body, ConstantFolding::fold);
+    }
+
+    /**
+     * Folds and simplifies an expression, children first.
+     *
+     * @param expr the expression
+     * @return the simplified expression, which may be the same node
+     */
+    static Ir.Expr fold(Ir.Expr expr) {
+        if (expr instanceof Ir.Compare) {
+            Ir.Compare compare = (Ir.Compare) expr;
+            compare.left = fold(compare.left);
+            compare.right = fold(compare.right);
+            if (compare.left instanceof Ir.IntConst && compare.right instanceof Ir.IntConst) {
+                boolean holds = compare.relation.test(value(compare.left), value(compare.right));
+                return constant(holds ? 1 : 0, expr);
+            }
+            return compare;
+        }
+        if (!(expr instanceof Ir.Binary)) {
+            return expr;
+        }
+
+        Ir.Binary binary = (Ir.Binary) expr;
+        binary.left = fold(binary.left);
+        binary.right = fold(binary.right);
+        Ir.Expr left = binary.left;
+        Ir.Expr right = binary.right;
+
+        if (left instanceof Ir.IntConst && right instanceof Ir.IntConst) {
+            if (binary.operator == Ir.Operator.DIV && value(right) == 0) {
+                return binary; // keep the ArithmeticException for run time
+            }
+            return constant(binary.operator.apply(value(left), value(right)), expr);
+        }
+
+        switch (binary.operator) {
+            case ADD:
+                if (isConstant(right, 0)) {
+                    return left;
+                }
+                if (isConstant(left, 0)) {
+                    return right;
+                }
+                return reassociate(binary);
+            case SUB:
+                if (isConstant(right, 0)) {
+                    return left;
+                }
+                return binary;
+            case MUL:
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                if (isConstant(left, 1)) {
+                    return right;
+                }
+                if (isConstant(right, 0) && !Ir.mayFail(left) || isConstant(left, 0) && !Ir.mayFail(right)) {
+                    return constant(0, expr);
+                }
+                return reassociate(binary);
+            case DIV:
+                if (isConstant(right, 1)) {
+                    return left;
+                }
+                return binary;
+            default:
+                return binary;
+        }
+    }
+
+    /**
+     * Combines the constants of nested additions or multiplications, turning {@code (x op c1) op c2} and
+     * {@code c2 op (x op c1)} into {@code x op (c1 op c2)}. Both operators are associative and commutative
+     * in wrapping int arithmetic, so the result is unchanged.
+     *
+     * @param binary an addition or multiplication whose operands have already been folded
+     * @return the simplified expression
+     */
+    private static Ir.Expr reassociate(Ir.Binary binary) {
+        Ir.Expr constant = binary.right instanceof Ir.IntConst ? binary.right : binary.left;
+        Ir.Expr other = constant == binary.right ? binary.left : binary.right;
+        if (!(constant instanceof Ir.IntConst) || !(other instanceof Ir.Binary)) {
+            return binary;
+        }
+        Ir.Binary inner = (Ir.Binary) other;
+        if (inner.operator != binary.operator || !(inner.right instanceof Ir.IntConst)) {
+            return binary;
+        }
+        inner.right = constant(binary.operator.apply(value(inner.right), value(constant)), inner.right);
+        return fold(inner);
+    }
+
+    private static boolean isConstant(Ir.Expr expr, int value) {
+        return expr instanceof Ir.IntConst && ((Ir.IntConst) expr).value == value;
+    }
+
+    private static int value(Ir.Expr expr) {
+        return ((Ir.IntConst) expr).value;
+    }
+
+    /**
+     * Creates a constant that keeps the source line of the expression it replaces.
+     *
+     * @param value the value of the constant
+     * @param replaced the expression the constant replaces
+     * @return the constant
+     */
+    private static Ir.IntConst constant(int value, Ir.Expr replaced) {
+        Ir.IntConst constant = new Ir.IntConst(value);
+        constant.line = replaced.line;
+        return constant;
+    }
+}
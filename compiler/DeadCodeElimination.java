@@ -0,0 +1,78 @@
+/**
+ * The DeadCodeElimination pass removes statements that can never run or whose result is never used:
+ * IF statements whose condition compares two constants are replaced by the branch that is taken, WHILE
+ * loops whose condition is constantly false are dropped, and expressions used as statements are dropped
+ * when evaluating them cannot fail. Divisions are always kept because they may throw on a zero divisor.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DeadCodeElimination implements IrPass {
+
+    @Override
+    public String getName() {
+        return "dead-code-elimination";
+    }
+
+    @Override
+    public void run(Ir.Program program) {
+        eliminate(program.body);
+    }
+
+    /**
+     * Removes dead statements from a statement list and from every list nested in it.
+     *
+     * @param statements the statements to clean up, rewritten in place
+     */
+    private void eliminate(List<Ir.Stmt> statements) {
+        List<Ir.Stmt> live = new ArrayList<>(statements.size());
+        for (Ir.Stmt statement : statements) {
+            if (statement instanceof Ir.If) {
+                Ir.If decision = (Ir.If) statement;
+                eliminate(decision.thenBody);
+                eliminate(decision.elseBody);
+                Boolean outcome = constantOutcome(decision.condition);
+                if (outcome != null) {
+                    live.addAll(outcome ? decision.thenBody : decision.elseBody);
+                } else if (!decision.thenBody.isEmpty() || !decision.elseBody.isEmpty()) {
+                    live.add(decision);
+                }
+            } else if (statement instanceof Ir.While) {
+                Ir.While loop = (Ir.While) statement;
+                eliminate(loop.body);
+                if (!Boolean.FALSE.equals(constantOutcome(loop.condition))) {
+                    live.add(loop);
+                }
+            } else if (statement instanceof Ir.Evaluate) {
+                if (Ir.mayFail(((Ir.Evaluate) statement).value)) {
+                    live.add(statement);
+                }
+            } else {
+                live.add(statement);
+            }
+        }
+        statements.clear();
+        statements.addAll(live);
+    }
+
+    /**
+     * Evaluates a condition whose operands are both constants.
+     *
+     * @param condition the condition
+     * @return the outcome of the condition, or null if it is not constant
+     */
+    private static Boolean constantOutcome(Ir.Compare condition) {
+        if (condition.left instanceof Ir.IntConst && condition.right instanceof Ir.IntConst) {
+            return condition.relation.test(((Ir.IntConst) condition.left).value, ((Ir.IntConst) condition.right).value);
+        }
+        return null;
+    }
+}
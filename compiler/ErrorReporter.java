@@ -1,5 +1,81 @@
+/**
+ * Collects syntax errors reported by the KnightCode lexer and parser, and the variables the IR builders
+ * find undeclared, so that callers can decide what to do with them instead of having them printed
+ * straight to the console.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
 package compiler;
 
-public class ErrorReporter {
-    
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+public class ErrorReporter extends BaseErrorListener {
+    private final String sourceName;
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Constructs a new ErrorReporter for the given source.
+     *
+     * @param sourceName the name of the source being compiled, used as a prefix for each message
+     */
+    public ErrorReporter(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Records a syntax error reported by the lexer or parser.
+     */
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+            String msg, RecognitionException e) {
+        error(line, charPositionInLine, msg);
+    }
+
+    /**
+     * Records an error found once the source is parsed, such as a variable that is not declared.
+     *
+     * @param line the line of the error, counting from 1
+     * @param charPositionInLine the column of the error, counting from 0
+     * @param msg the message
+     */
+    public void error(int line, int charPositionInLine, String msg) {
+        errors.add(sourceName + ":" + line + ":" + charPositionInLine + ": " + msg);
+    }
+
+    /**
+     * Checks if any errors have been reported.
+     *
+     * @return true if at least one error was reported, false otherwise
+     */
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    /**
+     * Returns the errors reported so far in the order they were reported.
+     *
+     * @return the list of error messages
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns all reported errors, one per line.
+     *
+     * @return a string containing every error message
+     */
+    @Override
+    public String toString() {
+        return String.join("\n", errors);
+    }
 }
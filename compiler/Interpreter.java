@@ -0,0 +1,442 @@
+/**
+ * The Interpreter class runs a KnightCode program straight from its IR, for short scripts where generating,
+ * writing and loading a class costs more than running the program. Before running, the IR is turned into a
+ * tree of closures: every variable reference is resolved to its id from the symbol table, which indexes the
+ * integer and string arrays holding the values of the variables, and every operator and relation is picked
+ * once instead of on every evaluation.
+ *
+ * <p>Every WHILE loop counts its back-edges. Once a loop has taken more back-edges than the tier-up
+ * threshold, in total over all the times it ran, the loop is compiled into a class of its own and
+ * defined in the running JVM, and the loop continues in the compiled code from its next condition test.
+ * The variables the loop uses become static fields of that class: their values are copied into the fields
+ * before the compiled loop runs and copied back once it ends or throws, so the state carries across the
+ * switch and the interpreter continues after the loop. A loop nested in a compiled loop is compiled with
+ * it, and an inner loop compiled first is simply compiled again as part of the outer loop. A loop whose
+ * class cannot be generated keeps running in the interpreter.
+ *
+ * <p>The interpreter reads and prints through the same runtime support class and with the same semantics as
+ * the generated code, including {@code --buffered-output}, so it prints exactly what the compiled program
+ * would.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+public class Interpreter {
+    // The back-edges a loop takes in the interpreter before it is compiled
+    static final int DEFAULT_TIER_UP_THRESHOLD = 10000;
+
+    private final Ir.Program program;
+    private final CompilerOptions options;
+    private final PeepholeOptimizer peephole; // null below -O1
+    private final boolean bufferedOutput;
+    private final int threshold; // 0 to never compile
+    private final int[] integers; // the value of every integer variable, indexed by variable id
+    private final String[] strings; // the value of every string variable, indexed by variable id
+    private final Statement main;
+    private long backEdges;
+    private int compiledLoops;
+    private int failedLoops;
+    private long compileNanos;
+
+    /**
+     * A statement of the closure tree.
+     */
+    private interface Statement {
+        void run();
+    }
+
+    /**
+     * An integer expression of the closure tree.
+     */
+    private interface IntExpression {
+        int evaluate();
+    }
+
+    /**
+     * A string expression of the closure tree.
+     */
+    private interface StringExpression {
+        String evaluate();
+    }
+
+    /**
+     * The condition of an IF or WHILE statement.
+     */
+    private interface Condition {
+        boolean test();
+    }
+
+    /**
+     * Constructs an interpreter for a program and builds its closure tree.
+     *
+     * @param program the optimized IR of the program, which must not be split into methods
+     * @param options the compiler options; the optimization level, output buffering and tier-up threshold
+     *                are used, along with the class file options of compiled loops
+     */
+    public Interpreter(Ir.Program program, CompilerOptions options) {
+        this.program = program;
+        this.options = options;
+        this.peephole = options.getOptimizationLevel() >= 1 ? new PeepholeOptimizer() : null;
+        this.bufferedOutput = options.isBufferedOutput();
+        this.threshold = options.getTierUpThreshold();
+        this.integers = new int[program.variables];
+        this.strings = new String[program.variables];
+        this.main = block(program.body);
+    }
+
+    /**
+     * Runs the program in the current thread. With buffered output, the output is flushed when the program
+     * ends or throws.
+     */
+    public void run() {
+        try {
+            main.run();
+        } finally {
+            if (bufferedOutput) {
+                KnightRuntime.flush();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of loops compiled so far.
+     *
+     * @return the number of compiled loops
+     */
+    public int getCompiledLoops() {
+        return compiledLoops;
+    }
+
+    /**
+     * Returns a summary of the run: the back-edges taken in the interpreter and the loops compiled.
+     *
+     * @return the summary
+     */
+    public String report() {
+        return String.format("Interpreted %d back-edges, compiled %d loops in %.1f ms%s%n", backEdges, compiledLoops,
+                compileNanos / 1e6, failedLoops == 0 ? "" : " (" + failedLoops + " could not be compiled)");
+    }
+
+    /**
+     * Builds the closure of a list of statements.
+     *
+     * @param statements the statements
+     * @return the closure running them in order
+     */
+    private Statement block(List<Ir.Stmt> statements) {
+        Statement[] closures = new Statement[statements.size()];
+        for (int i = 0; i < closures.length; i++) {
+            closures[i] = statement(statements.get(i));
+        }
+        if (closures.length == 1) {
+            return closures[0];
+        }
+        return () -> {
+            for (Statement closure : closures) {
+                closure.run();
+            }
+        };
+    }
+
+    /**
+     * Builds the closure of a single statement.
+     *
+     * @param statement the statement
+     * @return the closure running it
+     */
+    private Statement statement(Ir.Stmt statement) {
+        if (statement instanceof Ir.Assign) {
+            Ir.Assign assign = (Ir.Assign) statement;
+            int id = assign.target.id;
+            if (assign.target.type == VarType.STRING) {
+                StringExpression value = stringExpression(assign.value);
+                return () -> strings[id] = value.evaluate();
+            }
+            IntExpression value = intExpression(assign.value);
+            return () -> integers[id] = value.evaluate();
+        } else if (statement instanceof Ir.Print) {
+            Ir.Expr value = ((Ir.Print) statement).value;
+            if (value.type() == VarType.STRING) {
+                StringExpression text = stringExpression(value);
+                return () -> print(text.evaluate());
+            }
+            IntExpression number = intExpression(value);
+            return () -> print(number.evaluate());
+        } else if (statement instanceof Ir.Read) {
+            Ir.Var target = ((Ir.Read) statement).target;
+            int id = target.id;
+            if (target.type == VarType.STRING) {
+                return () -> strings[id] = KnightRuntime.readLine();
+            }
+            return () -> integers[id] = KnightRuntime.readInt();
+        } else if (statement instanceof Ir.If) {
+            Ir.If decision = (Ir.If) statement;
+            Condition condition = condition(decision.condition);
+            Statement thenBody = block(decision.thenBody);
+            Statement elseBody = block(decision.elseBody);
+            return () -> {
+                if (condition.test()) {
+                    thenBody.run();
+                } else {
+                    elseBody.run();
+                }
+            };
+        } else if (statement instanceof Ir.While) {
+            return new Loop((Ir.While) statement);
+        } else if (statement instanceof Ir.Evaluate) {
+            Ir.Expr value = ((Ir.Evaluate) statement).value;
+            if (value.type() == VarType.STRING) {
+                StringExpression discarded = stringExpression(value);
+                return discarded::evaluate;
+            }
+            IntExpression discarded = intExpression(value);
+            return discarded::evaluate;
+        }
+        throw new RuntimeException("Unsupported statement: " + statement);
+    }
+
+    /**
+     * A WHILE loop, which counts its back-edges and is compiled once it is hot.
+     */
+    private final class Loop implements Statement {
+        private final Ir.While loop;
+        private final Condition condition;
+        private final Statement body;
+        private int taken; // the back-edges taken in the interpreter
+        private CompiledLoop compiled;
+        private boolean failed; // true if the loop could not be compiled
+
+        Loop(Ir.While loop) {
+            this.loop = loop;
+            this.condition = condition(loop.condition);
+            this.body = block(loop.body);
+        }
+
+        public void run() {
+            if (compiled != null) {
+                compiled.run();
+                return;
+            }
+            while (condition.test()) {
+                body.run();
+                backEdges++;
+                if (++taken == threshold && !failed) {
+                    compiled = compile(loop);
+                    if (compiled != null) {
+                        compiled.run();
+                        return;
+                    }
+                    failed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * A loop compiled into the main method of a class of its own, with the variables it uses as static
+     * fields of the class.
+     */
+    private final class CompiledLoop {
+        private final KnightCode.Program loopProgram;
+        private final Ir.Var[] variables;
+        private final Field[] fields;
+
+        CompiledLoop(KnightCode.Program loopProgram, List<Ir.Var> variables) throws ReflectiveOperationException {
+            this.loopProgram = loopProgram;
+            this.variables = variables.toArray(new Ir.Var[0]);
+            this.fields = new Field[this.variables.length];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = loopProgram.getProgramClass().getDeclaredField(this.variables[i].name);
+                fields[i].setAccessible(true);
+            }
+        }
+
+        /**
+         * Runs the loop from its condition test, copying the variables into the fields of the class before
+         * and back out of them after.
+         */
+        void run() {
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    int id = variables[i].id;
+                    if (variables[i].type == VarType.STRING) {
+                        fields[i].set(null, strings[id]);
+                    } else {
+                        fields[i].setInt(null, integers[id]);
+                    }
+                }
+                try {
+                    loopProgram.run();
+                } finally {
+                    for (int i = 0; i < fields.length; i++) {
+                        int id = variables[i].id;
+                        if (variables[i].type == VarType.STRING) {
+                            strings[id] = (String) fields[i].get(null);
+                        } else {
+                            integers[id] = fields[i].getInt(null);
+                        }
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot reach the variables of " + loopProgram.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Compiles a loop into a class of its own and defines it in the running JVM. The class is named after
+     * the program and numbered by the loops compiled before it.
+     *
+     * @param loop the loop
+     * @return the compiled loop, or null if its class cannot be generated
+     */
+    private CompiledLoop compile(Ir.While loop) {
+        long start = System.nanoTime();
+        List<Ir.Stmt> statements = List.of(loop);
+        List<Ir.Var> variables = Ir.variables(statements);
+        if (variables.size() > IrLowering.MAX_FIELDS) {
+            failedLoops++;
+            return null; // the rest would be spilled to arrays the interpreter cannot reach
+        }
+        try {
+            String className = program.name + "$Loop" + (compiledLoops + failedLoops + 1);
+            BytecodeGenerator bytecodeGenerator = new BytecodeGenerator(options, peephole);
+            bytecodeGenerator.startClass(className);
+            IrLowering lowering = new IrLowering(bytecodeGenerator);
+            lowering.declare(program.variables, variables);
+            lowering.lowerMain(statements);
+            byte[] bytecode = bytecodeGenerator.getBytecode();
+            if (options.isVerify()) {
+                String problems = ClassVerifier.verify(bytecode);
+                if (problems != null) {
+                    throw new RuntimeException("Generated class " + className + " failed verification:\n" + problems);
+                }
+            }
+            CompiledLoop compiled = new CompiledLoop(KnightCode.define(bytecode), variables);
+            compiledLoops++;
+            return compiled;
+        } catch (RuntimeException | LinkageError | ReflectiveOperationException e) {
+            // Too large for a single method, for example; the loop goes on in the interpreter
+            failedLoops++;
+            return null;
+        } finally {
+            compileNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Builds the closure of a comparison used as an IF or WHILE condition.
+     *
+     * @param compare the comparison
+     * @return the closure testing it
+     */
+    private Condition condition(Ir.Compare compare) {
+        IntExpression left = intExpression(compare.left);
+        IntExpression right = intExpression(compare.right);
+        switch (compare.relation) {
+            case GT:
+                return () -> left.evaluate() > right.evaluate();
+            case LT:
+                return () -> left.evaluate() < right.evaluate();
+            case EQ:
+                return () -> left.evaluate() == right.evaluate();
+            case NE:
+                return () -> left.evaluate() != right.evaluate();
+            default:
+                throw new RuntimeException("Unsupported relational operator: " + compare.relation);
+        }
+    }
+
+    /**
+     * Builds the closure of an integer expression.
+     *
+     * @param expr the expression
+     * @return the closure evaluating it
+     */
+    private IntExpression intExpression(Ir.Expr expr) {
+        if (expr instanceof Ir.IntConst) {
+            int value = ((Ir.IntConst) expr).value;
+            return () -> value;
+        } else if (expr instanceof Ir.Var && expr.type() == VarType.INTEGER) {
+            int id = ((Ir.Var) expr).id;
+            return () -> integers[id];
+        } else if (expr instanceof Ir.Binary) {
+            Ir.Binary binary = (Ir.Binary) expr;
+            IntExpression left = intExpression(binary.left);
+            IntExpression right = intExpression(binary.right);
+            switch (binary.operator) {
+                case ADD:
+                    return () -> left.evaluate() + right.evaluate();
+                case SUB:
+                    return () -> left.evaluate() - right.evaluate();
+                case MUL:
+                    return () -> left.evaluate() * right.evaluate();
+                case DIV:
+                    return () -> left.evaluate() / right.evaluate();
+                case SHL:
+                    return () -> left.evaluate() << right.evaluate();
+                case SHR:
+                    return () -> left.evaluate() >> right.evaluate();
+                case USHR:
+                    return () -> left.evaluate() >>> right.evaluate();
+                default:
+                    throw new RuntimeException("Unsupported operator: " + binary.operator);
+            }
+        } else if (expr instanceof Ir.Compare) {
+            Condition condition = condition((Ir.Compare) expr);
+            return () -> condition.test() ? 1 : 0;
+        }
+        throw new RuntimeException("Unsupported expression: " + expr);
+    }
+
+    /**
+     * Builds the closure of a string expression.
+     *
+     * @param expr the expression
+     * @return the closure evaluating it
+     */
+    private StringExpression stringExpression(Ir.Expr expr) {
+        if (expr instanceof Ir.StringConst) {
+            String value = ((Ir.StringConst) expr).value;
+            return () -> value;
+        } else if (expr instanceof Ir.Var && expr.type() == VarType.STRING) {
+            int id = ((Ir.Var) expr).id;
+            return () -> strings[id];
+        }
+        throw new RuntimeException("Unsupported expression: " + expr);
+    }
+
+    /**
+     * Prints a string the way the generated code does.
+     *
+     * @param text the string, which may be null
+     */
+    private void print(String text) {
+        if (bufferedOutput) {
+            KnightRuntime.println(text);
+        } else {
+            System.out.println(text);
+        }
+    }
+
+    /**
+     * Prints an integer the way the generated code does.
+     *
+     * @param value the integer
+     */
+    private void print(int value) {
+        if (bufferedOutput) {
+            KnightRuntime.println(value);
+        } else {
+            System.out.println(value);
+        }
+    }
+}
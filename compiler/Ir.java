@@ -0,0 +1,684 @@
+/**
+ * The Ir class holds the intermediate representation of a KnightCode program. KccVisitor builds it from
+ * the parse tree, the optimization passes run by the PassManager rewrite it, and IrLowering turns it into
+ * bytecode through the BytecodeGenerator. Variables are resolved against the symbol table when the IR is
+ * built, so every variable reference already carries its type and local variable index.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+public final class Ir {
+
+    private Ir() {
+    }
+
+    /**
+     * Binary arithmetic operators.
+     */
+    public enum Operator {
+        ADD("+"), SUB("-"), MUL("*"), DIV("/"),
+        // Shifts have no KnightCode syntax; the optimizer introduces them for strength reduction
+        SHL("<<"), SHR(">>"), USHR(">>>");
+
+        final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Applies the operator to two integers with the same overflow, rounding and shift semantics as the
+         * JVM instruction it is lowered to.
+         *
+         * @param left the left operand
+         * @param right the right operand
+         * @return the result
+         * @throws ArithmeticException if dividing by zero
+         */
+        int apply(int left, int right) {
+            switch (this) {
+                case ADD:
+                    return left + right;
+                case SUB:
+                    return left - right;
+                case MUL:
+                    return left * right;
+                case DIV:
+                    return left / right;
+                case SHL:
+                    return left << right;
+                case SHR:
+                    return left >> right;
+                default:
+                    return left >>> right;
+            }
+        }
+    }
+
+    /**
+     * Relational operators used by comparisons and by IF and WHILE conditions.
+     */
+    public enum Relation {
+        GT(">"), LT("<"), EQ("="), NE("<>");
+
+        final String symbol;
+
+        Relation(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Evaluates the relation on two integers.
+         *
+         * @param left the left operand
+         * @param right the right operand
+         * @return true if the relation holds
+         */
+        boolean test(int left, int right) {
+            switch (this) {
+                case GT:
+                    return left > right;
+                case LT:
+                    return left < right;
+                case EQ:
+                    return left == right;
+                default:
+                    return left != right;
+            }
+        }
+    }
+
+    /**
+     * Base class of every IR node.
+     */
+    public abstract static class Node {
+        int line; // source line the node came from, 0 if unknown
+
+        /**
+         * Counts the nodes in the subtree rooted at this node.
+         *
+         * @return the number of nodes
+         */
+        abstract int size();
+    }
+
+    /**
+     * Base class of expressions.
+     */
+    public abstract static class Expr extends Node {
+
+        /**
+         * Returns the type of the value of the expression.
+         *
+         * @return the type of the value
+         */
+        abstract VarType type();
+    }
+
+    /**
+     * An integer constant.
+     */
+    public static final class IntConst extends Expr {
+        final int value;
+
+        IntConst(int value) {
+            this.value = value;
+        }
+
+        VarType type() {
+            return VarType.INTEGER;
+        }
+
+        int size() {
+            return 1;
+        }
+
+        public String toString() {
+            return Integer.toString(value);
+        }
+    }
+
+    /**
+     * A string constant.
+     */
+    public static final class StringConst extends Expr {
+        final String value;
+
+        StringConst(String value) {
+            this.value = value;
+        }
+
+        VarType type() {
+            return VarType.STRING;
+        }
+
+        int size() {
+            return 1;
+        }
+
+        public String toString() {
+            return "\"" + value + "\"";
+        }
+    }
+
+    /**
+     * A reference to a declared variable.
+     */
+    public static final class Var extends Expr {
+        final String name;
+        final VarType type;
+        final int id; // dense id from the symbol table
+
+        Var(String name, VarType type, int id) {
+            this.name = name;
+            this.type = type;
+            this.id = id;
+        }
+
+        VarType type() {
+            return type;
+        }
+
+        int size() {
+            return 1;
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * An arithmetic operation on two integer expressions.
+     */
+    public static final class Binary extends Expr {
+        Operator operator;
+        Expr left;
+        Expr right;
+
+        Binary(Operator operator, Expr left, Expr right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        VarType type() {
+            return VarType.INTEGER;
+        }
+
+        int size() {
+            return 1 + left.size() + right.size();
+        }
+
+        public String toString() {
+            return "(" + left + " " + operator.symbol + " " + right + ")";
+        }
+    }
+
+    /**
+     * A comparison of two integer expressions. As an expression it evaluates to 1 when the relation holds
+     * and 0 otherwise; it is also the condition of IF and WHILE statements.
+     */
+    public static final class Compare extends Expr {
+        Relation relation;
+        Expr left;
+        Expr right;
+
+        Compare(Relation relation, Expr left, Expr right) {
+            this.relation = relation;
+            this.left = left;
+            this.right = right;
+        }
+
+        VarType type() {
+            return VarType.INTEGER;
+        }
+
+        int size() {
+            return 1 + left.size() + right.size();
+        }
+
+        public String toString() {
+            return left + " " + relation.symbol + " " + right;
+        }
+    }
+
+    /**
+     * Base class of statements.
+     */
+    public abstract static class Stmt extends Node {
+    }
+
+    /**
+     * SET: stores the value of an expression in a variable.
+     */
+    public static final class Assign extends Stmt {
+        final Var target;
+        Expr value;
+
+        Assign(Var target, Expr value) {
+            this.target = target;
+            this.value = value;
+        }
+
+        int size() {
+            return 1 + value.size();
+        }
+
+        public String toString() {
+            return "SET " + target + " := " + value;
+        }
+    }
+
+    /**
+     * PRINT: prints a string constant or the value of a variable.
+     */
+    public static final class Print extends Stmt {
+        Expr value;
+
+        Print(Expr value) {
+            this.value = value;
+        }
+
+        int size() {
+            return 1 + value.size();
+        }
+
+        public String toString() {
+            return "PRINT " + value;
+        }
+    }
+
+    /**
+     * READ: reads a value from standard input into a variable.
+     */
+    public static final class Read extends Stmt {
+        final Var target;
+
+        Read(Var target) {
+            this.target = target;
+        }
+
+        int size() {
+            return 2;
+        }
+
+        public String toString() {
+            return "READ " + target;
+        }
+    }
+
+    /**
+     * IF: runs one of two statement lists depending on a condition.
+     */
+    public static final class If extends Stmt {
+        Compare condition;
+        final List<Stmt> thenBody;
+        final List<Stmt> elseBody;
+
+        If(Compare condition, List<Stmt> thenBody, List<Stmt> elseBody) {
+            this.condition = condition;
+            this.thenBody = thenBody;
+            this.elseBody = elseBody;
+        }
+
+        int size() {
+            return 1 + condition.size() + Ir.size(thenBody) + Ir.size(elseBody);
+        }
+
+        public String toString() {
+            return "IF " + condition + " THEN " + thenBody + " ELSE " + elseBody;
+        }
+    }
+
+    /**
+     * WHILE: runs a statement list as long as a condition holds, testing it before every iteration.
+     */
+    public static final class While extends Stmt {
+        Compare condition;
+        final List<Stmt> body;
+        boolean bottomTested; // set for counted loops: the condition is tested once before and after every iteration
+
+        While(Compare condition, List<Stmt> body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        int size() {
+            return 1 + condition.size() + Ir.size(body);
+        }
+
+        public String toString() {
+            return (bottomTested ? "COUNTED WHILE " : "WHILE ") + condition + " DO " + body;
+        }
+    }
+
+    /**
+     * An expression used as a statement. Its value is computed and discarded.
+     */
+    public static final class Evaluate extends Stmt {
+        Expr value;
+
+        Evaluate(Expr value) {
+            this.value = value;
+        }
+
+        int size() {
+            return 1 + value.size();
+        }
+
+        public String toString() {
+            return value.toString();
+        }
+    }
+
+    /**
+     * A call of a method split off from the program by the MethodSplitter.
+     */
+    public static final class Call extends Stmt {
+        final String method;
+
+        Call(String method) {
+            this.method = method;
+        }
+
+        int size() {
+            return 1;
+        }
+
+        public String toString() {
+            return "CALL " + method;
+        }
+    }
+
+    /**
+     * A static method holding statements split off from the main method.
+     */
+    public static final class Method extends Node {
+        final String name;
+        final List<Stmt> body;
+        final boolean inLoop; // true if the method may be called more than once
+
+        Method(String name, List<Stmt> body, boolean inLoop) {
+            this.name = name;
+            this.body = body;
+            this.inLoop = inLoop;
+        }
+
+        int size() {
+            return 1 + Ir.size(body);
+        }
+
+        public String toString() {
+            return "METHOD " + name + " " + body;
+        }
+    }
+
+    /**
+     * A whole program: its name and the statements between BEGIN and END. The declarations are kept in
+     * the symbol table. When the program is too large for a single method, the MethodSplitter moves
+     * statements into further methods and the variables they share into static fields.
+     */
+    public static final class Program extends Node {
+        final String name;
+        final List<Stmt> body;
+        final List<Method> methods = new ArrayList<>();
+        final List<Var> fields = new ArrayList<>(); // a reference to every variable shared between methods
+        int variables; // the number of declared variables, one more than the largest variable id
+        int parts; // the number of methods split off so far, which numbers the next one
+
+        Program(String name, List<Stmt> body) {
+            this.name = name;
+            this.body = body;
+        }
+
+        int size() {
+            int size = 1 + Ir.size(body);
+            for (Method method : methods) {
+                size += method.size();
+            }
+            return size;
+        }
+
+        public String toString() {
+            return "PROGRAM " + name + " " + body + (methods.isEmpty() ? "" : " " + methods);
+        }
+    }
+
+    /**
+     * Rewrites every expression held by a list of statements and by the statement lists nested in it. The
+     * rewriter is applied to the value of each SET, PRINT and expression statement and to both operands of
+     * each IF and WHILE condition; it is responsible for descending into subexpressions itself.
+     *
+     * @param statements the statements whose expressions are rewritten in place
+     * @param rewriter the function returning the replacement of an expression
+     */
+    static void rewriteExpressions(List<Stmt> statements, UnaryOperator<Expr> rewriter) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Assign) {
+                Assign assign = (Assign) statement;
+                assign.value = rewriter.apply(assign.value);
+            } else if (statement instanceof Print) {
+                Print print = (Print) statement;
+                print.value = rewriter.apply(print.value);
+            } else if (statement instanceof Evaluate) {
+                Evaluate evaluate = (Evaluate) statement;
+                evaluate.value = rewriter.apply(evaluate.value);
+            } else if (statement instanceof If) {
+                If decision = (If) statement;
+                decision.condition.left = rewriter.apply(decision.condition.left);
+                decision.condition.right = rewriter.apply(decision.condition.right);
+                rewriteExpressions(decision.thenBody, rewriter);
+                rewriteExpressions(decision.elseBody, rewriter);
+            } else if (statement instanceof While) {
+                While loop = (While) statement;
+                loop.condition.left = rewriter.apply(loop.condition.left);
+                loop.condition.right = rewriter.apply(loop.condition.right);
+                rewriteExpressions(loop.body, rewriter);
+            }
+        }
+    }
+
+    /**
+     * Collects the variables used by a list of statements and by the statement lists nested in it.
+     *
+     * @param statements the statements to search
+     * @return a reference to every variable used, once per variable id, in order of first use
+     */
+    static List<Var> variables(List<Stmt> statements) {
+        List<Var> variables = new ArrayList<>();
+        collectVariables(statements, variables, new BitSet());
+        return variables;
+    }
+
+    private static void collectVariables(List<Stmt> statements, List<Var> variables, BitSet seen) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Assign) {
+                collectVariables(((Assign) statement).target, variables, seen);
+                collectVariables(((Assign) statement).value, variables, seen);
+            } else if (statement instanceof Print) {
+                collectVariables(((Print) statement).value, variables, seen);
+            } else if (statement instanceof Read) {
+                collectVariables(((Read) statement).target, variables, seen);
+            } else if (statement instanceof Evaluate) {
+                collectVariables(((Evaluate) statement).value, variables, seen);
+            } else if (statement instanceof If) {
+                If decision = (If) statement;
+                collectVariables(decision.condition, variables, seen);
+                collectVariables(decision.thenBody, variables, seen);
+                collectVariables(decision.elseBody, variables, seen);
+            } else if (statement instanceof While) {
+                While loop = (While) statement;
+                collectVariables(loop.condition, variables, seen);
+                collectVariables(loop.body, variables, seen);
+            }
+        }
+    }
+
+    private static void collectVariables(Expr expr, List<Var> variables, BitSet seen) {
+        if (expr instanceof Var) {
+            Var var = (Var) expr;
+            if (!seen.get(var.id)) {
+                seen.set(var.id);
+                variables.add(var);
+            }
+        } else if (expr instanceof Binary) {
+            collectVariables(((Binary) expr).left, variables, seen);
+            collectVariables(((Binary) expr).right, variables, seen);
+        } else if (expr instanceof Compare) {
+            collectVariables(((Compare) expr).left, variables, seen);
+            collectVariables(((Compare) expr).right, variables, seen);
+        }
+    }
+
+    /**
+     * Counts the assignments of every variable by SET and READ statements in a statement list and in the
+     * lists nested in it.
+     *
+     * @param statements the statements
+     * @param assignments the number of assignments of every variable id, increased in place
+     */
+    static void countAssignments(List<Stmt> statements, int[] assignments) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Assign) {
+                assignments[((Assign) statement).target.id]++;
+            } else if (statement instanceof Read) {
+                assignments[((Read) statement).target.id]++;
+            } else if (statement instanceof If) {
+                countAssignments(((If) statement).thenBody, assignments);
+                countAssignments(((If) statement).elseBody, assignments);
+            } else if (statement instanceof While) {
+                countAssignments(((While) statement).body, assignments);
+            }
+        }
+    }
+
+    /**
+     * Checks if an expression is a reference to a variable.
+     *
+     * @param expr the expression
+     * @param var the variable
+     * @return true if the expression refers to the variable
+     */
+    static boolean isVar(Expr expr, Var var) {
+        return expr instanceof Var && ((Var) expr).id == var.id;
+    }
+
+    /**
+     * Checks if evaluating an expression may throw, which is only the case for divisions.
+     *
+     * @param expr the expression
+     * @return true if the expression contains a division
+     */
+    static boolean mayFail(Expr expr) {
+        if (expr instanceof Binary) {
+            Binary binary = (Binary) expr;
+            return binary.operator == Operator.DIV || mayFail(binary.left) || mayFail(binary.right);
+        }
+        if (expr instanceof Compare) {
+            Compare compare = (Compare) expr;
+            return mayFail(compare.left) || mayFail(compare.right);
+        }
+        return false;
+    }
+
+    /**
+     * Copies a list of statements and everything nested in it, so the copy can be rewritten in place
+     * without changing the original.
+     *
+     * @param statements the statements to copy
+     * @return the copy
+     */
+    static List<Stmt> copy(List<Stmt> statements) {
+        List<Stmt> copy = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            copy.add(copy(statement));
+        }
+        return copy;
+    }
+
+    /**
+     * Copies a statement and everything nested in it.
+     *
+     * @param statement the statement to copy
+     * @return the copy
+     */
+    static Stmt copy(Stmt statement) {
+        Stmt copy;
+        if (statement instanceof Assign) {
+            copy = new Assign((Var) copy(((Assign) statement).target), copy(((Assign) statement).value));
+        } else if (statement instanceof Print) {
+            copy = new Print(copy(((Print) statement).value));
+        } else if (statement instanceof Read) {
+            copy = new Read((Var) copy(((Read) statement).target));
+        } else if (statement instanceof Evaluate) {
+            copy = new Evaluate(copy(((Evaluate) statement).value));
+        } else if (statement instanceof If) {
+            If decision = (If) statement;
+            copy = new If((Compare) copy(decision.condition), copy(decision.thenBody), copy(decision.elseBody));
+        } else if (statement instanceof While) {
+            While loop = (While) statement;
+            While copied = new While((Compare) copy(loop.condition), copy(loop.body));
+            copied.bottomTested = loop.bottomTested;
+            copy = copied;
+        } else if (statement instanceof Call) {
+            copy = new Call(((Call) statement).method);
+        } else {
+            throw new RuntimeException("Unsupported statement: " + statement);
+        }
+        copy.line = statement.line;
+        return copy;
+    }
+
+    /**
+     * Copies an expression and its subexpressions.
+     *
+     * @param expr the expression to copy
+     * @return the copy
+     */
+    static Expr copy(Expr expr) {
+        Expr copy;
+        if (expr instanceof IntConst) {
+            copy = new IntConst(((IntConst) expr).value);
+        } else if (expr instanceof StringConst) {
+            copy = new StringConst(((StringConst) expr).value);
+        } else if (expr instanceof Var) {
+            Var var = (Var) expr;
+            copy = new Var(var.name, var.type, var.id);
+        } else if (expr instanceof Binary) {
+            Binary binary = (Binary) expr;
+            copy = new Binary(binary.operator, copy(binary.left), copy(binary.right));
+        } else if (expr instanceof Compare) {
+            Compare compare = (Compare) expr;
+            copy = new Compare(compare.relation, copy(compare.left), copy(compare.right));
+        } else {
+            throw new RuntimeException("Unsupported expression: " + expr);
+        }
+        copy.line = expr.line;
+        return copy;
+    }
+
+    /**
+     * Counts the nodes in a list of statements.
+     *
+     * @param statements the statements to count
+     * @return the number of nodes
+     */
+    static int size(List<Stmt> statements) {
+        int size = 0;
+        for (Stmt statement : statements) {
+            size += statement.size();
+        }
+        return size;
+    }
+}
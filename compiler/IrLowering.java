@@ -0,0 +1,495 @@
+/**
+ * The IrLowering class turns the intermediate representation of a KnightCode program into bytecode by
+ * driving a BytecodeGenerator. The class must already have been started; lowering emits the main method
+ * and, for programs the MethodSplitter split up, the static fields and the further methods.
+ *
+ * <p>With {@code --profile} the statements are counted a run at a time: a run is a sequence of statements
+ * that always execute together, from the start of a statement list or the end of an IF or WHILE up to and
+ * including the next IF or WHILE. A single counter at the start of each run counts all its statements,
+ * and the counter of the first run of a loop body also counts the iterations of the loop, so a tight loop
+ * pays for one increment per iteration. The calls of split methods are not counted themselves.
+ *
+ * <p>Every variable gets its storage here, looked up by its id from then on: the variables a method uses
+ * alone are numbered densely from local variable 1 in order of first use, and the variables the
+ * MethodSplitter promoted become static fields. A method that would need more local variables than the
+ * class file format allows, or a class that would need more fields than its constant pool can comfortably
+ * name, spills the remaining variables to the static arrays of the BytecodeGenerator.
+ *
+ * <p>Every statement starts at the source line it came from, as does the test at the bottom of a counted
+ * loop, so the debug information of the class maps its code back to the KnightCode source.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.objectweb.asm.Label;
+
+public class IrLowering {
+    // The largest number of local variable slots of a method, including the parameter in slot 0
+    static final int MAX_LOCALS = 65535;
+    // The most variables kept in static fields of their own; each takes three constant pool entries
+    static final int MAX_FIELDS = 8192;
+
+    private static final byte LOCAL = 1;
+    private static final byte FIELD = 2;
+    private static final byte SPILLED = 3;
+
+    private final BytecodeGenerator bytecodeGenerator;
+    private byte[] storage = new byte[0]; // LOCAL, FIELD or SPILLED for every variable id, 0 before it is assigned
+    private int[] slots = new int[0]; // the local variable or spilled element of every variable id
+    private int fieldCount; // the variables kept in static fields of their own
+
+    /**
+     * Constructs a new IrLowering.
+     *
+     * @param bytecodeGenerator the bytecode generator the instructions are emitted through
+     */
+    public IrLowering(BytecodeGenerator bytecodeGenerator) {
+        this.bytecodeGenerator = bytecodeGenerator;
+    }
+
+    /**
+     * Emits the bytecode of a whole program: its static fields, its main method and the methods split
+     * off from it.
+     *
+     * @param program the program to lower
+     */
+    public void lower(Ir.Program program) {
+        declare(program.variables, program.fields);
+        lowerMain(program.body);
+        lowerMethods(program.methods);
+    }
+
+    /**
+     * Makes static fields of variables, up to the most fields a class may have; the rest are spilled.
+     * Every other variable becomes a local variable of the first method using it.
+     *
+     * @param variables the number of declared variables
+     * @param fields a reference to every variable kept in static storage
+     */
+    public void declare(int variables, List<Ir.Var> fields) {
+        storage = new byte[variables];
+        slots = new int[variables];
+        fieldCount = 0;
+        addFields(fields);
+    }
+
+    /**
+     * Makes static fields of further variables once methods were already lowered, as when the passes of a
+     * streamed program add variables. Variables that already have their storage are skipped.
+     *
+     * @param fields a reference to every variable kept in static storage
+     */
+    public void addFields(List<Ir.Var> fields) {
+        for (Ir.Var var : fields) {
+            reserve(var.id);
+            if (storage[var.id] != 0) {
+                continue;
+            }
+            if (fieldCount < MAX_FIELDS) {
+                bytecodeGenerator.addField(var.name, var.type);
+                storage[var.id] = FIELD;
+                fieldCount++;
+            } else {
+                spill(var);
+            }
+        }
+    }
+
+    /**
+     * Makes room for the storage of a variable added to the program after it was declared.
+     *
+     * @param id the id of the variable
+     */
+    private void reserve(int id) {
+        if (id >= storage.length) {
+            int length = Math.max(id + 1, storage.length * 2);
+            storage = Arrays.copyOf(storage, length);
+            slots = Arrays.copyOf(slots, length);
+        }
+    }
+
+    /**
+     * Emits the main method of the program.
+     *
+     * @param statements the statements of the main method
+     */
+    public void lowerMain(List<Ir.Stmt> statements) {
+        bytecodeGenerator.startMainMethod();
+        initializeVariables(statements);
+        lower(statements);
+        bytecodeGenerator.finalizeMainMethod();
+    }
+
+    /**
+     * Emits methods split off from the main method.
+     *
+     * @param methods the methods
+     */
+    public void lowerMethods(List<Ir.Method> methods) {
+        for (Ir.Method method : methods) {
+            bytecodeGenerator.startSplitMethod(method.name);
+            initializeVariables(method.body);
+            lower(method.body);
+            bytecodeGenerator.finalizeMethod();
+        }
+    }
+
+    /**
+     * Assigns local variables to the variables used by the statements of a method that was just started
+     * and initializes them. The variables beyond the slots a method can have are spilled instead.
+     *
+     * @param statements the statements of the method
+     */
+    private void initializeVariables(List<Ir.Stmt> statements) {
+        int nextSlot = 1;
+        for (Ir.Var var : Ir.variables(statements)) {
+            reserve(var.id);
+            if (storage[var.id] != 0) {
+                continue;
+            }
+            if (nextSlot < MAX_LOCALS) {
+                storage[var.id] = LOCAL;
+                slots[var.id] = nextSlot;
+                bytecodeGenerator.initializeVariable(nextSlot++, var.type, var.name);
+            } else {
+                spill(var);
+            }
+        }
+    }
+
+    /**
+     * Spills a variable to an element of the static array of its type.
+     *
+     * @param var a reference to the variable
+     */
+    private void spill(Ir.Var var) {
+        storage[var.id] = SPILLED;
+        slots[var.id] = bytecodeGenerator.spillVariable(var.type);
+    }
+
+    /**
+     * Checks if a variable is kept in a local variable of the method being lowered.
+     *
+     * @param var a reference to the variable
+     * @return true for a local variable, false for a static field or a spilled variable
+     */
+    private boolean isLocal(Ir.Var var) {
+        return storage[var.id] == LOCAL;
+    }
+
+    /**
+     * Emits the instructions that push the value of a variable onto the stack.
+     *
+     * @param var a reference to the variable
+     */
+    private void load(Ir.Var var) {
+        if (storage[var.id] == LOCAL) {
+            bytecodeGenerator.loadVariable(slots[var.id], var.type);
+        } else if (storage[var.id] == FIELD) {
+            bytecodeGenerator.loadField(var.name, var.type);
+        } else {
+            bytecodeGenerator.loadSpilled(slots[var.id], var.type);
+        }
+    }
+
+    /**
+     * Emits the instructions that store the value on the stack in a variable.
+     *
+     * @param var a reference to the variable
+     */
+    private void store(Ir.Var var) {
+        if (storage[var.id] == LOCAL) {
+            bytecodeGenerator.storeVariable(slots[var.id], var.type);
+        } else if (storage[var.id] == FIELD) {
+            bytecodeGenerator.storeField(var.name, var.type);
+        } else {
+            bytecodeGenerator.storeSpilled(slots[var.id], var.type);
+        }
+    }
+
+    /**
+     * Emits the bytecode of a list of statements.
+     *
+     * @param statements the statements to lower
+     */
+    public void lower(List<Ir.Stmt> statements) {
+        lower(statements, 0);
+    }
+
+    /**
+     * Emits the bytecode of a list of statements, counting each run of them when profiling.
+     *
+     * @param statements the statements to lower
+     * @param loopLine the source line of the WHILE loop whose body the statements are, or 0
+     */
+    private void lower(List<Ir.Stmt> statements, int loopLine) {
+        List<Integer> lines = new ArrayList<>();
+        for (int i = 0; i < statements.size(); i++) {
+            bytecodeGenerator.lineNumber(statements.get(i).line);
+            if (i == 0 || statements.get(i - 1) instanceof Ir.If || statements.get(i - 1) instanceof Ir.While) {
+                // A new run starts: count it with the lines of its statements
+                lines.clear();
+                for (int j = i; j < statements.size(); j++) {
+                    Ir.Stmt statement = statements.get(j);
+                    if (!(statement instanceof Ir.Call)) {
+                        lines.add(statement.line);
+                    }
+                    if (statement instanceof Ir.If || statement instanceof Ir.While) {
+                        break;
+                    }
+                }
+                bytecodeGenerator.countExecution(lines, i == 0 ? loopLine : 0);
+            }
+            lower(statements.get(i));
+        }
+    }
+
+    /**
+     * Emits the bytecode of a single statement.
+     *
+     * @param statement the statement to lower
+     */
+    public void lower(Ir.Stmt statement) {
+        bytecodeGenerator.lineNumber(statement.line);
+        if (statement instanceof Ir.Assign) {
+            Ir.Assign assign = (Ir.Assign) statement;
+            if (isLocal(assign.target) && assign.value instanceof Ir.StringConst) {
+                bytecodeGenerator.storeString(slots[assign.target.id], ((Ir.StringConst) assign.value).value);
+            } else {
+                evaluate(assign.value);
+                store(assign.target);
+            }
+        } else if (statement instanceof Ir.Print) {
+            print(((Ir.Print) statement).value);
+        } else if (statement instanceof Ir.Read) {
+            Ir.Var target = ((Ir.Read) statement).target;
+            if (!isLocal(target)) {
+                if (target.type == VarType.INTEGER) {
+                    bytecodeGenerator.readIntegerValue();
+                } else {
+                    bytecodeGenerator.readStringValue();
+                }
+                store(target);
+            } else if (target.type == VarType.INTEGER) {
+                bytecodeGenerator.readInteger(slots[target.id]);
+            } else {
+                bytecodeGenerator.readString(slots[target.id]);
+            }
+        } else if (statement instanceof Ir.If) {
+            lowerIf((Ir.If) statement);
+        } else if (statement instanceof Ir.While) {
+            lowerWhile((Ir.While) statement);
+        } else if (statement instanceof Ir.Evaluate) {
+            evaluate(((Ir.Evaluate) statement).value);
+            bytecodeGenerator.pop();
+        } else if (statement instanceof Ir.Call) {
+            bytecodeGenerator.callSplitMethod(((Ir.Call) statement).method);
+        } else {
+            throw new RuntimeException("Unsupported statement: " + statement);
+        }
+    }
+
+    /**
+     * Emits a PRINT of a string constant, a variable or an integer expression.
+     *
+     * @param value the value to print
+     */
+    private void print(Ir.Expr value) {
+        if (value instanceof Ir.StringConst) {
+            bytecodeGenerator.printString(((Ir.StringConst) value).value);
+        } else if (value instanceof Ir.Var && !isLocal((Ir.Var) value)) {
+            evaluate(value);
+            if (value.type() == VarType.STRING) {
+                bytecodeGenerator.printStringValue();
+            } else {
+                bytecodeGenerator.printInteger();
+            }
+        } else if (value instanceof Ir.Var && value.type() == VarType.STRING) {
+            bytecodeGenerator.printStringVariable(slots[((Ir.Var) value).id]);
+        } else if (value instanceof Ir.Var) {
+            bytecodeGenerator.printIntegerVariable(slots[((Ir.Var) value).id]);
+        } else {
+            evaluate(value);
+            bytecodeGenerator.printInteger();
+        }
+    }
+
+    /**
+     * Emits an IF statement. The condition jumps over the THEN statements when it does not hold.
+     *
+     * @param decision the IF statement
+     */
+    private void lowerIf(Ir.If decision) {
+        Label elseLabel = new Label();
+        Label endLabel = new Label();
+
+        jumpUnless(decision.condition, elseLabel);
+        lower(decision.thenBody);
+        if (decision.elseBody.isEmpty()) {
+            bytecodeGenerator.label(elseLabel);
+            return;
+        }
+        bytecodeGenerator.goTo(endLabel);
+
+        bytecodeGenerator.label(elseLabel);
+        lower(decision.elseBody);
+        bytecodeGenerator.label(endLabel);
+    }
+
+    /**
+     * Emits a WHILE statement. The condition is tested at the top of every iteration and jumps out of the
+     * loop when it does not hold. A counted loop is emitted bottom-tested instead: the condition is tested
+     * once before the loop and again after every iteration, where it jumps back to the top while it holds.
+     *
+     * @param loop the WHILE statement
+     */
+    private void lowerWhile(Ir.While loop) {
+        Label beginningOfLoop = new Label();
+        Label endOfLoop = new Label();
+
+        if (loop.bottomTested) {
+            // Test once on entry, then at the bottom of every iteration, saving the jump back to the test
+            jumpUnless(loop.condition, endOfLoop);
+            bytecodeGenerator.label(beginningOfLoop);
+            lower(loop.body, loop.line);
+            bytecodeGenerator.lineNumber(loop.line);
+            jumpIf(loop.condition, beginningOfLoop);
+            bytecodeGenerator.label(endOfLoop);
+            return;
+        }
+        bytecodeGenerator.label(beginningOfLoop);
+        jumpUnless(loop.condition, endOfLoop);
+        lower(loop.body, loop.line);
+        bytecodeGenerator.goTo(beginningOfLoop);
+        bytecodeGenerator.label(endOfLoop);
+    }
+
+    /**
+     * Emits a conditional jump taken when a comparison does not hold.
+     *
+     * @param condition the comparison
+     * @param target the label to jump to
+     */
+    private void jumpUnless(Ir.Compare condition, Label target) {
+        evaluate(condition.left);
+        evaluate(condition.right);
+        switch (condition.relation) {
+            case GT:
+                bytecodeGenerator.compareLessThanOrEqual(target);
+                break;
+            case LT:
+                bytecodeGenerator.compareGreaterThanOrEqual(target);
+                break;
+            case EQ:
+                bytecodeGenerator.compareNotEquals(target);
+                break;
+            case NE:
+                bytecodeGenerator.compareEquals(target);
+                break;
+            default:
+                throw new RuntimeException("Unsupported relational operator: " + condition.relation);
+        }
+    }
+
+    /**
+     * Emits a conditional jump taken when a comparison holds.
+     *
+     * @param condition the comparison
+     * @param target the label to jump to
+     */
+    private void jumpIf(Ir.Compare condition, Label target) {
+        evaluate(condition.left);
+        evaluate(condition.right);
+        switch (condition.relation) {
+            case GT:
+                bytecodeGenerator.compareGreaterThan(target);
+                break;
+            case LT:
+                bytecodeGenerator.compareLessThan(target);
+                break;
+            case EQ:
+                bytecodeGenerator.compareEquals(target);
+                break;
+            case NE:
+                bytecodeGenerator.compareNotEquals(target);
+                break;
+            default:
+                throw new RuntimeException("Unsupported relational operator: " + condition.relation);
+        }
+    }
+
+    /**
+     * Emits the instructions that push the value of an expression onto the stack.
+     *
+     * @param expr the expression to evaluate
+     */
+    private void evaluate(Ir.Expr expr) {
+        if (expr instanceof Ir.IntConst) {
+            bytecodeGenerator.pushValue(((Ir.IntConst) expr).value);
+        } else if (expr instanceof Ir.StringConst) {
+            bytecodeGenerator.pushString(((Ir.StringConst) expr).value);
+        } else if (expr instanceof Ir.Var) {
+            load((Ir.Var) expr);
+        } else if (expr instanceof Ir.Binary) {
+            Ir.Binary binary = (Ir.Binary) expr;
+            evaluate(binary.left);
+            evaluate(binary.right);
+            switch (binary.operator) {
+                case ADD:
+                    bytecodeGenerator.addIntegers();
+                    break;
+                case SUB:
+                    bytecodeGenerator.subtractIntegers();
+                    break;
+                case MUL:
+                    bytecodeGenerator.multiplyIntegers();
+                    break;
+                case DIV:
+                    bytecodeGenerator.divideIntegers();
+                    break;
+                case SHL:
+                    bytecodeGenerator.shiftLeft();
+                    break;
+                case SHR:
+                    bytecodeGenerator.shiftRight();
+                    break;
+                case USHR:
+                    bytecodeGenerator.unsignedShiftRight();
+                    break;
+                default:
+                    throw new RuntimeException("Unsupported operator: " + binary.operator);
+            }
+        } else if (expr instanceof Ir.Compare) {
+            Ir.Compare compare = (Ir.Compare) expr;
+            evaluate(compare.left);
+            evaluate(compare.right);
+            switch (compare.relation) {
+                case GT:
+                    bytecodeGenerator.compareGreaterThan();
+                    break;
+                case LT:
+                    bytecodeGenerator.compareLessThan();
+                    break;
+                case EQ:
+                    bytecodeGenerator.compareEquals();
+                    break;
+                case NE:
+                    bytecodeGenerator.compareNotEquals();
+                    break;
+                default:
+                    throw new RuntimeException("Unsupported comparison: " + compare);
+            }
+        } else {
+            throw new RuntimeException("Unsupported expression: " + expr);
+        }
+    }
+}
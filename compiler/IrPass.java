@@ -0,0 +1,39 @@
+/**
+ * An optimization pass over the intermediate representation of a KnightCode program. Passes rewrite the
+ * program in place and must keep its observable behavior unchanged. A pass may be run by several threads
+ * at once on different programs, so it must not keep per-program state in fields.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+public interface IrPass {
+
+    /**
+     * Returns the name of the pass as shown in the optimization report.
+     *
+     * @return the name of the pass
+     */
+    String getName();
+
+    /**
+     * Runs the pass over a program.
+     *
+     * @param program the program to rewrite
+     */
+    void run(Ir.Program program);
+
+    /**
+     * Returns what the pass changed in detail, added to the optimization report below the table of
+     * passes. Most passes have nothing to add.
+     *
+     * @return the report, or an empty string
+     */
+    default String report() {
+        return "";
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * The KccClient class is a thin command-line client for {@link KccServer}. It sends a KnightCode file to a
+ * running server and reports the result, taking the same arguments as {@link kcc}. The kcc options are sent
+ * with every request and the server compiles with them; an option the server cannot honor, or one it does
+ * not know, fails the client before anything is sent.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class KccClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Connects to a compile server.
+     *
+     * @param address the loopback or Unix-domain address of the server
+     * @throws IOException if the server cannot be reached
+     */
+    public KccClient(SocketAddress address) throws IOException {
+        this.channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        channel.connect(address);
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Entry point for the client.
+     *
+     * @param args optional {@code --port N}, {@code --socket path}, {@code --inline} and kcc settings followed
+     *             by the path to the input .kc file and the path for the output .class file, or {@code --shutdown}
+     *             to stop the server
+     */
+    public static void main(String[] args) {
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), KccServer.DEFAULT_PORT);
+        boolean inline = false;
+        boolean shutdown = false;
+        List<String> flags = new ArrayList<>(); // the kcc options, sent to the server
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(value(args, ++i)));
+                        break;
+                    case "--socket":
+                        address = UnixDomainSocketAddress.of(value(args, ++i));
+                        break;
+                    case "--inline":
+                        inline = true;
+                        break;
+                    case "--shutdown":
+                        shutdown = true;
+                        break;
+                    default:
+                        // The input and output paths come last; everything before them is a kcc option
+                        (i >= args.length - 2 && !shutdown ? files : flags).add(args[i]);
+                        break;
+                }
+            }
+            KccServer.parseOptions(flags.toArray(new String[0]));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (!shutdown && (files.size() != 2 || files.get(0).startsWith("-"))) {
+            System.out.println("Usage: java compiler/KccClient [--port N | --socket path] [--inline] [options] <path to inputFile.kc> <path to outputFile>");
+            System.out.println("       java compiler/KccClient [--port N | --socket path] --shutdown");
+            System.exit(1);
+            return;
+        }
+
+        try (KccClient client = new KccClient(address)) {
+            if (shutdown) {
+                client.shutdown();
+                return;
+            }
+            String outputFile = files.get(1).endsWith(".class") ? files.get(1) : files.get(1) + ".class";
+            Path input = Paths.get(files.get(0)).toAbsolutePath();
+            Path output = Paths.get(outputFile).toAbsolutePath();
+            String className = KccCompiler.extractClassName(outputFile);
+
+            if (inline) {
+                byte[] bytecode = client.compile(flags, className, Files.readString(input));
+                Files.write(output, bytecode);
+            } else {
+                client.compile(flags, className, input, output);
+            }
+            System.out.println("Bytecode successfully written to " + outputFile);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.err.println("Error processing input file: " + (shutdown ? address : files.get(0)));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the value following an option.
+     *
+     * @param args the command line arguments
+     * @param index the index of the value
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Asks the server to compile a source file with the default options and write the class file itself.
+     *
+     * @param className the name of the class to generate
+     * @param source the path of the source file as seen by the server
+     * @param output the path of the class file as seen by the server
+     * @throws IOException if the connection fails or the source does not compile
+     */
+    public void compile(String className, Path source, Path output) throws IOException {
+        compile(List.of(), className, source, output);
+    }
+
+    /**
+     * Asks the server to compile a source file and write the class file itself.
+     *
+     * @param flags the kcc options to compile with
+     * @param className the name of the class to generate
+     * @param source the path of the source file as seen by the server
+     * @param output the path of the class file as seen by the server
+     * @throws IOException if the connection fails, the options are rejected or the source does not compile
+     */
+    public void compile(List<String> flags, String className, Path source, Path output) throws IOException {
+        out.writeUTF("COMPILE");
+        writeFlags(flags);
+        out.writeUTF(className);
+        out.writeUTF(source.toString());
+        out.writeUTF(output.toString());
+        out.flush();
+        readResponse();
+    }
+
+    /**
+     * Sends KnightCode source text to the server and returns the class compiled with the default options.
+     *
+     * @param className the name of the class to generate
+     * @param source the KnightCode source text
+     * @return the bytecode of the generated class
+     * @throws IOException if the connection fails or the source does not compile
+     */
+    public byte[] compile(String className, String source) throws IOException {
+        return compile(List.of(), className, source);
+    }
+
+    /**
+     * Sends KnightCode source text to the server and returns the compiled class.
+     *
+     * @param flags the kcc options to compile with
+     * @param className the name of the class to generate
+     * @param source the KnightCode source text
+     * @return the bytecode of the generated class
+     * @throws IOException if the connection fails, the options are rejected or the source does not compile
+     */
+    public byte[] compile(List<String> flags, String className, String source) throws IOException {
+        byte[] text = source.getBytes(StandardCharsets.UTF_8);
+        out.writeUTF("COMPILE");
+        writeFlags(flags);
+        out.writeUTF(className);
+        out.writeUTF("");
+        out.writeInt(text.length);
+        out.write(text);
+        out.writeUTF("");
+        out.flush();
+        return readResponse();
+    }
+
+    /**
+     * Writes the kcc options of a request.
+     *
+     * @param flags the options and their values
+     * @throws IOException if the connection fails
+     */
+    private void writeFlags(List<String> flags) throws IOException {
+        out.writeInt(flags.size());
+        for (String flag : flags) {
+            out.writeUTF(flag);
+        }
+    }
+
+    /**
+     * Asks the server to stop.
+     *
+     * @throws IOException if the connection fails
+     */
+    public void shutdown() throws IOException {
+        out.writeUTF("SHUTDOWN");
+        out.flush();
+    }
+
+    /**
+     * Reads the response to a compile request.
+     *
+     * @return the bytecode for a BYTES response, or null for a WROTE response
+     * @throws IOException if the connection fails or the server reports an error
+     */
+    private byte[] readResponse() throws IOException {
+        String status = in.readUTF();
+        switch (status) {
+            case "BYTES":
+                byte[] bytecode = new byte[in.readInt()];
+                in.readFully(bytecode);
+                return bytecode;
+            case "WROTE":
+                in.readUTF();
+                return null;
+            case "ERROR":
+                byte[] message = new byte[in.readInt()];
+                in.readFully(message);
+                throw new IOException(new String(message, StandardCharsets.UTF_8));
+            default:
+                throw new IOException("Unexpected response from compile server: " + status);
+        }
+    }
+
+    /**
+     * Closes the connection to the server.
+     *
+     * @throws IOException if the connection cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,703 @@
+/**
+ * The KccCompiler class runs the full compilation pipeline for a single KnightCode source: lexing,
+ * parsing, building the IR while registering symbols, running the optimization passes and lowering the
+ * IR to bytecode. Every call creates its own lexer, parser,
+ * symbol table and bytecode generator, so one instance can be shared by many threads. The parser's
+ * ATN and DFA caches are static in the generated ANTLR classes and are therefore shared (and kept warm)
+ * across every compilation in the same JVM.
+ *
+ * <p>With {@code --stream} a source file is instead compiled as it is read: the characters and tokens go
+ * through unbuffered streams, the parser builds no parse tree, and the StreamingListener hands over each
+ * statement between BEGIN and END as soon as it is parsed. Statements are collected until they reach the
+ * method size budget, then optimized, lowered into a method of their own and dropped, and the main method
+ * finally calls these methods in order. Since every variable may be used by several of them, all variables
+ * are static fields or spilled. The memory a compilation needs then grows with the generated class and the
+ * declarations, but not with the source text or its parse tree.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import lexparse.KnightCodeLexer;
+import lexparse.KnightCodeParser;
+
+public class KccCompiler {
+    public static final String VERSION = "1.0";
+
+    private final CompilerOptions options;
+    private final PassManager passManager;
+    private final PeepholeOptimizer peephole; // null below -O1
+    private final MethodSplitter splitter;
+    // The private caches, swapped for empty ones when trimmed; null when the JVM-wide caches are used
+    private final AtomicReference<Caches> caches;
+    private final AtomicInteger parses = new AtomicInteger();
+    private final AtomicInteger fallbacks = new AtomicInteger();
+
+    /**
+     * Holds a private set of DFA and prediction context caches for the lexer and parser.
+     */
+    private static class Caches {
+        final DFA[] lexerDfa = newDfa(KnightCodeLexer._ATN);
+        final DFA[] parserDfa = newDfa(KnightCodeParser._ATN);
+        final PredictionContextCache lexerContexts = new PredictionContextCache();
+        final PredictionContextCache parserContexts = new PredictionContextCache();
+
+        /**
+         * Creates an empty DFA for every decision of the given ATN.
+         *
+         * @param atn the ATN of the lexer or parser
+         * @return the array of empty DFAs indexed by decision
+         */
+        private static DFA[] newDfa(ATN atn) {
+            DFA[] dfa = new DFA[atn.getNumberOfDecisions()];
+            for (int i = 0; i < dfa.length; i++) {
+                dfa[i] = new DFA(atn.getDecisionState(i), i);
+            }
+            return dfa;
+        }
+
+        /**
+         * Counts the DFA states and cached prediction contexts held by these caches.
+         *
+         * @return the number of cached entries
+         */
+        int size() {
+            int size = lexerContexts.size() + parserContexts.size();
+            for (DFA dfa : lexerDfa) {
+                size += dfa.states.size();
+            }
+            for (DFA dfa : parserDfa) {
+                size += dfa.states.size();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Constructs a KccCompiler with the default options that uses the caches shared by every lexer and
+     * parser in the JVM.
+     */
+    public KccCompiler() {
+        this(new CompilerOptions(), false);
+    }
+
+    /**
+     * Constructs a KccCompiler that uses the caches shared by every lexer and parser in the JVM.
+     *
+     * @param options the compiler options
+     */
+    public KccCompiler(CompilerOptions options) {
+        this(options, false);
+    }
+
+    /**
+     * Constructs a KccCompiler.
+     *
+     * @param options the compiler options
+     * @param privateCaches true to give this compiler its own DFA caches that can be bounded with
+     *                      {@link #trimCaches(int)}, false to use the caches shared by the whole JVM
+     */
+    public KccCompiler(CompilerOptions options, boolean privateCaches) {
+        this(options, privateCaches ? new AtomicReference<>(new Caches()) : null);
+    }
+
+    /**
+     * Constructs a KccCompiler that shares the private DFA caches of another compiler. The caches only
+     * depend on the grammar, so compilers for different options can warm up, and be trimmed, together.
+     *
+     * @param options the compiler options
+     * @param cachesOf the compiler whose private caches are used, and trimmed through either compiler
+     */
+    public KccCompiler(CompilerOptions options, KccCompiler cachesOf) {
+        this(options, cachesOf.caches);
+    }
+
+    private KccCompiler(CompilerOptions options, AtomicReference<Caches> caches) {
+        this.options = options;
+        this.passManager = PassManager.forOptions(options);
+        // Reports grow with every program compiled, so they are only collected when they are printed
+        this.peephole = options.getOptimizationLevel() >= 1 ? new PeepholeOptimizer(options.isOptimizationReport()) : null;
+        this.splitter = new MethodSplitter(options.getMaxMethodSize(),
+                options.isProfile() ? BytecodeGenerator.PROFILE_COUNTER_SIZE : 0, options.isOptimizationReport());
+        this.caches = caches;
+    }
+
+    /**
+     * Returns the private caches new lexers and parsers use.
+     *
+     * @return the caches, or null if the JVM-wide caches are used
+     */
+    private Caches caches() {
+        return caches != null ? caches.get() : null;
+    }
+
+    /**
+     * Parses a KnightCode source into a parse tree. Syntax errors are collected by the given reporter
+     * instead of being printed to the console.
+     *
+     * <p>The source is first parsed with SLL prediction, which is much cheaper than full LL prediction on
+     * the left-recursive expression rule, and bails out on the first syntax error. Only when that fails is
+     * the source parsed again with full LL prediction and the normal error recovery, so the result is the
+     * same as a plain LL parse.
+     *
+     * @param input the character stream of the KnightCode source
+     * @param errors the reporter that collects syntax errors
+     * @return the parse tree rooted at the file rule
+     */
+    public KnightCodeParser.FileContext parse(CharStream input, ErrorReporter errors) {
+        return parse(input, errors, CompileStats.forEvents(input.getSourceName()));
+    }
+
+    /**
+     * Parses a KnightCode source into a parse tree as {@link #parse(CharStream, ErrorReporter)} does,
+     * recording the lexing and parsing phases. The whole source is lexed before parsing starts so that
+     * the two phases can be measured apart.
+     *
+     * @param input the character stream of the KnightCode source
+     * @param errors the reporter that collects syntax errors
+     * @param stats the statistics the phases are recorded into
+     * @return the parse tree rooted at the file rule
+     */
+    public KnightCodeParser.FileContext parse(CharStream input, ErrorReporter errors, CompileStats stats) {
+        Caches current = caches();
+        var lexer = new KnightCodeLexer(input);
+        if (current != null) {
+            lexer.setInterpreter(new LexerATNSimulator(lexer, KnightCodeLexer._ATN, current.lexerDfa, current.lexerContexts));
+        }
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errors);
+
+        var tokens = new CommonTokenStream(lexer);
+        stats.begin("lex");
+        tokens.fill();
+        stats.end();
+        stats.setTokens(tokens.size());
+
+        stats.begin("parse");
+        KnightCodeParser.FileContext tree = parse(tokens, errors);
+        stats.end();
+        stats.countParseTree(tree);
+        return tree;
+    }
+
+    /**
+     * Parses the tokens of a source, first with SLL prediction and then, if that fails, with full LL
+     * prediction.
+     *
+     * @param tokens the tokens of the source
+     * @param errors the reporter that collects syntax errors
+     * @return the parse tree rooted at the file rule
+     */
+    private KnightCodeParser.FileContext parse(CommonTokenStream tokens, ErrorReporter errors) {
+        Caches current = caches();
+        var parser = new KnightCodeParser(tokens);
+        if (current != null) {
+            parser.setInterpreter(new ParserATNSimulator(parser, KnightCodeParser._ATN, current.parserDfa, current.parserContexts));
+        }
+        parses.incrementAndGet();
+
+        // Stage one: SLL prediction, giving up on the first syntax error
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        try {
+            return parser.file();
+        } catch (ParseCancellationException e) {
+            fallbacks.incrementAndGet();
+        }
+
+        // Stage two: rewind and parse again with full LL prediction and error reporting
+        tokens.seek(0);
+        parser.reset();
+        parser.addErrorListener(errors);
+        parser.setErrorHandler(new DefaultErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        return parser.file();
+    }
+
+    /**
+     * Lexes and parses a KnightCode source, builds its IR while registering symbols and runs the
+     * optimization passes of the optimization level over it. The program is not split into methods yet.
+     *
+     * @param input the character stream of the KnightCode source
+     * @param stats the statistics the phases are recorded into
+     * @return the optimized IR of the program
+     * @throws RuntimeException if the source contains syntax errors or undeclared variables
+     */
+    Ir.Program buildIr(CharStream input, CompileStats stats) {
+        ErrorReporter errors = new ErrorReporter(input.getSourceName());
+        KnightCodeParser.FileContext tree = parse(input, errors, stats);
+        if (errors.hasErrors()) {
+            throw new RuntimeException("Syntax errors:\n" + errors);
+        }
+
+        // Each compilation gets its own SymbolTable and BytecodeGenerator
+        stats.begin("symbols");
+        SymbolTable symbolTable = new SymbolTable();
+        KccVisitor visitor = new KccVisitor(symbolTable, errors);
+        visitor.visitDeclare(tree.declare());
+        stats.end();
+        stats.setVariables(symbolTable.size());
+
+        stats.begin("ir");
+        Ir.Program program = visitor.program(tree);
+        stats.end();
+        if (errors.hasErrors()) {
+            throw new RuntimeException("Compile errors:\n" + errors);
+        }
+
+        stats.begin("optimize");
+        passManager.run(program);
+        stats.end();
+        return program;
+    }
+
+    /**
+     * Compiles a KnightCode source into the bytecode of a class with the given name.
+     *
+     * @param input the character stream of the KnightCode source
+     * @param className the name of the class to generate, or null to use the name after PROGRAM
+     * @return the bytecode of the generated class
+     * @throws RuntimeException if the source contains syntax errors or undeclared variables, or if verification is enabled and the
+     *                          generated class fails it
+     */
+    public byte[] compile(CharStream input, String className) {
+        return compile(input, className, CompileStats.forEvents(input.getSourceName()));
+    }
+
+    /**
+     * Compiles a KnightCode source into the bytecode of a class with the given name, recording the time
+     * and allocation of every phase.
+     *
+     * @param input the character stream of the KnightCode source
+     * @param className the name of the class to generate, or null to use the name after PROGRAM
+     * @param stats the statistics the phases are recorded into
+     * @return the bytecode of the generated class
+     * @throws RuntimeException if the source contains syntax errors or undeclared variables, or if verification is enabled and the
+     *                          generated class fails it
+     */
+    public byte[] compile(CharStream input, String className, CompileStats stats) {
+        Ir.Program program = buildIr(input, stats);
+        if (className == null) {
+            className = program.name;
+        }
+
+        stats.begin("split");
+        splitter.split(program);
+        stats.end();
+
+        stats.begin("codegen");
+        BytecodeGenerator bytecodeGenerator = new BytecodeGenerator(options, peephole);
+        bytecodeGenerator.startClass(className, sourceFile(input.getSourceName()));
+        new IrLowering(bytecodeGenerator).lower(program);
+        stats.end();
+
+        stats.begin("assemble");
+        byte[] bytecode = bytecodeGenerator.getBytecode();
+        stats.end();
+        if (options.isVerify()) {
+            stats.begin("verify");
+            String problems = ClassVerifier.verify(bytecode);
+            stats.end();
+            if (problems != null) {
+                throw new RuntimeException("Generated class " + className + " failed verification:\n" + problems);
+            }
+        }
+        stats.finish(bytecode.length);
+        return bytecode;
+    }
+
+    /**
+     * Compiles a KnightCode source file, reusing the class from the compile cache when the same source
+     * was already compiled with the same options. On a cache hit the source is not lexed, parsed or
+     * visited at all.
+     *
+     * @param source the path of the KnightCode source file
+     * @param className the name of the class to generate
+     * @param cache the compile cache, or null to always compile
+     * @return the bytecode of the generated class
+     * @throws IOException if the source file cannot be read
+     * @throws RuntimeException if the source contains syntax errors or undeclared variables
+     */
+    public byte[] compile(Path source, String className, CompileCache cache) throws IOException {
+        return compile(source, className, cache, CompileStats.forEvents(source.toString()));
+    }
+
+    /**
+     * Compiles a KnightCode source file as {@link #compile(Path, String, CompileCache)} does, recording the
+     * time and allocation of every phase, starting with reading the file. With {@code --stream} the file is
+     * compiled by {@link #compileStream(Path, String, CompileStats)} and the cache is not used, as its key
+     * would need the whole source in memory.
+     *
+     * @param source the path of the KnightCode source file
+     * @param className the name of the class to generate
+     * @param cache the compile cache, or null to always compile
+     * @param stats the statistics the phases are recorded into
+     * @return the bytecode of the generated class
+     * @throws IOException if the source file cannot be read
+     * @throws RuntimeException if the source contains syntax errors or undeclared variables
+     */
+    public byte[] compile(Path source, String className, CompileCache cache, CompileStats stats) throws IOException {
+        if (options.isStream()) {
+            return compileStream(source, className, stats);
+        }
+        stats.begin("read");
+        byte[] sourceBytes = Files.readAllBytes(source);
+        CharStream input = CharStreams.fromString(new String(sourceBytes, StandardCharsets.UTF_8), source.toString());
+        stats.end();
+        String key = null;
+        if (cache != null) {
+            // The source file name is part of the class unless debug information is stripped
+            String codegenKey = options.getCodegenKey() + (options.isDebugInfo() ? " source " + sourceFile(source.toString()) : "");
+            key = cache.key(sourceBytes, className, codegenKey);
+            byte[] cached = cache.get(key);
+            if (cached != null) {
+                stats.setCached();
+                return cached;
+            }
+        }
+
+        byte[] bytecode = compile(input, className, stats);
+        if (cache != null) {
+            cache.put(key, bytecode);
+        }
+        return bytecode;
+    }
+
+    /**
+     * Compiles a KnightCode source file while reading it, without holding the source, its tokens or its
+     * parse tree in memory. Lexing, parsing and building the IR are recorded together as the parse phase,
+     * which the optimize and codegen phases of every part interrupt.
+     *
+     * <p>The parser cannot rewind an unbuffered token stream, so there is no SLL stage that bails out on the
+     * first syntax error; the parser predicts in LL mode, which still tries SLL prediction first for every
+     * decision and only falls back to full LL prediction when SLL finds a conflict.
+     *
+     * @param source the path of the KnightCode source file
+     * @param className the name of the class to generate, or null to use the name after PROGRAM
+     * @param stats the statistics the phases are recorded into
+     * @return the bytecode of the generated class
+     * @throws IOException if the source file cannot be read
+     * @throws RuntimeException if the source contains syntax errors or undeclared variables, or if verification is enabled and the
+     *                          generated class fails it
+     */
+    public byte[] compileStream(Path source, String className, CompileStats stats) throws IOException {
+        ErrorReporter errors = new ErrorReporter(source.toString());
+        SymbolTable symbolTable = new SymbolTable();
+        StreamedProgram program = new StreamedProgram(className, sourceFile(source.toString()), symbolTable, errors, stats);
+        StreamingListener listener = program.listener;
+
+        try (Reader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            UnbufferedCharStream input = new UnbufferedCharStream(reader);
+            input.name = source.toString();
+            Caches current = caches();
+            var lexer = new KnightCodeLexer(input);
+            if (current != null) {
+                lexer.setInterpreter(new LexerATNSimulator(lexer, KnightCodeLexer._ATN, current.lexerDfa, current.lexerContexts));
+            }
+            lexer.setTokenFactory(new CommonTokenFactory(true)); // the characters are gone when the text is needed
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(errors);
+
+            var parser = new KnightCodeParser(new UnbufferedTokenStream<Token>(lexer));
+            if (current != null) {
+                parser.setInterpreter(new ParserATNSimulator(parser, KnightCodeParser._ATN, current.parserDfa, current.parserContexts));
+            }
+            parses.incrementAndGet();
+            parser.setBuildParseTree(false);
+            parser.addParseListener(listener);
+            parser.removeErrorListeners();
+            parser.addErrorListener(errors);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+
+            stats.begin("parse");
+            parser.file();
+            stats.end();
+        }
+        stats.setTokens((int) listener.getTokenCount());
+        if (errors.hasErrors()) {
+            throw new RuntimeException("Compile errors:\n" + errors);
+        }
+        listener.rethrow();
+        stats.setVariables(symbolTable.size());
+
+        byte[] bytecode = program.finish();
+        if (options.isVerify()) {
+            stats.begin("verify");
+            String problems = ClassVerifier.verify(bytecode);
+            stats.end();
+            if (problems != null) {
+                throw new RuntimeException("Generated class " + program.className + " failed verification:\n" + problems);
+            }
+        }
+        stats.finish(bytecode.length);
+        return bytecode;
+    }
+
+    /**
+     * The class a streamed compilation generates. Statements are collected until the next one would take
+     * them over the method size budget; the collected statements are then optimized, split further if a
+     * single statement is too large by itself, and lowered into a method of their own.
+     */
+    private class StreamedProgram {
+        private String className;
+        private final String sourceFile;
+        private final SymbolTable symbolTable;
+        private final CompileStats stats;
+        final StreamingListener listener;
+        private Ir.Program program; // the statements collected for the next method, null before the first
+        private BytecodeGenerator bytecodeGenerator;
+        private IrLowering lowering;
+        private int size; // the estimated bytecode size of the collected statements
+        private final List<Ir.Stmt> calls = new ArrayList<>(); // the calls of the methods lowered so far
+
+        StreamedProgram(String className, String sourceFile, SymbolTable symbolTable, ErrorReporter errors, CompileStats stats) {
+            this.className = className;
+            this.sourceFile = sourceFile;
+            this.symbolTable = symbolTable;
+            this.stats = stats;
+            this.listener = new StreamingListener(symbolTable, errors, this::add);
+        }
+
+        /**
+         * Starts the class once the declarations are known, making every declared variable a static field
+         * or spilling it.
+         *
+         * @param programName the name after PROGRAM
+         */
+        private void start(String programName) {
+            if (className == null) {
+                className = programName;
+            }
+            program = new Ir.Program(programName, new ArrayList<>());
+            program.variables = symbolTable.size();
+            List<Ir.Var> variables = new ArrayList<>(symbolTable.size());
+            for (int id = 0; id < symbolTable.size(); id++) {
+                variables.add(new Ir.Var(symbolTable.getName(id), symbolTable.getType(id), id));
+            }
+            bytecodeGenerator = new BytecodeGenerator(options, peephole);
+            bytecodeGenerator.startClass(className, sourceFile);
+            lowering = new IrLowering(bytecodeGenerator);
+            lowering.declare(program.variables, variables);
+        }
+
+        /**
+         * Adds a statement, first lowering the statements collected so far if it would take them over the
+         * method size budget.
+         *
+         * @param statement the statement
+         */
+        void add(Ir.Stmt statement) {
+            if (program == null) {
+                stats.end();
+                stats.begin("codegen");
+                start(listener.getProgramName());
+                stats.end();
+                stats.begin("parse");
+            }
+            int statementSize = splitter.estimate(statement, MethodSplitter.spills(program));
+            if (!program.body.isEmpty() && size + statementSize > options.getMaxMethodSize()) {
+                stats.end();
+                flush();
+                stats.begin("parse");
+            }
+            program.body.add(statement);
+            size += statementSize;
+        }
+
+        /**
+         * Optimizes and lowers the collected statements into a new method and forgets them.
+         */
+        private void flush() {
+            stats.begin("optimize");
+            passManager.run(program);
+            stats.end();
+
+            stats.begin("split");
+            splitter.split(program);
+            Ir.Method part = new Ir.Method("part" + program.parts++, new ArrayList<>(program.body), false);
+            program.methods.add(part);
+            stats.end();
+
+            stats.begin("codegen");
+            lowering.addFields(program.fields); // the variables the passes added and the splitter shared
+            lowering.lowerMethods(program.methods);
+            stats.end();
+
+            Ir.Call call = new Ir.Call(part.name);
+            call.line = part.body.isEmpty() ? 0 : part.body.get(0).line;
+            calls.add(call);
+            program.body.clear();
+            program.methods.clear();
+            program.fields.clear();
+            size = 0;
+        }
+
+        /**
+         * Lowers the statements still collected and the main method calling every method in order.
+         *
+         * @return the bytecode of the class
+         */
+        byte[] finish() {
+            if (program == null) {
+                stats.begin("codegen");
+                start(listener.getProgramName());
+                stats.end();
+            }
+            if (!program.body.isEmpty()) {
+                flush();
+            }
+
+            stats.begin("codegen");
+            program.body.addAll(calls);
+            splitter.split(program); // groups the calls into methods when there are too many for main
+            lowering.lowerMain(program.body);
+            lowering.lowerMethods(program.methods);
+            stats.end();
+
+            stats.begin("assemble");
+            byte[] bytecode = bytecodeGenerator.getBytecode();
+            stats.end();
+            return bytecode;
+        }
+    }
+
+    /**
+     * Returns the pass manager that optimizes every program compiled by this compiler.
+     *
+     * @return the pass manager
+     */
+    public PassManager getPassManager() {
+        return passManager;
+    }
+
+    /**
+     * Returns the optimization report: what the IR passes, the method splitter and the peephole optimizer
+     * did to every program compiled by this compiler. Without {@code --opt-report} it only holds the totals
+     * of each pass and peephole pattern.
+     *
+     * @return the report
+     */
+    public String optimizationReport() {
+        String report = passManager.report() + splitter.report();
+        if (peephole != null) {
+            report += peephole.report();
+        }
+        return report;
+    }
+
+    /**
+     * Returns the number of sources this compiler has parsed.
+     *
+     * @return the number of parses
+     */
+    public int getParseCount() {
+        return parses.get();
+    }
+
+    /**
+     * Returns the number of sources that could not be parsed with SLL prediction alone and had to be
+     * parsed again with full LL prediction.
+     *
+     * @return the number of LL fallbacks
+     */
+    public int getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    /**
+     * Returns the number of DFA states and prediction contexts held by this compiler's private caches.
+     *
+     * @return the number of cached entries, or 0 if the JVM-wide caches are used
+     */
+    public int cacheSize() {
+        Caches current = caches();
+        return current != null ? current.size() : 0;
+    }
+
+    /**
+     * Drops the private caches if they hold more than the given number of entries. Compilations already
+     * running keep using the old caches, which are freed once they finish; new compilations start warming
+     * up a fresh set.
+     *
+     * @param maxEntries the largest number of cached entries to keep between compilations
+     * @return true if the caches were dropped, false otherwise
+     */
+    public boolean trimCaches(int maxEntries) {
+        Caches current = caches();
+        if (current == null || current.size() <= maxEntries) {
+            return false;
+        }
+        return caches.compareAndSet(current, new Caches());
+    }
+
+    /**
+     * Describes why a compilation failed, for the compilers that report a failure and go on with other
+     * sources.
+     *
+     * @param e the exception or stack overflow the compilation ended with
+     * @return the message
+     */
+    static String failure(Throwable e) {
+        if (e instanceof StackOverflowError) {
+            return "The program is nested too deeply to compile: " + e;
+        }
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    /**
+     * Extracts the class name from a file path by dropping the directories and the extension.
+     *
+     * @param path the file path from which to extract the class name
+     * @return the extracted class name
+     */
+    public static String extractClassName(String path) {
+        String fileName = new java.io.File(path).getName();
+        int dotIndex = fileName.lastIndexOf('.');
+        return dotIndex == -1 ? fileName : fileName.substring(0, dotIndex);
+    }
+
+    /**
+     * Extracts the file name a generated class names as its source from the name of a character stream.
+     *
+     * @param sourceName the name of the stream, usually the path of the source file
+     * @return the file name without its directories, or null if the stream was not read from a file
+     */
+    static String sourceFile(String sourceName) {
+        if (sourceName == null || sourceName.isEmpty() || sourceName.equals(IntStream.UNKNOWN_SOURCE_NAME)) {
+            return null;
+        }
+        return new java.io.File(sourceName).getName();
+    }
+}
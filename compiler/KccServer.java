@@ -0,0 +1,332 @@
+/**
+ * The KccServer class keeps a KnightCode compiler running in the background so that repeated compilations
+ * do not pay for JVM startup and for warming up the lexer, parser and code generator every time. It listens
+ * on a loopback TCP port or a Unix-domain socket and serves requests from {@link KccClient} concurrently.
+ *
+ * <p>Each connection carries any number of requests. A request is written as:
+ * <pre>
+ *   UTF    "COMPILE"
+ *   int    number of kcc options, followed by each option or option value as a UTF
+ *   UTF    class name
+ *   UTF    source path, or "" when the source is sent inline
+ *   int    length of the inline source in UTF-8 bytes, followed by the bytes (only when the path is "")
+ *   UTF    output path, or "" to receive the bytecode in the response
+ * </pre>
+ * and answered with one of:
+ * <pre>
+ *   UTF "BYTES" int length, bytecode     the class was compiled and is returned
+ *   UTF "WROTE" UTF path                 the class was compiled and written to the output path
+ *   UTF "ERROR" int length, UTF-8 text   the diagnostics explaining why compilation failed
+ * </pre>
+ * A request of {@code "SHUTDOWN"} stops the server.
+ *
+ * <p>Every request is compiled with the kcc options it carries, by a compiler built for the request. The
+ * lexer and parser DFA caches only depend on the grammar, so every request shares one set of them, which
+ * stays warm whatever options a request uses and is dropped once it holds more than {@code --max-cache}
+ * entries. Options that only make sense for a local kcc run, such as {@code --stats} or
+ * {@code --opt-report}, are rejected rather than ignored. The compilers collect no optimization reports,
+ * so the memory the server holds between requests stays bounded by the shared caches.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+
+public class KccServer {
+    public static final int DEFAULT_PORT = 5127;
+    public static final int DEFAULT_MAX_CACHE_ENTRIES = 200_000;
+    // kcc options whose output or side effects would be lost on the server
+    static final List<String> UNSUPPORTED_OPTIONS = List.of("--batch", "--server", "--run", "--tier-up", "--jar",
+            "--stats", "--opt-report", "--cache", "--cache-size", "--threads");
+
+    // Owns the DFA caches the compilers of all requests share; it compiles nothing itself
+    private final KccCompiler caches = new KccCompiler(new CompilerOptions(), true);
+    private final SocketAddress address;
+    private final int threads;
+    private final int maxCacheEntries;
+    private volatile boolean running = true;
+    private ServerSocketChannel server;
+
+    /**
+     * Constructs a new KccServer.
+     *
+     * @param address the loopback or Unix-domain address to listen on
+     * @param threads the number of requests to serve at the same time
+     * @param maxCacheEntries the largest number of DFA states and prediction contexts kept between requests
+     */
+    public KccServer(SocketAddress address, int threads, int maxCacheEntries) {
+        this.address = address;
+        this.threads = threads;
+        this.maxCacheEntries = maxCacheEntries;
+    }
+
+    /**
+     * Entry point for server mode, reached through {@code java compiler/kcc --server ...}.
+     *
+     * @param args optional {@code --port N}, {@code --socket path}, {@code --threads N} and
+     *             {@code --max-cache N} settings
+     */
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxCacheEntries = DEFAULT_MAX_CACHE_ENTRIES;
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT);
+
+        String usage = "Usage: java compiler/kcc --server [--port N | --socket path] [--threads N] [--max-cache N]";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(value(args, ++i)));
+                        break;
+                    case "--socket":
+                        address = UnixDomainSocketAddress.of(value(args, ++i));
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i));
+                        break;
+                    case "--max-cache":
+                        maxCacheEntries = Integer.parseInt(value(args, ++i));
+                        break;
+                    default:
+                        System.out.println(usage);
+                        return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(usage);
+            return;
+        }
+
+        try {
+            new KccServer(address, threads, maxCacheEntries).serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error running the compile server on " + address);
+        }
+    }
+
+    /**
+     * Returns the value following an option.
+     *
+     * @param args the command line arguments
+     * @param index the index of the value
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Opens a server channel on the loopback interface or at a Unix-domain socket path.
+     *
+     * @param address the address to bind
+     * @return the bound server channel
+     * @throws IOException if the address cannot be bound
+     */
+    private static ServerSocketChannel open(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            return ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(address);
+        }
+        return ServerSocketChannel.open().bind(address);
+    }
+
+    /**
+     * Accepts connections until a shutdown request arrives. Each connection is served on the thread pool.
+     *
+     * @throws IOException if the server channel cannot be opened
+     */
+    public void serve() throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        server = open(address);
+        System.out.println("kcc server listening on " + address);
+        try {
+            while (running) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (IOException e) {
+                    if (!running) {
+                        break;
+                    }
+                    throw e;
+                }
+                pool.execute(() -> handle(client));
+            }
+        } finally {
+            pool.shutdown();
+            server.close();
+            if (address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+    }
+
+    /**
+     * Serves every request sent over a single connection.
+     *
+     * @param client the connection to serve
+     */
+    private void handle(SocketChannel client) {
+        try (client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)))) {
+            while (true) {
+                String command;
+                try {
+                    command = in.readUTF();
+                } catch (EOFException e) {
+                    return; // client closed the connection
+                }
+                if ("SHUTDOWN".equals(command)) {
+                    running = false;
+                    server.close();
+                    return;
+                }
+                if (!"COMPILE".equals(command)) {
+                    writeError(out, "Unknown command: " + command);
+                    return;
+                }
+                compile(in, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error serving compile request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a single compile request, compiles it and writes the response.
+     *
+     * @param in the stream the request is read from
+     * @param out the stream the response is written to
+     * @throws IOException if the connection fails
+     */
+    private void compile(DataInputStream in, DataOutputStream out) throws IOException {
+        String[] flags = new String[in.readInt()];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = in.readUTF();
+        }
+        String className = in.readUTF();
+        String sourcePath = in.readUTF();
+        byte[] inlineSource = null;
+        if (sourcePath.isEmpty()) {
+            inlineSource = new byte[in.readInt()];
+            in.readFully(inlineSource);
+        }
+        String outputPath = in.readUTF();
+
+        CompilerOptions options;
+        try {
+            options = parseOptions(flags);
+            if (inlineSource != null && options.isStream()) {
+                throw new IllegalArgumentException("--stream needs a source path and cannot be used with --inline");
+            }
+        } catch (IllegalArgumentException e) {
+            writeError(out, e.getMessage());
+            return;
+        }
+        // Only the passes, the splitter and the peephole optimizer depend on the options, and they are cheap
+        KccCompiler compiler = new KccCompiler(options, caches);
+
+        byte[] bytecode;
+        try {
+            if (inlineSource != null) {
+                CharStream input = CharStreams.fromString(new String(inlineSource, StandardCharsets.UTF_8), className + ".kc");
+                bytecode = compiler.compile(input, className);
+            } else {
+                bytecode = compiler.compile(Paths.get(sourcePath), className, null);
+            }
+        } catch (Exception | StackOverflowError e) {
+            // A program nested too deeply for the stack fails on its own and the connection stays usable
+            writeError(out, KccCompiler.failure(e));
+            return;
+        } finally {
+            // Keep the memory held by the warmed-up parser caches bounded between requests
+            caches.trimCaches(maxCacheEntries);
+        }
+
+        if (outputPath.isEmpty()) {
+            out.writeUTF("BYTES");
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            return;
+        }
+        try {
+            Path output = Paths.get(outputPath);
+            Files.write(output, bytecode);
+            out.writeUTF("WROTE");
+            out.writeUTF(output.toString());
+        } catch (IOException e) {
+            writeError(out, "Unable to write " + outputPath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses the kcc options of a request, which must not name input or output files or use an option the
+     * server cannot honor.
+     *
+     * @param flags the options and their values
+     * @return the parsed options
+     * @throws IllegalArgumentException if an option is unknown, malformed or not supported by the server
+     */
+    static CompilerOptions parseOptions(String[] flags) {
+        for (String flag : flags) {
+            if (UNSUPPORTED_OPTIONS.contains(flag)) {
+                throw new IllegalArgumentException(flag + " is not supported by the compile server; run kcc directly");
+            }
+        }
+        CompilerOptions options = CompilerOptions.parse(flags);
+        if (!options.getArguments().isEmpty()) {
+            throw new IllegalArgumentException("Unexpected argument: " + options.getArguments().get(0));
+        }
+        return options;
+    }
+
+    /**
+     * Writes an error response.
+     *
+     * @param out the stream the response is written to
+     * @param message the diagnostics to send
+     * @throws IOException if the connection fails
+     */
+    private static void writeError(DataOutputStream out, String message) throws IOException {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        out.writeUTF("ERROR");
+        out.writeInt(text.length);
+        out.write(text);
+    }
+}
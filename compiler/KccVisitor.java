@@ -1,8 +1,9 @@
 /**
  * This class extends the KnightCodeBaseVisitor to implement custom visit methods
- * that generate bytecode for the KnightCode language.
- * The visitor uses a symbol table for variable tracking and a bytecode generator
- * for generating executable bytecode.
+ * that build the intermediate representation (IR) of a KnightCode program.
+ * The visitor registers declarations in a symbol table and resolves every variable
+ * reference against it, so the IR it returns is ready to be optimized and lowered
+ * to bytecode.
  *
  * @author Brent Reynolds
  * @version 1.0
@@ -12,24 +13,67 @@
  */
 package compiler;
 
-import org.objectweb.asm.Label;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
 import lexparse.KnightCodeBaseVisitor;
 import lexparse.KnightCodeParser;
 
 
-public class KccVisitor extends KnightCodeBaseVisitor<Void> {
+public class KccVisitor extends KnightCodeBaseVisitor<Ir.Node> {
     private final SymbolTable symbolTable;
-    private final BytecodeGenerator bytecodeGenerator;
+    private final ErrorReporter errors;
 
     /**
-     * Constructs a new KccVisitor with the specified symbol table and bytecode generator.
+     * Constructs a new KccVisitor with the specified symbol table, for sources known to be free of
+     * undeclared variables.
      *
      * @param symbolTable the symbol table to be used for variable tracking
-     * @param bytecodeGenerator the bytecode generator to be used for generating bytecode
      */
-    public KccVisitor(SymbolTable symbolTable, BytecodeGenerator bytecodeGenerator) {
+    public KccVisitor(SymbolTable symbolTable) {
+        this(symbolTable, new ErrorReporter(IntStream.UNKNOWN_SOURCE_NAME));
+    }
+
+    /**
+     * Constructs a new KccVisitor with the specified symbol table.
+     *
+     * @param symbolTable the symbol table to be used for variable tracking
+     * @param errors the reporter the variables that are not declared are reported to
+     */
+    public KccVisitor(SymbolTable symbolTable, ErrorReporter errors) {
         this.symbolTable = symbolTable;
-        this.bytecodeGenerator = bytecodeGenerator;
+        this.errors = errors;
+    }
+
+    /**
+     * Visits the FileContext of the KnightCodeParser. Registers the declarations and builds the IR of the
+     * program body.
+     *
+     * @param ctx the context of the whole KnightCode program
+     * @return the IR of the program
+     */
+    @Override
+    public Ir.Program visitFile(KnightCodeParser.FileContext ctx) {
+        visitDeclare(ctx.declare());
+        return program(ctx);
+    }
+
+    /**
+     * Builds the IR of the program body. The declarations must already have been registered with
+     * {@link #visitDeclare(KnightCodeParser.DeclareContext)}.
+     *
+     * @param ctx the context of the whole KnightCode program
+     * @return the IR of the program
+     */
+    public Ir.Program program(KnightCodeParser.FileContext ctx) {
+        Ir.Program program = new Ir.Program(ctx.ID().getText(), statements(ctx.body().stat()));
+        program.variables = symbolTable.size();
+        program.line = ctx.start.getLine();
+        return program;
     }
 
     /**
@@ -40,316 +84,317 @@ public class KccVisitor extends KnightCodeBaseVisitor<Void> {
      * @return null after registering all variables
      */
     @Override
-    public Void visitDeclare(KnightCodeParser.DeclareContext ctx) {
-        
+    public Ir.Node visitDeclare(KnightCodeParser.DeclareContext ctx) {
+
         for (KnightCodeParser.VariableContext variableCtx : ctx.variable()) {
             String varName = variableCtx.identifier().getText();
-            String varType = variableCtx.vartype().getText();
+            VarType varType = VarType.of(variableCtx.vartype().getText());
             symbolTable.register(varName, varType); // Register variable in symbol table
         }
         return null;
     }
 
     /**
-     * Visits the SetvarContext of the KnightCodeParser. This method assigns values to
-     * previously declared variables or prints an error if the variable is not declared.
+     * Builds the IR of a list of statements.
      *
-     * @param ctx the context of the set variable statement in KnightCode
-     * @return null after variable assignment or error handling
+     * @param stats the statement contexts in source order
+     * @return the IR statements
      */
-    @Override
-    public Void visitSetvar(KnightCodeParser.SetvarContext ctx) {
-        String varName = ctx.ID().getText();
-        
-        if (ctx.STRING() != null) {
-            String value = ctx.STRING().getText();
-            value = value.substring(1, value.length() - 1); // Remove quotes from string
-            if (symbolTable.isDeclared(varName)) {
-                int index = symbolTable.getIndex(varName); 
-                bytecodeGenerator.storeString(index, value); // Store string value in variable
-            } else {
-                System.err.println("Variable " + varName + " not declared.");
-            }
-        }
-        else if (ctx.expr() != null) {
-            evaluateExpression(ctx.expr()); // Evaluate the expression
-            if (symbolTable.isDeclared(varName)) {
-                int index = symbolTable.getIndex(varName);
-                String type = symbolTable.getType(varName);
-                bytecodeGenerator.storeVariable(index, type); // Store the result in variable
-            } else {
-                System.err.println("Variable " + varName + " not declared.");
+    public List<Ir.Stmt> statements(List<KnightCodeParser.StatContext> stats) {
+        List<Ir.Stmt> statements = new ArrayList<>();
+        for (KnightCodeParser.StatContext stat : stats) {
+            Ir.Stmt statement = statement(stat);
+            if (statement != null) {
+                statements.add(statement);
             }
         }
-        
-        return null; 
+        return statements;
     }
 
     /**
-     * Method to evaluate expressions in the context of KnightCode.
-     * This method handles different types of expressions like numbers, additions, multiplications,
-     * etc., and uses the bytecode generator to push values or perform operations.
+     * Builds the IR of a single statement. An expression used as a statement becomes an Evaluate statement.
      *
-     * @param expr the expression context to evaluate
+     * @param stat the statement context
+     * @return the IR statement, or null if the statement was dropped because of an error
      */
-    private void evaluateExpression(KnightCodeParser.ExprContext expr) {
-        if (expr instanceof KnightCodeParser.NumberContext) {
-            int value = Integer.parseInt(expr.getText());
-            bytecodeGenerator.pushValue(value);
-        } else if (expr instanceof KnightCodeParser.MultiplicationContext) {
-            KnightCodeParser.MultiplicationContext multCtx = (KnightCodeParser.MultiplicationContext) expr;
-            evaluateExpression(multCtx.expr(0)); 
-            evaluateExpression(multCtx.expr(1)); 
-            bytecodeGenerator.multiplyIntegers(); // Perform multiplication
-        } else if (expr instanceof KnightCodeParser.DivisionContext) {
-            KnightCodeParser.DivisionContext divCtx = (KnightCodeParser.DivisionContext) expr;
-            evaluateExpression(divCtx.expr(0)); 
-            evaluateExpression(divCtx.expr(1)); 
-            bytecodeGenerator.divideIntegers(); // Perform division
-        } else if (expr instanceof KnightCodeParser.AdditionContext) {
-            KnightCodeParser.AdditionContext addCtx = (KnightCodeParser.AdditionContext) expr;
-            evaluateExpression(addCtx.expr(0));
-            evaluateExpression(addCtx.expr(1));
-            bytecodeGenerator.addIntegers(); // Perform addition
-        } else if (expr instanceof KnightCodeParser.SubtractionContext) {
-            KnightCodeParser.SubtractionContext subCtx = (KnightCodeParser.SubtractionContext) expr;
-            evaluateExpression(subCtx.expr(0));
-            evaluateExpression(subCtx.expr(1));
-            bytecodeGenerator.subtractIntegers(); // Perform subtraction
-        } else if (expr instanceof KnightCodeParser.IdContext) {
-            String varName = expr.getText();
-            if (!symbolTable.isDeclared(varName)) {
-                throw new RuntimeException("Variable '" + varName + "' is not declared.");
-            }
-            int index = symbolTable.getIndex(varName);
-            String varType = symbolTable.getType(varName);
-            bytecodeGenerator.loadVariable(index, varType);
+    public Ir.Stmt statement(KnightCodeParser.StatContext stat) {
+        Ir.Node node = visit(stat.getChild(0));
+        if (node instanceof Ir.Expr) {
+            node = at(new Ir.Evaluate((Ir.Expr) node), stat);
         }
+        return (Ir.Stmt) node;
     }
 
     /**
-     * Visits the ComparisonContext of the KnightCodeParser. This method evaluates comparison expressions 
-     * and uses the bytecode generator to perform the appropriate comparison operation.
+     * Visits the SetvarContext of the KnightCodeParser. This method assigns values to
+     * previously declared variables or reports an error if the variable is not declared.
      *
-     * @param ctx the comparison context in KnightCode
-     * @return null after performing the comparison
+     * @param ctx the context of the set variable statement in KnightCode
+     * @return the assignment, or null if the variable is not declared
      */
     @Override
-    public Void visitComparison(KnightCodeParser.ComparisonContext ctx) {
-        if (ctx instanceof KnightCodeParser.ComparisonContext) {
-            KnightCodeParser.ComparisonContext compCtx = (KnightCodeParser.ComparisonContext) ctx;
-            evaluateExpression(compCtx.expr(0)); 
-            evaluateExpression(compCtx.expr(1)); 
-
-            switch (ctx.comp().start.getType()) {
-                case KnightCodeParser.GT:  // Greater than
-                    bytecodeGenerator.compareGreaterThan();
-                    break;
-                case KnightCodeParser.LT:  // Less than
-                    bytecodeGenerator.compareLessThan();
-                    break;
-                case KnightCodeParser.EQ:  // Equals
-                    bytecodeGenerator.compareEquals();
-                    break;
-                case KnightCodeParser.NEQ: // Not equals
-                    bytecodeGenerator.compareNotEquals();
-                    break;
-            }
+    public Ir.Node visitSetvar(KnightCodeParser.SetvarContext ctx) {
+        String varName = ctx.ID().getText();
+        if (!symbolTable.isDeclared(varName)) {
+            undeclared(varName, ctx);
+            return null;
+        }
+
+        Ir.Expr value;
+        if (ctx.STRING() != null) {
+            value = at(new Ir.StringConst(unquote(ctx.STRING().getText())), ctx);
         } else {
-            throw new RuntimeException("Unsupported comparison: " + ctx.getText());
+            value = expression(ctx.expr());
         }
-        return null;
+        return at(new Ir.Assign(variable(varName, ctx), value), ctx);
     }
 
     /**
-     * Visits the DecisionContext of the KnightCodeParser. Handles conditional statements and generats labels and jumps
-     * based on the condition evaluated.
+     * Builds the IR of an expression.
      *
-     * @param ctx the decision context in KnightCode
-     * @return null after handling the decision structure
+     * @param expr the expression context
+     * @return the IR expression
      */
+    private Ir.Expr expression(KnightCodeParser.ExprContext expr) {
+        return (Ir.Expr) visit(expr);
+    }
+
     @Override
-    public Void visitDecision(KnightCodeParser.DecisionContext ctx) {
-        
-        loadValue(ctx.getChild(1).getText());
-        loadValue(ctx.getChild(3).getText());
-
-        String relop = ctx.getChild(2).getText();
-        Label trueLabel = new Label();
-        Label falseLabel = new Label();
-        Label endLabel = new Label();
-
-        // Determine the jump based on the relop
-        switch (relop) {
-            case ">":
-                bytecodeGenerator.compareGreaterThan(trueLabel);
-                break;
-            case "<":
-                bytecodeGenerator.compareLessThan(trueLabel);
-                break;
-            case "=":
-                bytecodeGenerator.compareEquals(trueLabel);
-                break;
-            case "<>":
-                bytecodeGenerator.compareNotEquals(trueLabel);
-                break;
-            default:
-                throw new RuntimeException("Unsupported relational operator: " + relop);
-        }
+    public Ir.Node visitParenthesis(KnightCodeParser.ParenthesisContext ctx) {
+        return expression(ctx.expr());
+    }
 
-        bytecodeGenerator.goTo(falseLabel);
+    @Override
+    public Ir.Node visitMultiplication(KnightCodeParser.MultiplicationContext ctx) {
+        return binary(Ir.Operator.MUL, ctx, ctx.expr(0), ctx.expr(1));
+    }
 
-        
-        bytecodeGenerator.label(trueLabel);
-        visit(ctx.getChild(5)); 
-        bytecodeGenerator.goTo(endLabel);
+    @Override
+    public Ir.Node visitDivision(KnightCodeParser.DivisionContext ctx) {
+        return binary(Ir.Operator.DIV, ctx, ctx.expr(0), ctx.expr(1));
+    }
 
-        
-        bytecodeGenerator.label(falseLabel);
-        if (ctx.getChildCount() > 6 && "ELSE".equals(ctx.getChild(6).getText())) {
-            visit(ctx.getChild(7));
-        }
+    /**
+     * Visits the AdditionContext of the KnightCodeParser.
+     *
+     * @param ctx the context of the addition expression in KnightCode
+     * @return the IR of the addition
+     */
+    @Override
+    public Ir.Node visitAddition(KnightCodeParser.AdditionContext ctx) {
+        return binary(Ir.Operator.ADD, ctx, ctx.expr(0), ctx.expr(1));
+    }
 
-        bytecodeGenerator.label(endLabel);
+    @Override
+    public Ir.Node visitSubtraction(KnightCodeParser.SubtractionContext ctx) {
+        return binary(Ir.Operator.SUB, ctx, ctx.expr(0), ctx.expr(1));
+    }
 
-        return null;
+    /**
+     * Builds the IR of an arithmetic operation.
+     *
+     * @param operator the arithmetic operator
+     * @param ctx the context of the operation
+     * @param left the left operand
+     * @param right the right operand
+     * @return the IR of the operation
+     */
+    private Ir.Expr binary(Ir.Operator operator, ParserRuleContext ctx, KnightCodeParser.ExprContext left,
+            KnightCodeParser.ExprContext right) {
+        return at(new Ir.Binary(operator, expression(left), expression(right)), ctx);
     }
 
     /**
-     * Loads a value into the bytecode generator from a given term. The term can either be a numeric literal
-     * or a variable name.
+     * Visits the ComparisonContext of the KnightCodeParser. The comparison evaluates to 1 if it holds and to 0 otherwise.
      *
-     * @param term the string term to load (either a numeric literal or a variable name)
+     * @param ctx the comparison context in KnightCode
+     * @return the IR of the comparison
      */
-    private void loadValue(String term) {
-         // Check if the term is a numeric literal or a negative number
-        if (Character.isDigit(term.charAt(0)) || (term.charAt(0) == '-' && term.length() > 1 && Character.isDigit(term.charAt(1)))) {
-            bytecodeGenerator.pushValue(Integer.parseInt(term));
-        } else {
-            int index = symbolTable.getIndex(term); // Get index of the variable from symbol table
-            bytecodeGenerator.loadVariable(index, symbolTable.getType(term)); // Load variable from symbol table
-        }
+    @Override
+    public Ir.Node visitComparison(KnightCodeParser.ComparisonContext ctx) {
+        return at(new Ir.Compare(relation(ctx.comp()), expression(ctx.expr(0)), expression(ctx.expr(1))), ctx);
+    }
+
+    @Override
+    public Ir.Node visitNumber(KnightCodeParser.NumberContext ctx) {
+        return at(new Ir.IntConst(Integer.parseInt(ctx.getText())), ctx);
     }
 
     /**
-     * Visits the LoopContext of the KnightCodeParser. This method handles creates labels
-     * and jumps to implement looping logic.
+     * Visits the IdContext of the KnightCodeParser.
      *
-     * @param ctx the loop context in KnightCode
-     * @return null after setting up the loop
+     * @param ctx the context of the variable reference
+     * @return the IR of the variable reference
+     * @throws RuntimeException if the variable is not declared
      */
     @Override
-    public Void visitLoop(KnightCodeParser.LoopContext ctx) {
-        Label beginningOfLoop = new Label();
-        Label endOfLoop = new Label();
-
-        bytecodeGenerator.label(beginningOfLoop);
-        
-        String firstNumber = ctx.getChild(1).getText();  
-        String secondNumber = ctx.getChild(3).getText();  
-        loadValue(firstNumber);    
-        loadValue(secondNumber);
-
-        String relop = ctx.getChild(2).getText();
-        switch (relop) {
-            case ">":
-                bytecodeGenerator.compareLessThanOrEqual(endOfLoop);
-                break;
-            case "<":
-                bytecodeGenerator.compareGreaterThanOrEqual(endOfLoop);
-                break;
-            case "=":
-                bytecodeGenerator.compareNotEquals(endOfLoop);
-                break;
-            case "<>":
-                bytecodeGenerator.compareEquals(endOfLoop);
-                break;
-            default:
-                throw new RuntimeException("Unsupported relational operator: " + relop);
+    public Ir.Node visitId(KnightCodeParser.IdContext ctx) {
+        return variable(ctx.getText(), ctx);
+    }
+
+    /**
+     * Visits the DecisionContext of the KnightCodeParser. Builds the condition and the statement lists that
+     * run when it holds and, if there is an ELSE, when it does not.
+     *
+     * @param ctx the decision context in KnightCode
+     * @return the IR of the decision
+     */
+    @Override
+    public Ir.Node visitDecision(KnightCodeParser.DecisionContext ctx) {
+        Ir.Compare condition = condition(ctx, ctx.getChild(1), ctx.comp(), ctx.getChild(3));
+
+        List<KnightCodeParser.StatContext> thenStats = new ArrayList<>();
+        List<KnightCodeParser.StatContext> elseStats = new ArrayList<>();
+        List<KnightCodeParser.StatContext> current = thenStats;
+        for (ParseTree child : ctx.children) {
+            if (child instanceof TerminalNode && "ELSE".equals(child.getText())) {
+                current = elseStats;
+            } else if (child instanceof KnightCodeParser.StatContext) {
+                current.add((KnightCodeParser.StatContext) child);
+            }
         }
 
-        visitChildren(ctx);  
+        return at(new Ir.If(condition, statements(thenStats), statements(elseStats)), ctx);
+    }
 
-        bytecodeGenerator.goTo(beginningOfLoop);
-        bytecodeGenerator.label(endOfLoop);
+    /**
+     * Visits the LoopContext of the KnightCodeParser. Builds the condition and the body of the loop.
+     *
+     * @param ctx the loop context in KnightCode
+     * @return the IR of the loop
+     */
+    @Override
+    public Ir.Node visitLoop(KnightCodeParser.LoopContext ctx) {
+        Ir.Compare condition = condition(ctx, ctx.getChild(1), ctx.comp(), ctx.getChild(3));
+        return at(new Ir.While(condition, statements(ctx.stat())), ctx);
+    }
 
-        return null;
+    /**
+     * Builds the condition of an IF or WHILE statement.
+     *
+     * @param ctx the context of the IF or WHILE statement
+     * @param left the left term, a number or a variable name
+     * @param comp the relational operator
+     * @param right the right term, a number or a variable name
+     * @return the IR of the condition
+     */
+    private Ir.Compare condition(ParserRuleContext ctx, ParseTree left, KnightCodeParser.CompContext comp, ParseTree right) {
+        return at(new Ir.Compare(relation(comp), term(left.getText(), ctx), term(right.getText(), ctx)), ctx);
     }
 
+    /**
+     * Builds the IR of a term in a condition. The term can either be a numeric literal
+     * or a variable name.
+     *
+     * @param term the string term (either a numeric literal or a variable name)
+     * @param ctx the context the term appears in
+     * @return the IR of the term
+     */
+    private Ir.Expr term(String term, ParserRuleContext ctx) {
+        if (Character.isDigit(term.charAt(0))) {
+            return at(new Ir.IntConst(Integer.parseInt(term)), ctx);
+        }
+        return variable(term, ctx);
+    }
+
+    /**
+     * Returns the relation of a relational operator.
+     *
+     * @param comp the relational operator context
+     * @return the relation
+     */
+    static Ir.Relation relation(KnightCodeParser.CompContext comp) {
+        switch (comp.start.getType()) {
+            case KnightCodeParser.GT:  // Greater than
+                return Ir.Relation.GT;
+            case KnightCodeParser.LT:  // Less than
+                return Ir.Relation.LT;
+            case KnightCodeParser.EQ:  // Equals
+                return Ir.Relation.EQ;
+            case KnightCodeParser.NEQ: // Not equals
+                return Ir.Relation.NE;
+            default:
+                throw new RuntimeException("Unsupported relational operator: " + comp.getText());
+        }
+    }
 
     /**
      * Visits the PrintContext of the KnightCodeParser. This method handles print operations for both strings
      * and variables.
      *
      * @param ctx the print context in KnightCode
-     * @return null after printing the content
+     * @return the IR of the print, or null if the variable is not declared
      */
     @Override
-    public Void visitPrint(KnightCodeParser.PrintContext ctx) {
+    public Ir.Node visitPrint(KnightCodeParser.PrintContext ctx) {
         if (ctx.STRING() != null) {
-            String literal = ctx.STRING().getText();
-            String text = literal.substring(1, literal.length() - 1);
-            bytecodeGenerator.printString(text);
-        } 
-        else if (ctx.ID() != null) {
-            String varName = ctx.ID().getText();
-            if (symbolTable.isDeclared(varName)) {
-                int index = symbolTable.getIndex(varName);
-                String varType = symbolTable.getType(varName);
-                if ("STRING".equals(varType)) {
-                    bytecodeGenerator.printStringVariable(index); 
-                } else if ("INTEGER".equals(varType)) {
-                    bytecodeGenerator.printIntegerVariable(index); 
-                }
-            } else {
-                System.err.println("Variable '" + varName + "' is not declared.");
-            }
+            return at(new Ir.Print(at(new Ir.StringConst(unquote(ctx.STRING().getText())), ctx)), ctx);
         }
-        return null;
+        String varName = ctx.ID().getText();
+        if (!symbolTable.isDeclared(varName)) {
+            undeclared(varName, ctx);
+            return null;
+        }
+        return at(new Ir.Print(variable(varName, ctx)), ctx);
     }
 
     /**
-     * Visits the AdditionContext of the KnightCodeParser. It processes addition operations by visiting all subexpressions and adding their results.
+     * Visits the ReadContext of the KnightCodeParser. It reads input into a specified variable, handling both integer and string types.
      *
-     * @param ctx the context of the addition expression in KnightCode
-     * @return null after performing the addition
+     * @param ctx the context of the read statement in KnightCode
+     * @return the IR of the read
+     * @throws RuntimeException if the variable is not declared
      */
     @Override
-    public Void visitAddition(KnightCodeParser.AdditionContext ctx) {
-        ctx.expr().forEach(this::visit);
-        bytecodeGenerator.addIntegers();
-        return null;
+    public Ir.Node visitRead(KnightCodeParser.ReadContext ctx) {
+        return at(new Ir.Read(variable(ctx.ID().getText(), ctx)), ctx);
     }
 
     /**
-     * Visits the ReadContext of the KnightCodeParser. It reads input into a specified variable, handling both integer and string types.
+     * Reports a variable that is not declared.
      *
-     * @param ctx the context of the read statement in KnightCode
-     * @return null after reading input into the variable
+     * @param varName the name of the variable
+     * @param ctx the context of the statement using the variable
+     */
+    private void undeclared(String varName, ParserRuleContext ctx) {
+        errors.error(ctx.start.getLine(), ctx.start.getCharPositionInLine(), "variable '" + varName + "' is not declared");
+    }
+
+    /**
+     * Resolves a variable against the symbol table.
+     *
+     * @param varName the name of the variable
+     * @param ctx the context the variable is used in
+     * @return the IR of the variable reference
      * @throws RuntimeException if the variable is not declared
      */
-    @Override
-    public Void visitRead(KnightCodeParser.ReadContext ctx) {
-        String varName = ctx.ID().getText();
-        if (!symbolTable.isDeclared(varName)) {
+    private Ir.Var variable(String varName, ParserRuleContext ctx) {
+        int id = symbolTable.lookup(varName);
+        if (id < 0) {
             throw new RuntimeException("Variable '" + varName + "' is not declared.");
         }
-        String varType = symbolTable.getType(varName);
-        int index = symbolTable.getIndex(varName);
-        
-        // Determine the type of the variable and read it in
-        if ("INTEGER".equals(varType)) {
-            bytecodeGenerator.readInteger(index);
-        } else if ("STRING".equals(varType)) {
-            bytecodeGenerator.readString(index);
-        } else {
-            throw new RuntimeException("Unsupported type for read operation: " + varType);
-        }
-        return null;
+        return at(new Ir.Var(varName, symbolTable.getType(id), id), ctx);
     }
 
-        public BytecodeGenerator getBytecodeGenerator() {
-            return bytecodeGenerator;
-        }
+    /**
+     * Removes the quotes around a string literal.
+     *
+     * @param literal the string literal including its quotes
+     * @return the text between the quotes
+     */
+    static String unquote(String literal) {
+        return literal.substring(1, literal.length() - 1);
     }
 
+    /**
+     * Records the source line of a context on an IR node.
+     *
+     * @param node the IR node
+     * @param ctx the context the node was built from
+     * @return the same node
+     */
+    static <T extends Ir.Node> T at(T node, ParserRuleContext ctx) {
+        node.line = ctx.start.getLine();
+        return node;
+    }
+}
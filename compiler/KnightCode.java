@@ -0,0 +1,181 @@
+/**
+ * The KnightCode class is the programmatic entry point to the compiler. It compiles KnightCode source
+ * text in memory, defines the generated class directly in the running JVM and runs it, without writing
+ * a class file or starting another process.
+ *
+ * <p>Every program is defined in its own class loader, so a compiled program (and the metaspace its class
+ * uses) can be unloaded by the garbage collector as soon as the {@link Program} is no longer referenced.
+ * Hidden classes are not used because the generated classes live in the {@code output} package, which
+ * has no class a lookup could be created from.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.objectweb.asm.ClassReader;
+
+public final class KnightCode {
+    private static final KccCompiler compiler = new KccCompiler();
+
+    private KnightCode() {
+    }
+
+    /**
+     * A compiled KnightCode program loaded into the running JVM.
+     */
+    public static final class Program {
+        private final String name;
+        private final byte[] bytecode;
+        private final Class<?> programClass;
+        private final MethodHandle main;
+
+        /**
+         * Defines the class of a compiled program in a new class loader.
+         *
+         * @param name the name of the generated class, without the package
+         * @param bytecode the bytecode of the generated class
+         */
+        private Program(String name, byte[] bytecode) {
+            this.name = name;
+            this.bytecode = bytecode;
+            this.programClass = new ProgramClassLoader().define("output." + name, bytecode);
+            try {
+                this.main = MethodHandles.publicLookup().findStatic(programClass, "main",
+                        MethodType.methodType(void.class, String[].class));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Generated class has no main method: " + name, e);
+            }
+        }
+
+        /**
+         * Returns the name of the generated class, without the package.
+         *
+         * @return the class name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the bytecode the program was defined from.
+         *
+         * @return the bytecode of the generated class
+         */
+        public byte[] getBytecode() {
+            return bytecode;
+        }
+
+        /**
+         * Returns the generated class.
+         *
+         * @return the class defined for this program
+         */
+        public Class<?> getProgramClass() {
+            return programClass;
+        }
+
+        /**
+         * Runs the program in the current thread.
+         *
+         * @param args the arguments passed to the generated main method
+         * @throws RuntimeException if the program throws
+         */
+        public void run(String... args) {
+            try {
+                main.invokeExact(args);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("Error running KnightCode program " + name, e);
+            }
+        }
+    }
+
+    /**
+     * Class loader holding exactly one generated program class.
+     */
+    private static final class ProgramClassLoader extends ClassLoader {
+
+        ProgramClassLoader() {
+            super(KnightCode.class.getClassLoader());
+        }
+
+        /**
+         * Defines a class from its bytecode.
+         *
+         * @param binaryName the binary name of the class
+         * @param bytecode the bytecode of the class
+         * @return the defined class
+         */
+        Class<?> define(String binaryName, byte[] bytecode) {
+            return defineClass(binaryName, bytecode, 0, bytecode.length);
+        }
+    }
+
+    /**
+     * Compiles KnightCode source text into bytecode. The class is named after the PROGRAM declaration.
+     *
+     * @param source the KnightCode source text
+     * @return the bytecode of the generated class
+     * @throws RuntimeException if the source does not compile
+     */
+    public static byte[] compile(String source) {
+        return compiler.compile(CharStreams.fromString(source), null);
+    }
+
+    /**
+     * Compiles KnightCode source text and defines the generated class in the running JVM.
+     *
+     * @param source the KnightCode source text
+     * @return the loaded program
+     * @throws RuntimeException if the source does not compile
+     */
+    public static Program load(String source) {
+        return define(compile(source));
+    }
+
+    /**
+     * Compiles KnightCode source text with the given options and defines the generated class in the
+     * running JVM. A new compiler is created for the options, so this is meant for comparing the code
+     * generated with different options rather than for compiling many programs.
+     *
+     * @param source the KnightCode source text
+     * @param options the compiler options
+     * @return the loaded program
+     * @throws RuntimeException if the source does not compile
+     */
+    public static Program load(String source, CompilerOptions options) {
+        return define(new KccCompiler(options).compile(CharStreams.fromString(source), null));
+    }
+
+    /**
+     * Defines a compiled class in the running JVM.
+     *
+     * @param bytecode the bytecode of the generated class
+     * @return the loaded program
+     */
+    static Program define(byte[] bytecode) {
+        String internalName = new ClassReader(bytecode).getClassName();
+        return new Program(internalName.substring(internalName.lastIndexOf('/') + 1), bytecode);
+    }
+
+    /**
+     * Compiles KnightCode source text and runs it in the current thread.
+     *
+     * @param source the KnightCode source text
+     * @param args the arguments passed to the generated main method
+     * @throws RuntimeException if the source does not compile or the program throws
+     */
+    public static void run(String source, String... args) {
+        load(source).run(args);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * The KnightLauncher class is the main class of the jars written by {@code kcc --batch --jar}. It picks
+ * a program by name from the index of the jar and runs its main method with the remaining arguments:
+ *
+ * <pre>
+ * java -jar programs.jar program1
+ * </pre>
+ *
+ * <p>Without a program name, or with one the jar does not hold, it lists the programs of the jar. With
+ * {@code --load-all} it runs no program but loads every one of them and initializes the runtime support
+ * class, which is the training run {@code ant cds-programs} records the class list of the CDS archive from.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class KnightLauncher {
+
+    private KnightLauncher() {
+    }
+
+    /**
+     * Runs a program of the jar.
+     *
+     * @param args the name of the program followed by its arguments
+     * @throws Throwable whatever the program throws
+     */
+    public static void main(String[] args) throws Throwable {
+        List<String> programs = programs();
+        if (args.length == 1 && "--load-all".equals(args[0])) {
+            loadAll(programs);
+            return;
+        }
+        if (args.length == 0 || !programs.contains(args[0])) {
+            if (args.length > 0) {
+                System.err.println("No program named " + args[0] + " in this jar.");
+            }
+            System.err.println("Usage: java -jar <file.jar> <program> [arguments]");
+            System.err.println("Programs: " + String.join(" ", programs));
+            System.exit(1);
+        }
+
+        Class<?> program = Class.forName("output." + args[0]);
+        try {
+            program.getMethod("main", String[].class).invoke(null, (Object) Arrays.copyOfRange(args, 1, args.length));
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Loads the class of every program without running it, and initializes the runtime support class.
+     *
+     * @param programs the names of the programs
+     * @throws ClassNotFoundException if the jar does not hold a program of its index
+     */
+    private static void loadAll(List<String> programs) throws ClassNotFoundException {
+        ClassLoader loader = KnightLauncher.class.getClassLoader();
+        for (String program : programs) {
+            Class.forName("output." + program, false, loader);
+        }
+        Class.forName(KnightRuntime.class.getName(), true, loader);
+        System.out.println("Loaded " + programs.size() + " programs");
+    }
+
+    /**
+     * Reads the names of the programs from the index of the jar.
+     *
+     * @return the names of the programs
+     * @throws IOException if the index cannot be read
+     */
+    static List<String> programs() throws IOException {
+        List<String> programs = new ArrayList<>();
+        try (InputStream in = KnightLauncher.class.getResourceAsStream("/" + ProgramJar.INDEX)) {
+            if (in == null) {
+                return programs;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    programs.add(line);
+                }
+            }
+        }
+        return programs;
+    }
+}
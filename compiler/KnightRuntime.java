@@ -0,0 +1,417 @@
+/**
+ * The KnightRuntime class holds the support code that compiled KnightCode programs call at run time. The
+ * generated bytecode reaches it through small static methods, which the JIT compiler inlines into the
+ * program's main method.
+ *
+ * <p>READ statements share a single input buffer over standard input for the whole run, so input that was
+ * read ahead is never lost between statements. When standard input is redirected from a regular file the
+ * file is memory-mapped instead of copied through a buffer. Integers are parsed byte by byte, without
+ * regular expressions or boxing, and a READ of an integer consumes the rest of its line up to and
+ * including the newline, so a following READ of a string gets the next line just as typed. The input is
+ * shared by every program running in the JVM and is not thread-safe.
+ *
+ * <p>Programs compiled with {@code --buffered-output} print through {@link #println(int)} and
+ * {@link #println(String)}, which collect the text in a large buffer instead of locking and flushing
+ * {@code System.out} on every PRINT. Integers are formatted straight into the buffer without creating
+ * strings. The buffer is flushed when it fills up, before every READ so that prompts appear before the
+ * program waits for input, and when the main method returns or throws.
+ *
+ * <p>Programs compiled with {@code --profile} call {@link #writeProfile(String, long[], String)} when their
+ * main method returns or throws, which prints how often every source line ran to standard error, or to
+ * the file named by the {@code knightcode.profile} system property.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+public final class KnightRuntime {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAX_MAPPING = 1L << 30;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static ByteBuffer buffer = EMPTY; // the bytes read ahead and not consumed yet
+    private static boolean opened;
+    private static InputStream stream; // the input when it is not memory-mapped
+    private static byte[] streamBytes;
+    private static FileChannel channel; // the input when it is a memory-mapped regular file
+    private static long mappedTo; // the file position the next mapping starts at
+    private static long fileSize;
+    private static byte[] line = new byte[128];
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(Charset.defaultCharset());
+    private static final byte[] NULL = "null".getBytes(Charset.defaultCharset());
+    private static final byte[] output = new byte[BUFFER_SIZE]; // the printed bytes not flushed yet
+    private static int outputCount;
+    private static OutputStream outputStream; // null until the first flush, which picks System.out
+
+    private KnightRuntime() {
+    }
+
+    /**
+     * Replaces the input of READ statements, discarding anything read ahead from the previous input.
+     *
+     * @param input the stream READ statements read from from now on
+     */
+    public static void setInput(InputStream input) {
+        buffer = EMPTY;
+        opened = true;
+        stream = input;
+        streamBytes = new byte[BUFFER_SIZE];
+        channel = null;
+    }
+
+    /**
+     * Reads an integer for a READ statement. Leading whitespace, including newlines, is skipped; after the
+     * digits, spaces and tabs are skipped and a single newline is consumed.
+     *
+     * @return the integer read
+     * @throws NoSuchElementException if the input is exhausted
+     * @throws InputMismatchException if the next token is not an integer in the int range
+     */
+    public static int readInt() {
+        if (outputCount > 0) {
+            flush();
+        }
+        int b = peek();
+        while (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+            skip();
+            b = peek();
+        }
+        if (b < 0) {
+            throw new NoSuchElementException();
+        }
+
+        boolean negative = b == '-';
+        if (b == '-' || b == '+') {
+            skip();
+            b = peek();
+        }
+        if (b < '0' || b > '9') {
+            throw new InputMismatchException("Expected an integer");
+        }
+
+        // Accumulate negatively so that Integer.MIN_VALUE can be read
+        int value = 0;
+        do {
+            int digit = b - '0';
+            if (value < -214748364 || (value == -214748364 && digit > 8)) {
+                throw new InputMismatchException("Integer out of range");
+            }
+            value = value * 10 - digit;
+            skip();
+            b = peek();
+        } while (b >= '0' && b <= '9');
+        if (!negative && value == Integer.MIN_VALUE) {
+            throw new InputMismatchException("Integer out of range");
+        }
+
+        if (b >= 0 && b != ' ' && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+            throw new InputMismatchException("Expected an integer");
+        }
+
+        while (b == ' ' || b == '\t' || b == '\r') {
+            skip();
+            b = peek();
+        }
+        if (b == '\n') {
+            skip();
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * Reads the rest of the current line for a READ statement. The line terminator is consumed but not
+     * returned.
+     *
+     * @return the line read
+     * @throws NoSuchElementException if the input is exhausted
+     */
+    public static String readLine() {
+        if (outputCount > 0) {
+            flush();
+        }
+        int length = 0;
+        int b = peek();
+        if (b < 0) {
+            throw new NoSuchElementException("No line found");
+        }
+        while (b >= 0 && b != '\n') {
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = (byte) b;
+            skip();
+            b = peek();
+        }
+        if (b == '\n') {
+            skip();
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, Charset.defaultCharset());
+    }
+
+    /**
+     * Replaces the stream printed text is written to, after flushing what was printed so far.
+     *
+     * @param stream the stream PRINT statements write to from now on
+     */
+    public static void setOutput(OutputStream stream) {
+        flush();
+        outputStream = stream;
+    }
+
+    /**
+     * Prints an integer followed by a line separator into the output buffer.
+     *
+     * @param value the integer to print
+     */
+    public static void println(int value) {
+        if (outputCount + 11 + NEWLINE.length > output.length) {
+            flush();
+        }
+        int position = outputCount;
+        // Work on the negated value so that Integer.MIN_VALUE needs no special case
+        int negated = value;
+        if (value < 0) {
+            output[position++] = '-';
+        } else {
+            negated = -value;
+        }
+        int digits = 1;
+        for (int rest = negated / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        position += digits;
+        for (int i = position - 1; i >= position - digits; i--) {
+            output[i] = (byte) ('0' - negated % 10);
+            negated /= 10;
+        }
+        outputCount = position;
+        newline();
+    }
+
+    /**
+     * Prints a string followed by a line separator into the output buffer. Strings of ASCII characters
+     * are copied without being encoded first.
+     *
+     * @param text the string to print
+     */
+    public static void println(String text) {
+        if (text == null) {
+            write(NULL);
+        } else {
+            int length = text.length();
+            if (length > output.length - outputCount) {
+                flush();
+            }
+            boolean ascii = length <= output.length;
+            for (int i = 0; ascii && i < length; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    ascii = false;
+                } else {
+                    output[outputCount + i] = (byte) c;
+                }
+            }
+            if (ascii) {
+                outputCount += length;
+            } else {
+                write(text.getBytes(Charset.defaultCharset()));
+            }
+        }
+        newline();
+    }
+
+    /**
+     * Writes everything printed so far to the output stream.
+     */
+    public static void flush() {
+        if (outputStream == null) {
+            outputStream = System.out;
+        }
+        try {
+            if (outputCount > 0) {
+                outputStream.write(output, 0, outputCount);
+                outputCount = 0;
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Prints the execution profile of a program: for every source line, how often its statements ran and
+     * how often the WHILE loops starting on it went round, with the share of all statement executions.
+     *
+     * @param program the name of the program
+     * @param counters the counters of the program, one per run of statements
+     * @param slots the source lines of every counter, comma-separated; the lines of one counter are
+     *              separated by spaces, and a line followed by {@code *} is a loop the counter counts the
+     *              iterations of
+     */
+    public static void writeProfile(String program, long[] counters, String slots) {
+        TreeMap<Integer, long[]> lines = new TreeMap<>(); // statement executions and loop iterations
+        long total = 0;
+        int counter = 0;
+        for (String slot : slots.isEmpty() ? new String[0] : slots.split(",")) {
+            for (String entry : slot.split(" ")) {
+                boolean loop = entry.endsWith("*");
+                int line = Integer.parseInt(loop ? entry.substring(0, entry.length() - 1) : entry);
+                long[] counts = lines.computeIfAbsent(line, l -> new long[2]);
+                if (loop) {
+                    counts[1] += counters[counter];
+                } else {
+                    counts[0] += counters[counter];
+                    total += counters[counter];
+                }
+            }
+            counter++;
+        }
+
+        String file = System.getProperty("knightcode.profile");
+        try (PrintStream out = file != null ? new PrintStream(new FileOutputStream(file, true)) : null) {
+            PrintStream report = out != null ? out : System.err;
+            report.printf("Profile of %s: %d statements executed%n", program, total);
+            report.printf("%8s %14s %8s %16s%n", "Line", "Executions", "Share", "Loop iterations");
+            for (Map.Entry<Integer, long[]> entry : lines.entrySet()) {
+                long[] counts = entry.getValue();
+                report.printf("%8d %14d %7.2f%% %16s%n", entry.getKey(), counts[0],
+                        total > 0 ? 100.0 * counts[0] / total : 0.0, counts[1] > 0 ? Long.toString(counts[1]) : "");
+            }
+            report.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a line separator to the output buffer.
+     */
+    private static void newline() {
+        if (outputCount + NEWLINE.length > output.length) {
+            flush();
+        }
+        System.arraycopy(NEWLINE, 0, output, outputCount, NEWLINE.length);
+        outputCount += NEWLINE.length;
+    }
+
+    /**
+     * Appends bytes to the output buffer, writing them straight to the output stream when they do not fit.
+     *
+     * @param bytes the bytes to append
+     */
+    private static void write(byte[] bytes) {
+        if (bytes.length > output.length - outputCount) {
+            flush();
+        }
+        if (bytes.length > output.length) {
+            try {
+                outputStream.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        System.arraycopy(bytes, 0, output, outputCount, bytes.length);
+        outputCount += bytes.length;
+    }
+
+    /**
+     * Returns the next input byte without consuming it.
+     *
+     * @return the byte, or -1 at the end of the input
+     */
+    private static int peek() {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    /**
+     * Consumes the byte returned by the last {@link #peek()}.
+     */
+    private static void skip() {
+        buffer.position(buffer.position() + 1);
+    }
+
+    /**
+     * Refills the buffer once every byte in it has been consumed.
+     *
+     * @return false at the end of the input
+     */
+    private static boolean fill() {
+        if (!opened) {
+            open();
+        }
+        try {
+            if (channel != null) {
+                if (mappedTo >= fileSize) {
+                    return false;
+                }
+                long length = Math.min(fileSize - mappedTo, MAX_MAPPING);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, mappedTo, length);
+                mappedTo += length;
+                return true;
+            }
+            int count;
+            do {
+                count = stream.read(streamBytes);
+            } while (count == 0);
+            if (count < 0) {
+                return false;
+            }
+            buffer = ByteBuffer.wrap(streamBytes, 0, count);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens standard input, mapping it into memory when it is a non-empty regular file. Pipes and
+     * terminals cannot be positioned or report no size, so they are read through a buffer instead.
+     */
+    private static void open() {
+        opened = true;
+        try {
+            FileChannel stdin = new FileInputStream(FileDescriptor.in).getChannel();
+            long position = stdin.position();
+            long size = stdin.size();
+            if (size > position) {
+                channel = stdin;
+                mappedTo = position;
+                fileSize = size;
+                return;
+            }
+        } catch (IOException e) {
+            // Not a regular file; fall through to reading it as a stream
+        }
+        stream = System.in;
+        streamBytes = new byte[BUFFER_SIZE];
+    }
+}
@@ -0,0 +1,382 @@
+/**
+ * The LoopOptimization pass moves work out of WHILE loops. Inner loops are optimized before the loops
+ * around them. For every loop it first finds the variables assigned anywhere in the loop, then:
+ *
+ * <ul>
+ *   <li>reduces induction variables: a variable {@code i} whose only assignment in the loop is
+ *   {@code SET i := i + c} or {@code SET i := i - c} at the top level of the body, with a constant
+ *   {@code c}, steps by the same amount on every iteration, so every {@code i * k} with a constant
+ *   {@code k} is replaced by a new variable set to {@code i * k} before the loop and increased by
+ *   {@code c * k} right after {@code i} is. The running sum wraps exactly like the product would.</li>
+ *   <li>hoists invariant expressions: an arithmetic expression or comparison that reads no variable
+ *   assigned in the loop has the same value on every iteration, so it is evaluated once into a new
+ *   variable before the loop. Equal expressions share the variable. The new statements run even when the
+ *   loop does not, so expressions containing a division, which may throw, are never hoisted.</li>
+ * </ul>
+ *
+ * <p>The new variables are numbered after the declared ones and named {@code $t} followed by their id,
+ * which no KnightCode identifier can clash with. What was hoisted and reduced in every loop is listed in
+ * the optimization report.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LoopOptimization implements IrPass {
+    private final StringBuilder report; // null when no report is collected
+
+    /**
+     * An induction variable of a loop: its single update and its step.
+     */
+    private static final class Induction {
+        final Ir.Assign update;
+        final int step;
+
+        Induction(Ir.Assign update, int step) {
+            this.update = update;
+            this.step = step;
+        }
+    }
+
+    /**
+     * Constructs a new LoopOptimization pass.
+     *
+     * @param report true to collect the loop report
+     */
+    public LoopOptimization(boolean report) {
+        this.report = report ? new StringBuilder() : null;
+    }
+
+    @Override
+    public String getName() {
+        return "loop-optimization";
+    }
+
+    @Override
+    public void run(Ir.Program program) {
+        StringBuilder sb = new StringBuilder();
+        optimize(program, program.body, sb);
+        if (report != null && sb.length() > 0) {
+            synchronized (report) {
+                report.append(program.name).append(":\n").append(sb);
+            }
+        }
+    }
+
+    /**
+     * Returns the loop report: for every optimized loop of every program, what was hoisted and reduced.
+     *
+     * @return the report, or an empty string if no loop was changed
+     */
+    @Override
+    public String report() {
+        if (report == null) {
+            return "";
+        }
+        synchronized (report) {
+            return report.length() == 0 ? "" : "Loop optimization:\n" + report;
+        }
+    }
+
+    /**
+     * Optimizes every loop in a statement list and in the lists nested in it, inserting the statements
+     * hoisted out of each loop right before it.
+     *
+     * @param program the program the new variables are added to
+     * @param statements the statements, rewritten in place
+     * @param sb the report of the program
+     */
+    private void optimize(Ir.Program program, List<Ir.Stmt> statements, StringBuilder sb) {
+        for (int i = 0; i < statements.size(); i++) {
+            Ir.Stmt statement = statements.get(i);
+            if (statement instanceof Ir.If) {
+                optimize(program, ((Ir.If) statement).thenBody, sb);
+                optimize(program, ((Ir.If) statement).elseBody, sb);
+            } else if (statement instanceof Ir.While) {
+                Ir.While loop = (Ir.While) statement;
+                optimize(program, loop.body, sb);
+                List<Ir.Stmt> preheader = optimizeLoop(program, loop, sb);
+                statements.addAll(i, preheader);
+                i += preheader.size();
+            }
+        }
+    }
+
+    /**
+     * Reduces the induction variables of a loop and hoists its invariant expressions.
+     *
+     * @param program the program the new variables are added to
+     * @param loop the loop, rewritten in place
+     * @param sb the report of the program
+     * @return the statements to run before the loop
+     */
+    private List<Ir.Stmt> optimizeLoop(Ir.Program program, Ir.While loop, StringBuilder sb) {
+        int[] assignments = new int[program.variables];
+        Ir.countAssignments(loop.body, assignments);
+        List<Ir.Stmt> preheader = new ArrayList<>();
+        List<String> changes = new ArrayList<>();
+
+        // Induction variables, then the products of them with constants
+        Map<Integer, Induction> inductions = new LinkedHashMap<>();
+        for (Ir.Stmt statement : loop.body) {
+            Induction induction = induction(statement, assignments);
+            if (induction != null) {
+                inductions.put(((Ir.Assign) statement).target.id, induction);
+            }
+        }
+        Map<String, Ir.Var> products = new LinkedHashMap<>();
+        if (!inductions.isEmpty()) {
+            Map<Ir.Stmt, List<Ir.Stmt>> steps = new IdentityHashMap<>();
+            Ir.rewriteExpressions(loop.body, expr -> reduce(program, expr, inductions, products, steps, preheader, changes));
+            loop.condition.left = reduce(program, loop.condition.left, inductions, products, steps, preheader, changes);
+            loop.condition.right = reduce(program, loop.condition.right, inductions, products, steps, preheader, changes);
+            insertSteps(loop.body, steps);
+        }
+
+        // Invariant expressions; the variables stepped by the loop are assigned in it too
+        BitSet assigned = new BitSet();
+        for (int id = 0; id < assignments.length; id++) {
+            if (assignments[id] > 0) {
+                assigned.set(id);
+            }
+        }
+        for (Ir.Var product : products.values()) {
+            assigned.set(product.id);
+        }
+        Map<String, Ir.Var> hoisted = new LinkedHashMap<>();
+        Ir.rewriteExpressions(loop.body, expr -> hoist(program, expr, assigned, hoisted, preheader, changes));
+        loop.condition.left = hoist(program, loop.condition.left, assigned, hoisted, preheader, changes);
+        loop.condition.right = hoist(program, loop.condition.right, assigned, hoisted, preheader, changes);
+
+        if (!changes.isEmpty()) {
+            sb.append("  loop at line ").append(loop.line).append(":\n");
+            for (String change : changes) {
+                sb.append("    ").append(change).append('\n');
+            }
+        }
+        return preheader;
+    }
+
+    /**
+     * Recognizes the update of an induction variable: a top-level {@code SET i := i + c},
+     * {@code SET i := c + i} or {@code SET i := i - c} that is the only assignment of {@code i} in the loop.
+     *
+     * @param statement a top-level statement of the loop body
+     * @param assignments the number of assignments of every variable id in the loop
+     * @return the induction variable, or null if the statement does not update one
+     */
+    private static Induction induction(Ir.Stmt statement, int[] assignments) {
+        if (!(statement instanceof Ir.Assign) || !(((Ir.Assign) statement).value instanceof Ir.Binary)) {
+            return null;
+        }
+        Ir.Assign assign = (Ir.Assign) statement;
+        Ir.Binary value = (Ir.Binary) assign.value;
+        if (assign.target.type != VarType.INTEGER || assignments[assign.target.id] != 1) {
+            return null;
+        }
+        if (value.operator == Ir.Operator.ADD && Ir.isVar(value.left, assign.target) && value.right instanceof Ir.IntConst) {
+            return new Induction(assign, ((Ir.IntConst) value.right).value);
+        }
+        if (value.operator == Ir.Operator.ADD && Ir.isVar(value.right, assign.target) && value.left instanceof Ir.IntConst) {
+            return new Induction(assign, ((Ir.IntConst) value.left).value);
+        }
+        if (value.operator == Ir.Operator.SUB && Ir.isVar(value.left, assign.target) && value.right instanceof Ir.IntConst) {
+            return new Induction(assign, -((Ir.IntConst) value.right).value);
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the products of induction variables and constants in an expression by running sums,
+     * children first. The first time a product is seen, its variable is set before the loop and stepped
+     * right after the induction variable is.
+     *
+     * @param program the program the new variables are added to
+     * @param expr the expression
+     * @param inductions the induction variables of the loop by variable id
+     * @param products the variables holding the products replaced so far, by product
+     * @param steps the statements stepping the running sums, by the induction variable update they follow
+     * @param preheader the statements to run before the loop
+     * @param changes the report lines of the loop
+     * @return the rewritten expression, which may be the same node
+     */
+    private static Ir.Expr reduce(Ir.Program program, Ir.Expr expr, Map<Integer, Induction> inductions,
+            Map<String, Ir.Var> products, Map<Ir.Stmt, List<Ir.Stmt>> steps, List<Ir.Stmt> preheader, List<String> changes) {
+        if (expr instanceof Ir.Compare) {
+            Ir.Compare compare = (Ir.Compare) expr;
+            compare.left = reduce(program, compare.left, inductions, products, steps, preheader, changes);
+            compare.right = reduce(program, compare.right, inductions, products, steps, preheader, changes);
+            return compare;
+        }
+        if (!(expr instanceof Ir.Binary)) {
+            return expr;
+        }
+        Ir.Binary binary = (Ir.Binary) expr;
+        if (binary.operator == Ir.Operator.MUL) {
+            Ir.Var var = null;
+            Ir.Expr factor = null;
+            if (binary.left instanceof Ir.Var && binary.right instanceof Ir.IntConst) {
+                var = (Ir.Var) binary.left;
+                factor = binary.right;
+            } else if (binary.right instanceof Ir.Var && binary.left instanceof Ir.IntConst) {
+                var = (Ir.Var) binary.right;
+                factor = binary.left;
+            }
+            Induction induction = var == null ? null : inductions.get(var.id);
+            if (induction != null) {
+                String key = key(expr);
+                Ir.Var product = products.get(key);
+                if (product == null) {
+                    product = newVariable(program, expr);
+                    products.put(key, product);
+                    int increment = induction.step * ((Ir.IntConst) factor).value;
+                    preheader.add(assign(product, binary, expr));
+                    Ir.Binary step = node(new Ir.Binary(Ir.Operator.ADD, copy(product, expr), constant(increment, expr)), expr);
+                    steps.computeIfAbsent(induction.update, update -> new ArrayList<>()).add(assign(product, step, induction.update));
+                    changes.add("reduced " + binary + " to " + product + " += " + increment);
+                }
+                return copy(product, expr);
+            }
+        }
+        binary.left = reduce(program, binary.left, inductions, products, steps, preheader, changes);
+        binary.right = reduce(program, binary.right, inductions, products, steps, preheader, changes);
+        return binary;
+    }
+
+    /**
+     * Replaces the largest invariant subexpressions of an expression by variables set before the loop.
+     *
+     * @param program the program the new variables are added to
+     * @param expr the expression
+     * @param assigned the ids of the variables assigned in the loop
+     * @param hoisted the variables holding the expressions hoisted so far, by expression
+     * @param preheader the statements to run before the loop
+     * @param changes the report lines of the loop
+     * @return the rewritten expression, which may be the same node
+     */
+    private static Ir.Expr hoist(Ir.Program program, Ir.Expr expr, BitSet assigned, Map<String, Ir.Var> hoisted,
+            List<Ir.Stmt> preheader, List<String> changes) {
+        if (!(expr instanceof Ir.Binary) && !(expr instanceof Ir.Compare)) {
+            return expr;
+        }
+        if (isInvariant(expr, assigned) && !Ir.mayFail(expr)) {
+            String key = key(expr);
+            Ir.Var var = hoisted.get(key);
+            if (var == null) {
+                var = newVariable(program, expr);
+                hoisted.put(key, var);
+                preheader.add(assign(var, expr, expr));
+                changes.add("hoisted " + expr + " into " + var);
+            }
+            return copy(var, expr);
+        }
+        if (expr instanceof Ir.Binary) {
+            Ir.Binary binary = (Ir.Binary) expr;
+            binary.left = hoist(program, binary.left, assigned, hoisted, preheader, changes);
+            binary.right = hoist(program, binary.right, assigned, hoisted, preheader, changes);
+        } else {
+            Ir.Compare compare = (Ir.Compare) expr;
+            compare.left = hoist(program, compare.left, assigned, hoisted, preheader, changes);
+            compare.right = hoist(program, compare.right, assigned, hoisted, preheader, changes);
+        }
+        return expr;
+    }
+
+    /**
+     * Checks if an expression reads no variable assigned in the loop.
+     *
+     * @param expr the expression
+     * @param assigned the ids of the variables assigned in the loop
+     * @return true if the expression has the same value on every iteration
+     */
+    private static boolean isInvariant(Ir.Expr expr, BitSet assigned) {
+        if (expr instanceof Ir.Var) {
+            return !assigned.get(((Ir.Var) expr).id);
+        } else if (expr instanceof Ir.Binary) {
+            return isInvariant(((Ir.Binary) expr).left, assigned) && isInvariant(((Ir.Binary) expr).right, assigned);
+        } else if (expr instanceof Ir.Compare) {
+            return isInvariant(((Ir.Compare) expr).left, assigned) && isInvariant(((Ir.Compare) expr).right, assigned);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a key that is equal for structurally equal expressions.
+     *
+     * @param expr the expression
+     * @return the fully parenthesized expression, with variables by id
+     */
+    private static String key(Ir.Expr expr) {
+        if (expr instanceof Ir.Var) {
+            return "$" + ((Ir.Var) expr).id;
+        } else if (expr instanceof Ir.Binary) {
+            Ir.Binary binary = (Ir.Binary) expr;
+            return "(" + key(binary.left) + binary.operator.symbol + key(binary.right) + ")";
+        } else if (expr instanceof Ir.Compare) {
+            Ir.Compare compare = (Ir.Compare) expr;
+            return "(" + key(compare.left) + compare.relation.symbol + key(compare.right) + ")";
+        }
+        return expr.toString();
+    }
+
+    /**
+     * Inserts the statements stepping the running sums right after the updates of their induction
+     * variables.
+     *
+     * @param body the loop body, rewritten in place
+     * @param steps the statements to insert after each update
+     */
+    private static void insertSteps(List<Ir.Stmt> body, Map<Ir.Stmt, List<Ir.Stmt>> steps) {
+        List<Ir.Stmt> stepped = new ArrayList<>(body.size() + steps.size());
+        for (Ir.Stmt statement : body) {
+            stepped.add(statement);
+            stepped.addAll(steps.getOrDefault(statement, List.of()));
+        }
+        body.clear();
+        body.addAll(stepped);
+    }
+
+    /**
+     * Adds an integer variable to the program.
+     *
+     * @param program the program
+     * @param replaced the expression the variable replaces, for its line
+     * @return a reference to the new variable
+     */
+    private static Ir.Var newVariable(Ir.Program program, Ir.Expr replaced) {
+        int id = program.variables++;
+        return node(new Ir.Var("$t" + id, VarType.INTEGER, id), replaced);
+    }
+
+    private static Ir.Var copy(Ir.Var var, Ir.Node replaced) {
+        Ir.Var copy = new Ir.Var(var.name, var.type, var.id);
+        copy.line = replaced.line;
+        return copy;
+    }
+
+    private static Ir.Assign assign(Ir.Var target, Ir.Expr value, Ir.Node at) {
+        Ir.Assign assign = new Ir.Assign(target, value);
+        assign.line = at.line;
+        return assign;
+    }
+
+    private static Ir.IntConst constant(int value, Ir.Expr replaced) {
+        return node(new Ir.IntConst(value), replaced);
+    }
+
+    private static <T extends Ir.Expr> T node(T node, Ir.Expr replaced) {
+        node.line = replaced.line;
+        return node;
+    }
+}
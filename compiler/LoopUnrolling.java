@@ -0,0 +1,298 @@
+/**
+ * The LoopUnrolling pass recognizes counted WHILE loops and unrolls the small ones. A loop is counted when
+ * its condition is {@code i > b} with {@code i} stepping down, or {@code i < b} with {@code i} stepping up
+ * (either way around), where the only assignment of {@code i} in the loop is {@code SET i := i + c} or
+ * {@code SET i := i - c} with a constant {@code c} at the top level of the body, and the bound {@code b}
+ * is a constant or a variable the loop does not assign. Such a loop moves its counter toward the bound by
+ * the same step on every iteration, so the number of iterations left is known whenever its condition is
+ * tested.
+ *
+ * <p>Every counted loop is marked bottom-tested, which IrLowering emits with the condition tested once
+ * before the loop and then at the bottom of every iteration, saving a jump per iteration. A counted loop
+ * whose body is small is also unrolled by the unroll factor {@code n}: the body is repeated {@code n}
+ * times in a new loop in front of it, which runs while {@code n} more iterations are certain to pass the
+ * condition, that is while {@code i - (n - 1) * c} still passes it. The original loop stays behind it as
+ * the remainder loop and runs the last iterations. The shifted bound of a constant is computed at compile
+ * time, and a loop whose shifted bound would not fit an int is not unrolled. The shifted bound of a
+ * variable is computed before the loop, and when it wraps it is replaced by the smallest or largest int,
+ * so the unrolled loop never runs and the remainder loop runs every iteration.
+ *
+ * <p>Unrolling stops once the estimated size of the main method would go over the method size budget of
+ * the MethodSplitter, so the main method stays small enough to be JIT-compiled. Inner loops come first,
+ * as they run most often. The optimization report lists every counted loop and whether it was unrolled.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LoopUnrolling implements IrPass {
+    static final int DEFAULT_FACTOR = 4;
+    // The largest estimated size in bytes of a loop body that is unrolled
+    static final int MAX_BODY_SIZE = 120;
+
+    private final int factor;
+    private final MethodSplitter sizes;
+    private final StringBuilder report; // null when no report is collected
+
+    /**
+     * Constructs a new LoopUnrolling pass.
+     *
+     * @param factor the number of iterations an unrolled loop runs per trip, 1 to only mark counted loops
+     * @param sizes the splitter whose estimates and budget limit the growth of the main method
+     * @param report true to collect the report of counted loops
+     */
+    public LoopUnrolling(int factor, MethodSplitter sizes, boolean report) {
+        this.factor = factor;
+        this.sizes = sizes;
+        this.report = report ? new StringBuilder() : null;
+    }
+
+    /**
+     * The counter, step and bound of a counted loop.
+     */
+    private static final class Counted {
+        final Ir.Var counter;
+        final int step;
+        final Ir.Relation relation; // GT or LT, with the counter on the left
+        final Ir.Expr bound;
+
+        Counted(Ir.Var counter, int step, Ir.Relation relation, Ir.Expr bound) {
+            this.counter = counter;
+            this.step = step;
+            this.relation = relation;
+            this.bound = bound;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "loop-unrolling";
+    }
+
+    @Override
+    public void run(Ir.Program program) {
+        StringBuilder sb = new StringBuilder();
+        int[] budget = {sizes.getMaxMethodSize() - sizes.estimate(program.body, MethodSplitter.spills(program))};
+        unroll(program, program.body, budget, sb);
+        if (report != null && sb.length() > 0) {
+            synchronized (report) {
+                report.append(program.name).append(":\n").append(sb);
+            }
+        }
+    }
+
+    /**
+     * Returns the unrolling report: every counted loop of every program and whether it was unrolled.
+     *
+     * @return the report, or an empty string if no loop was counted
+     */
+    @Override
+    public String report() {
+        if (report == null) {
+            return "";
+        }
+        synchronized (report) {
+            return report.length() == 0 ? "" : "Counted loops:\n" + report;
+        }
+    }
+
+    /**
+     * Marks and unrolls the counted loops in a statement list and in the lists nested in it, inner loops
+     * first.
+     *
+     * @param program the program the new variables are added to
+     * @param statements the statements, rewritten in place
+     * @param budget the bytes the main method may still grow by, decreased in place
+     * @param sb the report of the program
+     */
+    private void unroll(Ir.Program program, List<Ir.Stmt> statements, int[] budget, StringBuilder sb) {
+        for (int i = 0; i < statements.size(); i++) {
+            Ir.Stmt statement = statements.get(i);
+            if (statement instanceof Ir.If) {
+                unroll(program, ((Ir.If) statement).thenBody, budget, sb);
+                unroll(program, ((Ir.If) statement).elseBody, budget, sb);
+                continue;
+            }
+            if (!(statement instanceof Ir.While)) {
+                continue;
+            }
+            Ir.While loop = (Ir.While) statement;
+            unroll(program, loop.body, budget, sb);
+            Counted counted = counted(program, loop);
+            if (counted == null) {
+                continue;
+            }
+            loop.bottomTested = true;
+            String outcome;
+            int bodySize = sizes.estimate(loop.body, MethodSplitter.spills(program));
+            if (factor == 1) {
+                outcome = "bottom-tested";
+            } else if (bodySize > MAX_BODY_SIZE) {
+                outcome = "bottom-tested, body of " + bodySize + " bytes too large to unroll";
+            } else {
+                List<Ir.Stmt> unrolled = unrolled(program, loop, counted);
+                int growth = sizes.estimate(unrolled, MethodSplitter.spills(program));
+                if (unrolled.isEmpty()) {
+                    outcome = "bottom-tested, shifted bound does not fit an int";
+                } else if (growth > budget[0]) {
+                    outcome = "bottom-tested, unrolling would take the main method over its size budget";
+                } else {
+                    budget[0] -= growth;
+                    statements.addAll(i, unrolled);
+                    i += unrolled.size();
+                    outcome = "unrolled " + factor + " times, " + growth + " bytes";
+                }
+            }
+            sb.append(String.format("  loop at line %d: %s step %+d, %s%n", loop.line, counted.counter, counted.step, outcome));
+        }
+    }
+
+    /**
+     * Recognizes a counted loop.
+     *
+     * @param program the program holding the loop
+     * @param loop the loop
+     * @return the counter, step and bound of the loop, or null if it is not counted
+     */
+    private static Counted counted(Ir.Program program, Ir.While loop) {
+        Ir.Compare condition = loop.condition;
+        Ir.Relation relation = condition.relation;
+        Ir.Expr left = condition.left;
+        Ir.Expr right = condition.right;
+        if (relation != Ir.Relation.GT && relation != Ir.Relation.LT) {
+            return null;
+        }
+        if (!(left instanceof Ir.Var)) {
+            // b < i is i > b, and b > i is i < b
+            Ir.Expr swapped = left;
+            left = right;
+            right = swapped;
+            relation = relation == Ir.Relation.GT ? Ir.Relation.LT : Ir.Relation.GT;
+        }
+        if (!(left instanceof Ir.Var) || left.type() != VarType.INTEGER) {
+            return null;
+        }
+        Ir.Var counter = (Ir.Var) left;
+
+        int[] assignments = new int[program.variables];
+        Ir.countAssignments(loop.body, assignments);
+        if (assignments[counter.id] != 1) {
+            return null;
+        }
+        if (!(right instanceof Ir.IntConst) && !(right instanceof Ir.Var && assignments[((Ir.Var) right).id] == 0)) {
+            return null;
+        }
+        for (Ir.Stmt statement : loop.body) {
+            int step = step(statement, counter);
+            if (step > 0 && relation == Ir.Relation.LT || step < 0 && relation == Ir.Relation.GT) {
+                return new Counted(counter, step, relation, right);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the step of a statement that adds a constant to the counter.
+     *
+     * @param statement a top-level statement of the loop body
+     * @param counter the counter
+     * @return the constant added, or 0 if the statement does not step the counter
+     */
+    private static int step(Ir.Stmt statement, Ir.Var counter) {
+        if (!(statement instanceof Ir.Assign) || ((Ir.Assign) statement).target.id != counter.id
+                || !(((Ir.Assign) statement).value instanceof Ir.Binary)) {
+            return 0;
+        }
+        Ir.Binary value = (Ir.Binary) ((Ir.Assign) statement).value;
+        if (value.operator == Ir.Operator.ADD && Ir.isVar(value.left, counter) && value.right instanceof Ir.IntConst) {
+            return ((Ir.IntConst) value.right).value;
+        }
+        if (value.operator == Ir.Operator.ADD && Ir.isVar(value.right, counter) && value.left instanceof Ir.IntConst) {
+            return ((Ir.IntConst) value.left).value;
+        }
+        if (value.operator == Ir.Operator.SUB && Ir.isVar(value.left, counter) && value.right instanceof Ir.IntConst
+                && ((Ir.IntConst) value.right).value != Integer.MIN_VALUE) {
+            return -((Ir.IntConst) value.right).value;
+        }
+        return 0;
+    }
+
+    /**
+     * Builds the statements running a counted loop unrolled, which go in front of the loop: the shifted
+     * bound of a variable bound, and the loop running the body the unroll factor times per trip.
+     *
+     * @param program the program the new variables are added to
+     * @param loop the counted loop, which becomes the remainder loop
+     * @param counted the counter, step and bound of the loop
+     * @return the statements, or an empty list if the shifted bound of a constant does not fit an int
+     */
+    private List<Ir.Stmt> unrolled(Ir.Program program, Ir.While loop, Counted counted) {
+        List<Ir.Stmt> statements = new ArrayList<>();
+        long shift = (long) (factor - 1) * counted.step; // the counter must pass the condition shifted by this
+        Ir.Expr shiftedBound;
+        if (counted.bound instanceof Ir.IntConst) {
+            long bound = ((Ir.IntConst) counted.bound).value - shift;
+            if (bound < Integer.MIN_VALUE || bound > Integer.MAX_VALUE) {
+                return statements;
+            }
+            shiftedBound = at(new Ir.IntConst((int) bound), loop);
+        } else {
+            if (shift < Integer.MIN_VALUE || shift > Integer.MAX_VALUE) {
+                return statements;
+            }
+            // SET b' := b - shift, and when that wraps past b, give the unrolled loop a bound it never passes
+            Ir.Var bound = (Ir.Var) counted.bound;
+            int id = program.variables++;
+            Ir.Var shifted = at(new Ir.Var("$t" + id, VarType.INTEGER, id), loop);
+            Ir.Binary difference = at(new Ir.Binary(Ir.Operator.SUB, copy(bound, loop), at(new Ir.IntConst((int) shift), loop)), loop);
+            statements.add(at(new Ir.Assign(shifted, difference), loop));
+            Ir.Relation wrapped = counted.relation == Ir.Relation.LT ? Ir.Relation.GT : Ir.Relation.LT;
+            int never = counted.relation == Ir.Relation.LT ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            List<Ir.Stmt> clamp = new ArrayList<>();
+            clamp.add(at(new Ir.Assign(copy(shifted, loop), at(new Ir.IntConst(never), loop)), loop));
+            Ir.Compare check = at(new Ir.Compare(wrapped, copy(shifted, loop), copy(bound, loop)), loop);
+            statements.add(at(new Ir.If(check, clamp, new ArrayList<>()), loop));
+            shiftedBound = copy(shifted, loop);
+        }
+
+        List<Ir.Stmt> body = new ArrayList<>(loop.body.size() * factor);
+        for (int copy = 0; copy < factor; copy++) {
+            body.addAll(Ir.copy(loop.body));
+        }
+        Ir.Compare condition = at(new Ir.Compare(counted.relation, copy(counted.counter, loop), shiftedBound), loop);
+        Ir.While unrolled = at(new Ir.While(condition, body), loop);
+        unrolled.bottomTested = true;
+        statements.add(unrolled);
+        return statements;
+    }
+
+    /**
+     * Makes a new reference to a variable, on the line of another node.
+     *
+     * @param var the variable
+     * @param at the node whose line the reference is on
+     * @return the new reference
+     */
+    private static Ir.Var copy(Ir.Var var, Ir.Node at) {
+        return at(new Ir.Var(var.name, var.type, var.id), at);
+    }
+
+    /**
+     * Puts a new node on the line of another node.
+     *
+     * @param node the new node
+     * @param at the node whose line the new node is on
+     * @return the new node
+     */
+    private static <T extends Ir.Node> T at(T node, Ir.Node at) {
+        node.line = at.line;
+        return node;
+    }
+}
@@ -0,0 +1,334 @@
+/**
+ * The MethodSplitter class keeps the generated methods small. A KnightCode program normally becomes a
+ * single main method, but HotSpot never JIT-compiles a method of more than 8000 bytes of bytecode and the
+ * class file format rejects methods of more than 64 KB. When the estimated bytecode of a program exceeds
+ * the method size budget, the splitter moves runs of consecutive statements into private static methods
+ * and replaces them with calls. Whole IF and WHILE statements are kept together; when one of them is too
+ * large by itself its bodies are split instead, and when the calls left behind are still too many they
+ * are grouped into methods again.
+ *
+ * <p>Variables used by more than one method, or by a method that is called inside a loop and therefore
+ * has to keep their values between calls, are promoted to static fields of the class. The others stay
+ * local variables of the only method that uses them. A program with more variables than a class can have
+ * fields spills some of them to static arrays, whose accesses take more than twice the bytes, so the
+ * estimates of such a program count every variable access as spilled.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class MethodSplitter {
+    public static final int DEFAULT_MAX_METHOD_SIZE = 4000;
+    // The smallest budget accepted; below it not even a few calls fit a method
+    public static final int MIN_MAX_METHOD_SIZE = 16;
+    private static final int CALL_SIZE = 3;
+    // A spilled variable is loaded with GETSTATIC, SIPUSH and an array load, and stored with two more SWAPs
+    private static final int SPILLED_LOAD_SIZE = 7;
+    private static final int SPILLED_STORE_SIZE = 9;
+
+    private final int maxMethodSize;
+    private final int statementOverhead; // bytes added per statement, such as profile counters
+    private final StringBuilder report; // null when no report is collected
+
+    /**
+     * Constructs a new MethodSplitter.
+     *
+     * @param maxMethodSize the estimated bytecode size in bytes no generated method should exceed
+     */
+    public MethodSplitter(int maxMethodSize) {
+        this(maxMethodSize, 0);
+    }
+
+    /**
+     * Constructs a new MethodSplitter for code that adds instructions to every statement.
+     *
+     * @param maxMethodSize the estimated bytecode size in bytes no generated method should exceed
+     * @param statementOverhead the most bytes the code generator adds per statement
+     */
+    public MethodSplitter(int maxMethodSize, int statementOverhead) {
+        this(maxMethodSize, statementOverhead, true);
+    }
+
+    /**
+     * Constructs a new MethodSplitter that only collects its report when asked to, so a long-running
+     * compiler does not keep a line for every program it split.
+     *
+     * @param maxMethodSize the estimated bytecode size in bytes no generated method should exceed
+     * @param statementOverhead the most bytes the code generator adds per statement
+     * @param report true to collect the split report
+     */
+    public MethodSplitter(int maxMethodSize, int statementOverhead, boolean report) {
+        this.maxMethodSize = maxMethodSize;
+        this.statementOverhead = statementOverhead;
+        this.report = report ? new StringBuilder() : null;
+    }
+
+    /**
+     * Splits a program into methods if its main method would be larger than the budget. The split
+     * methods and the promoted variables are recorded in the program.
+     *
+     * @param program the program to split
+     */
+    public void split(Ir.Program program) {
+        boolean spilled = spills(program);
+        int size = estimate(program.body, spilled);
+        if (size <= maxMethodSize) {
+            return;
+        }
+        split(program, program.body, false, spilled);
+
+        // Find the methods using each variable
+        Ir.Var[] vars = new Ir.Var[program.variables];
+        String[] users = new String[program.variables]; // the first method using each variable
+        boolean[] shared = new boolean[program.variables]; // true if more than one method uses the variable
+        Set<String> calledInLoops = new HashSet<>();
+        collectVariables("main", program.body, vars, users, shared);
+        for (Ir.Method method : program.methods) {
+            collectVariables(method.name, method.body, vars, users, shared);
+            if (method.inLoop) {
+                calledInLoops.add(method.name);
+            }
+        }
+        int locals = 0;
+        for (int id = 0; id < vars.length; id++) {
+            if (vars[id] == null) {
+                continue;
+            }
+            if (shared[id] || calledInLoops.contains(users[id])) {
+                program.fields.add(vars[id]);
+            } else {
+                locals++;
+            }
+        }
+
+        if (report == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s: estimated %d bytes, budget %d: split into %d methods, %d variables in static fields, %d kept local%n",
+                program.name, size, maxMethodSize, program.methods.size(), program.fields.size(), locals));
+        sb.append(String.format("  %-10s %6s %6s  %s%n", "Method", "Stmts", "Bytes", "Called"));
+        sb.append(String.format("  %-10s %6d %6d  %s%n", "main", program.body.size(), estimate(program.body, spilled), "once"));
+        for (Ir.Method method : program.methods) {
+            sb.append(String.format("  %-10s %6d %6d  %s%n", method.name, method.body.size(), estimate(method.body, spilled),
+                    method.inLoop ? "in a loop" : "once"));
+        }
+        synchronized (report) {
+            report.append(sb);
+        }
+    }
+
+    /**
+     * Shrinks a list of statements in place until it fits the budget, moving statements into new
+     * methods of the program.
+     *
+     * @param program the program the new methods are added to
+     * @param statements the statements to shrink
+     * @param inLoop true if the statements run inside a loop
+     * @param spilled true if the variables of the program may be spilled
+     */
+    private void split(Ir.Program program, List<Ir.Stmt> statements, boolean inLoop, boolean spilled) {
+        if (estimate(statements, spilled) <= maxMethodSize) {
+            return;
+        }
+
+        // Split the bodies of IF and WHILE statements that are too large to move as a whole
+        for (Ir.Stmt statement : statements) {
+            if (estimate(statement, spilled) <= maxMethodSize) {
+                continue;
+            }
+            if (statement instanceof Ir.If) {
+                split(program, ((Ir.If) statement).thenBody, inLoop, spilled);
+                split(program, ((Ir.If) statement).elseBody, inLoop, spilled);
+            } else if (statement instanceof Ir.While) {
+                split(program, ((Ir.While) statement).body, true, spilled);
+            }
+        }
+
+        // Move runs of statements that fit the budget into methods until the calls left behind fit too
+        int size;
+        while ((size = estimate(statements, spilled)) > maxMethodSize) {
+            List<List<Ir.Stmt>> runs = new ArrayList<>();
+            List<Ir.Stmt> run = new ArrayList<>();
+            int runSize = 0;
+            for (Ir.Stmt statement : statements) {
+                int statementSize = estimate(statement, spilled);
+                if (!run.isEmpty() && runSize + statementSize > maxMethodSize) {
+                    runs.add(run);
+                    run = new ArrayList<>();
+                    runSize = 0;
+                }
+                run.add(statement);
+                runSize += statementSize;
+            }
+            runs.add(run);
+            if (runs.size() * CALL_SIZE >= size) {
+                // Each run would only wrap its statements in another method without shrinking the list
+                break;
+            }
+            statements.clear();
+            for (List<Ir.Stmt> statementsOfRun : runs) {
+                statements.add(outline(program, statementsOfRun, inLoop));
+            }
+        }
+    }
+
+    /**
+     * Moves statements into a new method of the program.
+     *
+     * @param program the program the method is added to
+     * @param statements the statements the method runs
+     * @param inLoop true if the method is called inside a loop
+     * @return the call of the new method
+     */
+    private static Ir.Call outline(Ir.Program program, List<Ir.Stmt> statements, boolean inLoop) {
+        Ir.Method method = new Ir.Method("part" + program.parts++, statements, inLoop);
+        program.methods.add(method);
+        Ir.Call call = new Ir.Call(method.name);
+        call.line = statements.get(0).line;
+        return call;
+    }
+
+    /**
+     * Records the methods every variable in a list of statements is used by.
+     *
+     * @param method the name of the method the statements belong to
+     * @param statements the statements to search
+     * @param vars a reference to each variable by id, filled in by this method
+     * @param users the first method using each variable, filled in by this method
+     * @param shared whether each variable is used by more than one method, filled in by this method
+     */
+    private static void collectVariables(String method, List<Ir.Stmt> statements, Ir.Var[] vars, String[] users,
+                                         boolean[] shared) {
+        for (Ir.Var var : Ir.variables(statements)) {
+            if (users[var.id] == null) {
+                vars[var.id] = var;
+                users[var.id] = method;
+            } else if (!users[var.id].equals(method)) {
+                shared[var.id] = true;
+            }
+        }
+    }
+
+    /**
+     * Returns whether some variables of a program may be spilled, because it has more variables than a
+     * class can have static fields.
+     *
+     * @param program the program
+     * @return true if variable accesses should be estimated as spilled
+     */
+    static boolean spills(Ir.Program program) {
+        return program.variables > IrLowering.MAX_FIELDS;
+    }
+
+    /**
+     * Estimates the bytecode size of a list of statements. The estimate errs on the large side: it
+     * assumes every constant needs a three-byte instruction and every variable lives in a static field,
+     * or in a static array when the variables may be spilled.
+     *
+     * @param statements the statements
+     * @param spilled true if the variables of the program may be spilled
+     * @return the estimated size in bytes
+     */
+    int estimate(List<Ir.Stmt> statements, boolean spilled) {
+        int size = 0;
+        for (Ir.Stmt statement : statements) {
+            size += estimate(statement, spilled);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the bytecode size of a statement.
+     *
+     * @param statement the statement
+     * @param spilled true if the variables of the program may be spilled
+     * @return the estimated size in bytes
+     */
+    int estimate(Ir.Stmt statement, boolean spilled) {
+        int store = spilled ? SPILLED_STORE_SIZE : 3;
+        if (statement instanceof Ir.Assign) {
+            return estimate(((Ir.Assign) statement).value, spilled) + store + statementOverhead;
+        } else if (statement instanceof Ir.Print) {
+            return estimate(((Ir.Print) statement).value, spilled) + 7 + statementOverhead;
+        } else if (statement instanceof Ir.Read) {
+            return 3 + store + statementOverhead;
+        } else if (statement instanceof Ir.Evaluate) {
+            return estimate(((Ir.Evaluate) statement).value, spilled) + 1 + statementOverhead;
+        } else if (statement instanceof Ir.If) {
+            Ir.If decision = (Ir.If) statement;
+            return estimateCondition(decision.condition, spilled) + estimate(decision.thenBody, spilled) + 3
+                    + estimate(decision.elseBody, spilled) + statementOverhead;
+        } else if (statement instanceof Ir.While) {
+            Ir.While loop = (Ir.While) statement;
+            int tests = loop.bottomTested ? 2 : 1; // a bottom-tested loop repeats its condition at the bottom
+            return tests * estimateCondition(loop.condition, spilled) + estimate(loop.body, spilled) + 3
+                    + statementOverhead;
+        } else if (statement instanceof Ir.Call) {
+            return CALL_SIZE;
+        }
+        throw new RuntimeException("Unsupported statement: " + statement);
+    }
+
+    /**
+     * Estimates the bytecode size of the conditional jump of an IF or WHILE statement.
+     *
+     * @param condition the condition
+     * @param spilled true if the variables of the program may be spilled
+     * @return the estimated size in bytes
+     */
+    private static int estimateCondition(Ir.Compare condition, boolean spilled) {
+        return estimate(condition.left, spilled) + estimate(condition.right, spilled) + 3;
+    }
+
+    /**
+     * Estimates the bytecode size of an expression.
+     *
+     * @param expr the expression
+     * @param spilled true if the variables of the program may be spilled
+     * @return the estimated size in bytes
+     */
+    static int estimate(Ir.Expr expr, boolean spilled) {
+        if (expr instanceof Ir.Binary) {
+            return estimate(((Ir.Binary) expr).left, spilled) + estimate(((Ir.Binary) expr).right, spilled) + 1;
+        } else if (expr instanceof Ir.Compare) {
+            // The comparison, a conditional jump and the two branches pushing 0 or 1
+            return estimate(((Ir.Compare) expr).left, spilled) + estimate(((Ir.Compare) expr).right, spilled) + 8;
+        } else if (expr instanceof Ir.Var && spilled) {
+            return SPILLED_LOAD_SIZE;
+        }
+        return 3;
+    }
+
+    /**
+     * Returns the estimated bytecode size no generated method should exceed.
+     *
+     * @return the budget in bytes
+     */
+    int getMaxMethodSize() {
+        return maxMethodSize;
+    }
+
+    /**
+     * Returns the split report: for every program that was split, the methods it was split into.
+     *
+     * @return the report, or an empty string if no program was split or no report is collected
+     */
+    public String report() {
+        if (report == null) {
+            return "";
+        }
+        synchronized (report) {
+            return report.toString();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * The ParseTracer class traces how a KnightCode source parses: it walks the parse tree and writes an event
+ * for every rule it enters and leaves, with the token span of the rule and the line and column where the
+ * span starts and ends, and an event for every token the parser could not match. Each event takes constant
+ * time, since the span comes from the first and last token of the rule instead of the text of its subtree,
+ * so tracing is linear in the size of the source. The walk is iterative, so deeply nested expressions do
+ * not overflow the stack, and the events go through a buffered writer.
+ *
+ * <p>The text format indents each event by its depth, with {@code >} entering and {@code <} leaving a
+ * rule. With {@code --json} every event is a JSON object on a line of its own. {@code --max-depth} leaves
+ * out the rules nested deeper than the given depth, where the file rule is at depth 0, and {@code --rules}
+ * keeps only the events of the named rules. Lines count from 1 and columns from 0, as in syntax errors.
+ *
+ * <pre>
+ * java compiler/ParseTracer --max-depth 3 tests/program1.kc
+ * java compiler/ParseTracer --json --rules setvar,expr --output program1.trace tests/program1.kc
+ * </pre>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.IterativeParseTreeWalker;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import lexparse.KnightCodeParser;
+
+public class ParseTracer implements ParseTreeListener {
+    // Events deeper than this are indented as deep and labeled with their depth, keeping lines short
+    private static final int MAX_INDENT = 32;
+    private static final String INDENT = " ".repeat(2 * MAX_INDENT);
+
+    private final Writer out;
+    private final boolean json;
+    private final int maxDepth;
+    private final Set<String> rules; // null to trace every rule
+    private int depth = -1; // the depth of the rule entered last, 0 for the file rule
+    private long events;
+
+    /**
+     * Constructs a new ParseTracer.
+     *
+     * @param out the writer the events are written to, which should be buffered
+     * @param json true to write JSON lines, false to write indented text
+     * @param maxDepth the depth of the most deeply nested rules traced
+     * @param rules the names of the rules traced, or null to trace every rule
+     */
+    public ParseTracer(Writer out, boolean json, int maxDepth, Set<String> rules) {
+        this.out = out;
+        this.json = json;
+        this.maxDepth = maxDepth;
+        this.rules = rules;
+    }
+
+    /**
+     * Traces a KnightCode source file.
+     *
+     * @param args the options {@code --json}, {@code --max-depth N}, {@code --rules name,...} and
+     *             {@code --output file}, then the path of the source file
+     */
+    public static void main(String[] args) {
+        boolean json = false;
+        int maxDepth = Integer.MAX_VALUE;
+        Set<String> rules = null;
+        String output = null;
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("--"); i++) {
+                switch (args[i]) {
+                    case "--json":
+                        json = true;
+                        break;
+                    case "--max-depth":
+                        maxDepth = Integer.parseInt(value(args, ++i));
+                        break;
+                    case "--rules":
+                        rules = new HashSet<>(Arrays.asList(value(args, ++i).split(",")));
+                        Set<String> unknown = new HashSet<>(rules);
+                        unknown.removeAll(Arrays.asList(KnightCodeParser.ruleNames));
+                        if (!unknown.isEmpty()) {
+                            throw new IllegalArgumentException("Unknown rules: " + unknown + " (the rules are "
+                                    + String.join(", ", KnightCodeParser.ruleNames) + ")");
+                        }
+                        break;
+                    case "--output":
+                        output = value(args, ++i);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (i != args.length - 1) {
+            System.out.println("Usage: java compiler/ParseTracer [--json] [--max-depth N] [--rules name,...] [--output file] <path to inputFile.kc>");
+            return;
+        }
+
+        String inputFile = args[i];
+        try (Writer out = output != null
+                ? Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+            ErrorReporter errors = new ErrorReporter(inputFile);
+            KnightCodeParser.FileContext tree = new KccCompiler(new CompilerOptions()).parse(CharStreams.fromFileName(inputFile), errors);
+            ParseTracer tracer = new ParseTracer(out, json, maxDepth, rules);
+            new IterativeParseTreeWalker().walk(tracer, tree);
+            out.flush();
+            if (errors.hasErrors()) {
+                System.err.println("Syntax errors:\n" + errors);
+            }
+            System.err.println(tracer.getEventCount() + " events traced from " + inputFile);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error tracing the input file: " + inputFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the value following an option.
+     *
+     * @param args the command line arguments
+     * @param index the index of the value
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Returns the number of events written so far.
+     *
+     * @return the number of events
+     */
+    public long getEventCount() {
+        return events;
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        depth++;
+        rule("enter", ctx);
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        rule("exit", ctx);
+        depth--;
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+        if (depth + 1 > maxDepth) {
+            return;
+        }
+        Token token = node.getSymbol();
+        if (json) {
+            write("{\"event\":\"error\",\"depth\":" + (depth + 1) + ",\"token\":" + token.getTokenIndex()
+                    + ",\"line\":" + token.getLine() + ",\"column\":" + token.getCharPositionInLine()
+                    + ",\"text\":\"" + escape(token.getText()) + "\"}\n");
+        } else {
+            write(indent(depth + 1) + "! " + token.getText() + " " + token.getLine() + ":" + token.getCharPositionInLine() + "\n");
+        }
+    }
+
+    /**
+     * Writes the event of a rule entered or left, unless it is filtered out.
+     *
+     * @param event "enter" or "exit"
+     * @param ctx the context of the rule
+     */
+    private void rule(String event, ParserRuleContext ctx) {
+        String name = KnightCodeParser.ruleNames[ctx.getRuleIndex()];
+        if (depth > maxDepth || rules != null && !rules.contains(name)) {
+            return;
+        }
+        Token start = ctx.getStart();
+        Token stop = ctx.getStop();
+        if (stop == null || stop.getTokenIndex() < start.getTokenIndex()) {
+            stop = null; // the rule matched no tokens
+        }
+        int firstToken = start.getTokenIndex();
+        int lastToken = stop != null ? stop.getTokenIndex() : firstToken - 1;
+        int endLine = stop != null ? stop.getLine() : start.getLine();
+        int endColumn = stop != null ? stop.getCharPositionInLine() + stop.getStopIndex() - stop.getStartIndex() + 1
+                : start.getCharPositionInLine();
+        if (json) {
+            write("{\"event\":\"" + event + "\",\"rule\":\"" + name + "\",\"depth\":" + depth
+                    + ",\"start\":" + firstToken + ",\"stop\":" + lastToken
+                    + ",\"line\":" + start.getLine() + ",\"column\":" + start.getCharPositionInLine()
+                    + ",\"endLine\":" + endLine + ",\"endColumn\":" + endColumn + "}\n");
+        } else {
+            write(indent(depth) + ("enter".equals(event) ? "> " : "< ") + name + " " + firstToken + ".." + lastToken
+                    + " " + start.getLine() + ":" + start.getCharPositionInLine() + "-" + endLine + ":" + endColumn + "\n");
+        }
+    }
+
+    /**
+     * Writes an event.
+     *
+     * @param event the text of the event, ending with a line break
+     */
+    private void write(String event) {
+        try {
+            out.write(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        events++;
+    }
+
+    /**
+     * Returns the indentation of an event at a depth, two spaces per level up to a limit, beyond which the
+     * depth is written as a number so deeply nested rules do not make the trace quadratic.
+     *
+     * @param depth the depth of the event
+     * @return the indentation
+     */
+    private static String indent(int depth) {
+        if (depth > MAX_INDENT) {
+            return INDENT + "[" + depth + "] ";
+        }
+        return INDENT.substring(0, 2 * depth);
+    }
+
+    /**
+     * Escapes a token text for a JSON string.
+     *
+     * @param text the text
+     * @return the escaped text
+     */
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
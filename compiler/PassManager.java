@@ -0,0 +1,146 @@
+/**
+ * The PassManager class runs the optimization passes selected by the optimization level over the IR of
+ * each program, in order. For every pass it records how often it ran, how long it took and how much it
+ * changed the size of the IR, so the optimization report shows what each pass buys.
+ *
+ * <ul>
+ *   <li>{@code -O0}: no passes; the IR is lowered exactly as it was built</li>
+ *   <li>{@code -O1}: constant folding with algebraic simplification, then dead code elimination</li>
+ *   <li>{@code -O2}: everything in {@code -O1}, then the loop optimizations, counted loop unrolling and
+ *   strength reduction of multiplications and divisions</li>
+ * </ul>
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PassManager {
+    private final List<IrPass> passes = new ArrayList<>();
+    private final List<PassStatistics> statistics = new ArrayList<>();
+
+    /**
+     * Totals collected for a single pass over every program it ran on.
+     */
+    private static class PassStatistics {
+        final String name;
+        long runs;
+        long nanos;
+        long sizeBefore;
+        long sizeAfter;
+
+        PassStatistics(String name) {
+            this.name = name;
+        }
+
+        synchronized void record(long elapsed, int before, int after) {
+            runs++;
+            nanos += elapsed;
+            sizeBefore += before;
+            sizeAfter += after;
+        }
+    }
+
+    /**
+     * Creates a pass manager holding the passes of an optimization level.
+     *
+     * @param level the optimization level, 0 to 2
+     * @return the pass manager
+     */
+    public static PassManager forLevel(int level) {
+        return forLevel(level, LoopUnrolling.DEFAULT_FACTOR, new MethodSplitter(MethodSplitter.DEFAULT_MAX_METHOD_SIZE), true);
+    }
+
+    /**
+     * Creates a pass manager holding the passes of the optimization level of the options, unrolling loops
+     * by their factor within their method size budget. The passes only collect their reports with
+     * {@code --opt-report}.
+     *
+     * @param options the compiler options
+     * @return the pass manager
+     */
+    public static PassManager forOptions(CompilerOptions options) {
+        MethodSplitter sizes = new MethodSplitter(options.getMaxMethodSize(),
+                options.isProfile() ? BytecodeGenerator.PROFILE_COUNTER_SIZE : 0);
+        return forLevel(options.getOptimizationLevel(), options.getUnrollFactor(), sizes, options.isOptimizationReport());
+    }
+
+    /**
+     * Creates a pass manager holding the passes of an optimization level.
+     *
+     * @param level the optimization level, 0 to 2
+     * @param unrollFactor the number of iterations an unrolled loop runs per trip, 1 to not unroll
+     * @param sizes the splitter whose estimates and budget limit the growth of the main method
+     * @param report true for passes to collect the details of what they did
+     * @return the pass manager
+     */
+    private static PassManager forLevel(int level, int unrollFactor, MethodSplitter sizes, boolean report) {
+        PassManager manager = new PassManager();
+        if (level >= 1) {
+            manager.add(new ConstantFolding());
+            manager.add(new DeadCodeElimination());
+        }
+        if (level >= 2) {
+            // Before strength reduction, which would turn the products of induction variables into shifts
+            manager.add(new LoopOptimization(report));
+            manager.add(new LoopUnrolling(unrollFactor, sizes, report));
+            manager.add(new StrengthReduction());
+        }
+        return manager;
+    }
+
+    /**
+     * Adds a pass to run after the passes already added.
+     *
+     * @param pass the pass to add
+     */
+    public void add(IrPass pass) {
+        passes.add(pass);
+        statistics.add(new PassStatistics(pass.getName()));
+    }
+
+    /**
+     * Runs every pass over a program.
+     *
+     * @param program the program to optimize
+     */
+    public void run(Ir.Program program) {
+        for (int i = 0; i < passes.size(); i++) {
+            int before = program.size();
+            long start = System.nanoTime();
+            passes.get(i).run(program);
+            long elapsed = System.nanoTime() - start;
+            statistics.get(i).record(elapsed, before, program.size());
+        }
+    }
+
+    /**
+     * Returns the optimization report: for each pass, how often it ran, the total time it took and the
+     * IR size before and after it, followed by the details the passes report themselves.
+     *
+     * @return the report, one line per pass
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-28s %6s %10s %12s %12s %8s%n", "Pass", "Runs", "Time ms", "IR before", "IR after", "Delta"));
+        for (PassStatistics stats : statistics) {
+            synchronized (stats) {
+                sb.append(String.format("%-28s %6d %10.3f %12d %12d %+8d%n", stats.name, stats.runs, stats.nanos / 1e6,
+                        stats.sizeBefore, stats.sizeAfter, stats.sizeAfter - stats.sizeBefore));
+            }
+        }
+        if (statistics.isEmpty()) {
+            sb.append("(no passes at this optimization level)\n");
+        }
+        for (IrPass pass : passes) {
+            sb.append(pass.report());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,402 @@
+/**
+ * The PeepholeOptimizer class rewrites short instruction sequences of a generated method into cheaper
+ * equivalents. It works on the ASM tree form of the method, which the BytecodeGenerator builds instead of
+ * streaming straight into the ClassWriter when peephole optimization is enabled. The patterns are:
+ *
+ * <ul>
+ *   <li>{@code LDC n} becomes {@code ICONST_n}, {@code BIPUSH n} or {@code SIPUSH n} when {@code n} fits</li>
+ *   <li>{@code ILOAD x, <const c>, IADD|ISUB, ISTORE x} (or {@code <const c>, ILOAD x, IADD, ISTORE x})
+ *       becomes {@code IINC x, c} or {@code IINC x, -c}</li>
+ *   <li>{@code ISTORE x, ILOAD x} becomes {@code DUP, ISTORE x}, and likewise for references</li>
+ *   <li>{@code GOTO L} is removed when {@code L} is the next instruction</li>
+ * </ul>
+ *
+ * No pattern is matched across a label that a jump or exception handler refers to, so a sequence that is
+ * the target of a jump is never merged. The labels of line numbers and local variable scopes are skipped,
+ * so the debug information does not change the code. The
+ * patterns are applied until none of them matches. For every method the optimizer records the code size
+ * before and after, and how often each pattern fired, for the optimization report. Sizes are measured
+ * against a constant pool holding only the method's own constants, so an {@code LDC} counts as two bytes
+ * and a {@code SIPUSH} replacing it as one more, although in a large class the {@code SIPUSH} is as short
+ * as the {@code LDC_W} it replaces and frees a constant pool entry.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+public class PeepholeOptimizer implements Opcodes {
+    private final List<MethodResult> results; // null when the sizes of the methods are not reported
+    private long constants;
+    private long increments;
+    private long reloads;
+    private long jumps;
+
+    /**
+     * The code size of a single method before and after optimization.
+     */
+    private static class MethodResult {
+        final String name;
+        final int before;
+        final int after;
+
+        MethodResult(String name, int before, int after) {
+            this.name = name;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /**
+     * Constructs a PeepholeOptimizer that reports the size of every method it optimized.
+     */
+    public PeepholeOptimizer() {
+        this(true);
+    }
+
+    /**
+     * Constructs a PeepholeOptimizer. Without the sizes of the methods, the report only holds the totals of
+     * each pattern, and a long-running compiler does not keep a line for every method it optimized.
+     *
+     * @param methodSizes true to measure and report the size of every method before and after
+     */
+    public PeepholeOptimizer(boolean methodSizes) {
+        this.results = methodSizes ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Optimizes the instructions of a method in place.
+     *
+     * @param owner the name of the class the method belongs to, used in the report
+     * @param method the method to optimize
+     */
+    public void optimize(String owner, MethodNode method) {
+        int before = results != null ? codeSize(method) : 0;
+        InsnList instructions = method.instructions;
+        Set<LabelNode> targets = targets(method);
+        int constantCount = 0;
+        int incrementCount = 0;
+        int reloadCount = 0;
+        int jumpCount = 0;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            AbstractInsnNode insn = instructions.getFirst();
+            while (insn != null) {
+                AbstractInsnNode replacement;
+                if ((replacement = shortenConstant(instructions, insn)) != null) {
+                    constantCount++;
+                } else if ((replacement = increment(instructions, insn)) != null) {
+                    incrementCount++;
+                } else if ((replacement = reload(instructions, insn, targets)) != null) {
+                    reloadCount++;
+                } else if ((replacement = jumpToNext(instructions, insn)) != null) {
+                    jumpCount++;
+                }
+                if (replacement != null) {
+                    changed = true;
+                    insn = replacement;
+                } else {
+                    insn = insn.getNext();
+                }
+            }
+        }
+
+        int after = results != null ? codeSize(method) : 0;
+        synchronized (this) {
+            if (results != null) {
+                results.add(new MethodResult(owner + "." + method.name, before, after));
+            }
+            constants += constantCount;
+            increments += incrementCount;
+            reloads += reloadCount;
+            jumps += jumpCount;
+        }
+    }
+
+    /**
+     * Replaces an integer {@code LDC} with the shortest instruction pushing the same value.
+     *
+     * @param instructions the instructions of the method
+     * @param insn the instruction to look at
+     * @return the instruction to continue from, or null if the pattern does not match
+     */
+    private static AbstractInsnNode shortenConstant(InsnList instructions, AbstractInsnNode insn) {
+        if (insn.getOpcode() != LDC || !(((LdcInsnNode) insn).cst instanceof Integer)) {
+            return null;
+        }
+        AbstractInsnNode push = push((Integer) ((LdcInsnNode) insn).cst);
+        if (push == null) {
+            return null;
+        }
+        instructions.set(insn, push);
+        return push;
+    }
+
+    /**
+     * Replaces an addition or subtraction of a constant to the variable it is stored back into with an
+     * {@code IINC}.
+     *
+     * @param instructions the instructions of the method
+     * @param insn the instruction to look at
+     * @return the instruction to continue from, or null if the pattern does not match
+     */
+    private static AbstractInsnNode increment(InsnList instructions, AbstractInsnNode insn) {
+        Integer delta = incrementDelta(insn);
+        if (delta == null) {
+            return null;
+        }
+        AbstractInsnNode store = insn.getNext().getNext().getNext();
+        IincInsnNode iinc = new IincInsnNode(((VarInsnNode) store).var, delta);
+        instructions.insertBefore(insn, iinc);
+        for (int i = 0; i < 4; i++) {
+            AbstractInsnNode next = insn.getNext();
+            instructions.remove(insn);
+            insn = next;
+        }
+        return iinc;
+    }
+
+    /**
+     * Matches the four instructions that add a constant to a variable and store the sum back into it.
+     *
+     * @param insn the first of the instructions
+     * @return the amount added, or null if the instructions do not match or the amount does not fit an
+     *         {@code IINC}
+     */
+    private static Integer incrementDelta(AbstractInsnNode insn) {
+        AbstractInsnNode second = insn.getNext();
+        AbstractInsnNode operation = second != null ? second.getNext() : null;
+        AbstractInsnNode store = operation != null ? operation.getNext() : null;
+        if (store == null || store.getOpcode() != ISTORE) {
+            return null;
+        }
+        int var = ((VarInsnNode) store).var;
+
+        Integer constant;
+        if (isLoad(insn, ILOAD, var) && (operation.getOpcode() == IADD || operation.getOpcode() == ISUB)) {
+            constant = constant(second);
+        } else if (isLoad(second, ILOAD, var) && operation.getOpcode() == IADD) {
+            constant = constant(insn);
+        } else {
+            return null;
+        }
+        if (constant == null) {
+            return null;
+        }
+        long delta = operation.getOpcode() == ISUB ? -(long) constant : constant;
+        if (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) {
+            return null;
+        }
+        return (int) delta;
+    }
+
+    /**
+     * Replaces a load of the variable that was just stored with a duplicate of the value before the store.
+     *
+     * @param instructions the instructions of the method
+     * @param insn the instruction to look at
+     * @param targets the labels jumps and exception handlers refer to
+     * @return the instruction to continue from, or null if the pattern does not match
+     */
+    private static AbstractInsnNode reload(InsnList instructions, AbstractInsnNode insn, Set<LabelNode> targets) {
+        int load;
+        if (insn.getOpcode() == ISTORE) {
+            load = ILOAD;
+        } else if (insn.getOpcode() == ASTORE) {
+            load = ALOAD;
+        } else {
+            return null;
+        }
+        AbstractInsnNode next = insn.getNext();
+        while (next instanceof LineNumberNode || next instanceof LabelNode && !targets.contains(next)) {
+            next = next.getNext(); // debug information between the statements
+        }
+        if (next == null || !isLoad(next, load, ((VarInsnNode) insn).var)) {
+            return null;
+        }
+        if (incrementDelta(next) != null) {
+            return null; // the reload starts an increment, which saves more
+        }
+        instructions.insertBefore(insn, new InsnNode(DUP));
+        instructions.remove(next);
+        return insn;
+    }
+
+    /**
+     * Removes a {@code GOTO} to the label that immediately follows it.
+     *
+     * @param instructions the instructions of the method
+     * @param insn the instruction to look at
+     * @return the instruction to continue from, or null if the pattern does not match
+     */
+    private static AbstractInsnNode jumpToNext(InsnList instructions, AbstractInsnNode insn) {
+        if (insn.getOpcode() != GOTO) {
+            return null;
+        }
+        AbstractInsnNode next = insn.getNext();
+        while (next != null && next.getOpcode() < 0) {
+            if (next == ((JumpInsnNode) insn).label) {
+                instructions.remove(insn);
+                return next;
+            }
+            next = next.getNext();
+        }
+        return null;
+    }
+
+    /**
+     * Collects the labels of a method that jumps and exception handlers refer to. Jumps removed later only
+     * leave labels in the set that no longer need to be.
+     *
+     * @param method the method
+     * @return the labels
+     */
+    private static Set<LabelNode> targets(MethodNode method) {
+        Set<LabelNode> targets = new HashSet<>();
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof JumpInsnNode) {
+                targets.add(((JumpInsnNode) insn).label);
+            }
+        }
+        for (TryCatchBlockNode block : method.tryCatchBlocks) {
+            targets.add(block.start);
+            targets.add(block.end);
+            targets.add(block.handler);
+        }
+        return targets;
+    }
+
+    /**
+     * Creates the shortest instruction other than {@code LDC} that pushes an integer.
+     *
+     * @param value the integer to push
+     * @return the instruction, or null if the value needs {@code LDC}
+     */
+    private static AbstractInsnNode push(int value) {
+        if (value >= -1 && value <= 5) {
+            return new InsnNode(ICONST_0 + value);
+        }
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            return new IntInsnNode(BIPUSH, value);
+        }
+        if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            return new IntInsnNode(SIPUSH, value);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the integer pushed by a constant instruction.
+     *
+     * @param insn the instruction
+     * @return the integer, or null if the instruction does not push an integer constant
+     */
+    private static Integer constant(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        if (opcode >= ICONST_M1 && opcode <= ICONST_5) {
+            return opcode - ICONST_0;
+        }
+        if (opcode == BIPUSH || opcode == SIPUSH) {
+            return ((IntInsnNode) insn).operand;
+        }
+        if (opcode == LDC && ((LdcInsnNode) insn).cst instanceof Integer) {
+            return (Integer) ((LdcInsnNode) insn).cst;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if an instruction loads the given variable.
+     *
+     * @param insn the instruction
+     * @param opcode the load opcode, ILOAD or ALOAD
+     * @param var the local variable index
+     * @return true if the instruction is that load
+     */
+    private static boolean isLoad(AbstractInsnNode insn, int opcode, int var) {
+        return insn.getOpcode() == opcode && ((VarInsnNode) insn).var == var;
+    }
+
+    /**
+     * Measures the size in bytes of the code of a method by writing its instructions into a throwaway
+     * class and reading the offset of a label placed after the last one.
+     *
+     * @param method the method to measure
+     * @return the code size in bytes
+     */
+    static int codeSize(MethodNode method) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(V1_8, ACC_PUBLIC, "Size", null, "java/lang/Object", null);
+        MethodVisitor visitor = writer.visitMethod(method.access, method.name, method.desc, null, null);
+        visitor.visitCode();
+        method.instructions.resetLabels();
+        method.instructions.accept(visitor);
+        method.instructions.resetLabels();
+        Label end = new Label();
+        visitor.visitLabel(end);
+        visitor.visitMaxs(0, 0);
+        visitor.visitEnd();
+        return end.getOffset();
+    }
+
+    /**
+     * Returns the peephole report: the code size saved in every optimized method and how often each
+     * pattern fired.
+     *
+     * @return the report, one line per method followed by the totals, or only the totals of each pattern
+     *         when the method sizes are not reported
+     */
+    public synchronized String report() {
+        StringBuilder sb = new StringBuilder();
+        if (results != null) {
+            appendMethodSizes(sb);
+        }
+        sb.append(String.format("Constants shortened: %d, increments: %d, reloads replaced: %d, jumps removed: %d%n",
+                constants, increments, reloads, jumps));
+        return sb.toString();
+    }
+
+    /**
+     * Appends the code size of every optimized method before and after, and the totals.
+     *
+     * @param sb the report
+     */
+    private void appendMethodSizes(StringBuilder sb) {
+        sb.append(String.format("%-40s %12s %12s %8s%n", "Method", "Bytes before", "Bytes after", "Saved"));
+        long before = 0;
+        long after = 0;
+        for (MethodResult result : results) {
+            sb.append(String.format("%-40s %12d %12d %8d%n", result.name, result.before, result.after, result.before - result.after));
+            before += result.before;
+            after += result.after;
+        }
+        sb.append(String.format("%-40s %12d %12d %8d%n", "Total", before, after, before - after));
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * The ProgramJar class writes compiled KnightCode programs into a single jar instead of loose class
+ * files. Entries are streamed straight into the jar as the programs are added, without temporary files.
+ * The jar starts with a manifest naming the KnightLauncher as its main class and holds the runtime support
+ * classes the programs call once, so it runs on its own:
+ *
+ * <pre>
+ * java -jar programs.jar program1
+ * </pre>
+ *
+ * <p>When the jar is closed an index listing the name of every program is added under
+ * {@value #INDEX}, which the launcher reads to find a program by name and to list the programs.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+public class ProgramJar implements Closeable {
+    // The index of the programs in the jar, one class name per line
+    static final String INDEX = "META-INF/knightcode/programs";
+    // The classes every jar holds: the support code the programs call and the launcher
+    private static final Class<?>[] RUNTIME_CLASSES = {KnightRuntime.class, KnightLauncher.class};
+
+    private final Path path;
+    private final JarOutputStream jar;
+    private final List<String> programs = new ArrayList<>();
+
+    /**
+     * Creates a jar holding the manifest and the runtime support classes, ready for programs to be added.
+     *
+     * @param path the path of the jar, replaced if it exists
+     * @throws IOException if the jar cannot be written or a runtime class cannot be read
+     */
+    public ProgramJar(Path path) throws IOException {
+        this.path = path;
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.MAIN_CLASS, KnightLauncher.class.getName());
+        attributes.put(new Attributes.Name("Created-By"), "kcc " + KccCompiler.VERSION);
+        this.jar = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16), manifest);
+        try {
+            for (Class<?> runtimeClass : RUNTIME_CLASSES) {
+                String name = runtimeClass.getName().replace('.', '/') + ".class";
+                try (InputStream in = runtimeClass.getResourceAsStream("/" + name)) {
+                    if (in == null) {
+                        throw new IOException("Runtime class not found on the class path: " + name);
+                    }
+                    jar.putNextEntry(new JarEntry(name));
+                    in.transferTo(jar);
+                    jar.closeEntry();
+                }
+            }
+        } catch (IOException e) {
+            jar.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the class of a compiled program. Programs are added from one thread at a time.
+     *
+     * @param className the name of the class, without the output package
+     * @param bytecode the bytecode of the class
+     * @throws IOException if the class cannot be written, or the jar already holds a program of that name
+     */
+    public void add(String className, byte[] bytecode) throws IOException {
+        jar.putNextEntry(new JarEntry("output/" + className + ".class"));
+        jar.write(bytecode);
+        jar.closeEntry();
+        programs.add(className);
+    }
+
+    /**
+     * Returns the path of the jar.
+     *
+     * @return the path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of programs added so far.
+     *
+     * @return the number of programs
+     */
+    public int size() {
+        return programs.size();
+    }
+
+    /**
+     * Writes the index of the programs, sorted by name, and finishes the jar.
+     *
+     * @throws IOException if the jar cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            Collections.sort(programs);
+            jar.putNextEntry(new JarEntry(INDEX));
+            jar.write((String.join("\n", programs) + "\n").getBytes(StandardCharsets.UTF_8));
+            jar.closeEntry();
+        } finally {
+            jar.close();
+        }
+    }
+}
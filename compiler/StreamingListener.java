@@ -0,0 +1,311 @@
+/**
+ * The StreamingListener class builds the IR of a KnightCode program while it is being parsed, for the
+ * streaming mode of the compiler. It is added to a parser that does not build a parse tree, so rule
+ * contexts hold their own tokens but not the contexts of the rules they invoke; the listener instead keeps
+ * what those rules produced on its own stacks, much as a parser with actions would. Declarations are
+ * registered in the symbol table as they end, and every statement between BEGIN and END is handed to the
+ * consumer as soon as its parse ends, after which nothing refers to its contexts anymore.
+ *
+ * <p>Once the parser has reported a syntax error nothing more is built. An error found while building,
+ * such as a reference to an undeclared variable, is kept until the parse ends rather than thrown through
+ * the parser, whose rules would go on exiting while the exception passes them.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import lexparse.KnightCodeBaseListener;
+import lexparse.KnightCodeParser;
+
+public class StreamingListener extends KnightCodeBaseListener {
+    private final SymbolTable symbolTable;
+    private final ErrorReporter errors;
+    private final Consumer<Ir.Stmt> consumer;
+    private final Deque<Ir.Expr> expressions = new ArrayDeque<>(); // operands of the expressions being parsed
+    private final Deque<Ir.Relation> relations = new ArrayDeque<>(); // relational operators not yet used
+    private final Deque<Block> blocks = new ArrayDeque<>(); // the IF and WHILE statements being parsed
+    private Ir.Stmt statement; // the statement parsed last, until the stat rule around it ends
+    private String programName;
+    private long tokens;
+    private RuntimeException failure;
+    private int undeclaredErrors; // the errors reported by this listener rather than by the parser
+
+    /**
+     * The statements of an IF or WHILE statement parsed so far.
+     */
+    private static class Block {
+        final List<Ir.Stmt> statements = new ArrayList<>();
+        int elseStart = -1; // the index of the first ELSE statement, -1 before ELSE
+    }
+
+    /**
+     * Constructs a new StreamingListener.
+     *
+     * @param symbolTable the symbol table the declarations are registered in
+     * @param errors the reporter the parser reports syntax errors to, and the listener the variables that
+     *               are not declared
+     * @param consumer receives every top-level statement in source order
+     */
+    public StreamingListener(SymbolTable symbolTable, ErrorReporter errors, Consumer<Ir.Stmt> consumer) {
+        this.symbolTable = symbolTable;
+        this.errors = errors;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Starts collecting the statements of an IF or WHILE statement.
+     *
+     * @param ctx the context of the rule being entered
+     */
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        if (ctx instanceof KnightCodeParser.DecisionContext || ctx instanceof KnightCodeParser.LoopContext) {
+            blocks.push(new Block());
+        }
+    }
+
+    /**
+     * Builds whatever the rule that just ended produces, unless building has stopped.
+     *
+     * @param ctx the context of the rule, holding its tokens
+     */
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        if (failure != null || errors.getErrors().size() > undeclaredErrors) {
+            return; // the stacks no longer match the rules after a syntax error
+        }
+        try {
+            exit(ctx);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Counts the tokens and notes the program name and where the ELSE statements start.
+     *
+     * @param node the token the parser consumed
+     */
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        tokens++;
+        if (programName == null && node.getSymbol().getType() == KnightCodeParser.ID) {
+            programName = node.getText(); // the first identifier follows PROGRAM
+        } else if (!blocks.isEmpty() && "ELSE".equals(node.getText())) {
+            blocks.peek().elseStart = blocks.peek().statements.size();
+        }
+    }
+
+    /**
+     * Builds the IR produced by a rule that ended.
+     *
+     * @param ctx the context of the rule
+     */
+    private void exit(ParserRuleContext ctx) {
+        if (ctx instanceof KnightCodeParser.NumberContext) {
+            expressions.push(KccVisitor.at(new Ir.IntConst(Integer.parseInt(ctx.start.getText())), ctx));
+        } else if (ctx instanceof KnightCodeParser.IdContext) {
+            expressions.push(variable(ctx.start.getText(), ctx));
+        } else if (ctx instanceof KnightCodeParser.MultiplicationContext) {
+            binary(Ir.Operator.MUL, ctx);
+        } else if (ctx instanceof KnightCodeParser.DivisionContext) {
+            binary(Ir.Operator.DIV, ctx);
+        } else if (ctx instanceof KnightCodeParser.AdditionContext) {
+            binary(Ir.Operator.ADD, ctx);
+        } else if (ctx instanceof KnightCodeParser.SubtractionContext) {
+            binary(Ir.Operator.SUB, ctx);
+        } else if (ctx instanceof KnightCodeParser.ComparisonContext) {
+            Ir.Expr right = expressions.pop();
+            Ir.Expr left = expressions.pop();
+            expressions.push(KccVisitor.at(new Ir.Compare(relations.pop(), left, right), ctx));
+        } else if (ctx instanceof KnightCodeParser.CompContext) {
+            relations.push(KccVisitor.relation((KnightCodeParser.CompContext) ctx));
+        } else if (ctx instanceof KnightCodeParser.VariableContext) {
+            // The variable rule starts with the type and ends with the name
+            symbolTable.register(ctx.stop.getText(), VarType.of(ctx.start.getText()));
+        } else if (ctx instanceof KnightCodeParser.SetvarContext) {
+            buildSet((KnightCodeParser.SetvarContext) ctx);
+        } else if (ctx instanceof KnightCodeParser.PrintContext) {
+            buildPrint((KnightCodeParser.PrintContext) ctx);
+        } else if (ctx instanceof KnightCodeParser.ReadContext) {
+            statement = KccVisitor.at(new Ir.Read(variable(((KnightCodeParser.ReadContext) ctx).ID().getText(), ctx)), ctx);
+        } else if (ctx instanceof KnightCodeParser.DecisionContext) {
+            Block block = blocks.pop();
+            int elseStart = block.elseStart >= 0 ? block.elseStart : block.statements.size();
+            List<Ir.Stmt> thenBody = new ArrayList<>(block.statements.subList(0, elseStart));
+            List<Ir.Stmt> elseBody = new ArrayList<>(block.statements.subList(elseStart, block.statements.size()));
+            statement = KccVisitor.at(new Ir.If(condition(ctx), thenBody, elseBody), ctx);
+        } else if (ctx instanceof KnightCodeParser.LoopContext) {
+            statement = KccVisitor.at(new Ir.While(condition(ctx), blocks.pop().statements), ctx);
+        } else if (ctx instanceof KnightCodeParser.StatContext) {
+            finishStatement(ctx);
+        }
+    }
+
+    /**
+     * Adds a finished statement to the IF or WHILE statement around it, or hands it to the consumer when
+     * it is a top-level statement. An expression used as a statement becomes an Evaluate statement.
+     *
+     * @param ctx the context of the stat rule
+     */
+    private void finishStatement(ParserRuleContext ctx) {
+        Ir.Stmt finished = statement;
+        statement = null;
+        if (!expressions.isEmpty()) {
+            finished = KccVisitor.at(new Ir.Evaluate(expressions.pop()), ctx);
+        }
+        if (finished == null) {
+            return; // dropped because of an error
+        }
+        if (blocks.isEmpty()) {
+            consumer.accept(finished);
+        } else {
+            blocks.peek().statements.add(finished);
+        }
+    }
+
+    /**
+     * Builds a SET statement, or reports an error if the variable is not declared.
+     *
+     * @param ctx the context of the SET statement
+     */
+    private void buildSet(KnightCodeParser.SetvarContext ctx) {
+        Ir.Expr value;
+        if (ctx.STRING() != null) {
+            value = KccVisitor.at(new Ir.StringConst(KccVisitor.unquote(ctx.STRING().getText())), ctx);
+        } else {
+            value = expressions.pop();
+        }
+        String varName = ctx.ID().getText();
+        if (!symbolTable.isDeclared(varName)) {
+            undeclared(varName, ctx);
+            return;
+        }
+        statement = KccVisitor.at(new Ir.Assign(variable(varName, ctx), value), ctx);
+    }
+
+    /**
+     * Builds a PRINT statement, or reports an error if the variable is not declared.
+     *
+     * @param ctx the context of the PRINT statement
+     */
+    private void buildPrint(KnightCodeParser.PrintContext ctx) {
+        if (ctx.STRING() != null) {
+            Ir.Expr text = KccVisitor.at(new Ir.StringConst(KccVisitor.unquote(ctx.STRING().getText())), ctx);
+            statement = KccVisitor.at(new Ir.Print(text), ctx);
+            return;
+        }
+        String varName = ctx.ID().getText();
+        if (!symbolTable.isDeclared(varName)) {
+            undeclared(varName, ctx);
+            return;
+        }
+        statement = KccVisitor.at(new Ir.Print(variable(varName, ctx)), ctx);
+    }
+
+    /**
+     * Builds the condition of an IF or WHILE statement from its two terms, the tokens after the keyword.
+     *
+     * @param ctx the context of the IF or WHILE statement
+     * @return the IR of the condition
+     */
+    private Ir.Compare condition(ParserRuleContext ctx) {
+        Ir.Expr left = term(ctx.getChild(1).getText(), ctx);
+        Ir.Expr right = term(ctx.getChild(2).getText(), ctx);
+        return KccVisitor.at(new Ir.Compare(relations.pop(), left, right), ctx);
+    }
+
+    /**
+     * Builds the IR of a term in a condition, a numeric literal or a variable name.
+     *
+     * @param term the text of the term
+     * @param ctx the context the term appears in
+     * @return the IR of the term
+     */
+    private Ir.Expr term(String term, ParserRuleContext ctx) {
+        if (Character.isDigit(term.charAt(0))) {
+            return KccVisitor.at(new Ir.IntConst(Integer.parseInt(term)), ctx);
+        }
+        return variable(term, ctx);
+    }
+
+    /**
+     * Replaces the two operands on top of the stack by an arithmetic operation on them.
+     *
+     * @param operator the arithmetic operator
+     * @param ctx the context of the operation
+     */
+    private void binary(Ir.Operator operator, ParserRuleContext ctx) {
+        Ir.Expr right = expressions.pop();
+        Ir.Expr left = expressions.pop();
+        expressions.push(KccVisitor.at(new Ir.Binary(operator, left, right), ctx));
+    }
+
+    /**
+     * Reports a variable that is not declared.
+     *
+     * @param varName the name of the variable
+     * @param ctx the context of the statement using the variable
+     */
+    private void undeclared(String varName, ParserRuleContext ctx) {
+        undeclaredErrors++;
+        errors.error(ctx.start.getLine(), ctx.start.getCharPositionInLine(), "variable '" + varName + "' is not declared");
+    }
+
+    /**
+     * Resolves a variable against the symbol table.
+     *
+     * @param varName the name of the variable
+     * @param ctx the context the variable is used in
+     * @return the IR of the variable reference
+     * @throws RuntimeException if the variable is not declared
+     */
+    private Ir.Var variable(String varName, ParserRuleContext ctx) {
+        int id = symbolTable.lookup(varName);
+        if (id < 0) {
+            throw new RuntimeException("Variable '" + varName + "' is not declared.");
+        }
+        return KccVisitor.at(new Ir.Var(varName, symbolTable.getType(id), id), ctx);
+    }
+
+    /**
+     * Throws the error found while building, if there was one.
+     *
+     * @throws RuntimeException the error
+     */
+    public void rethrow() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the name after PROGRAM.
+     *
+     * @return the program name, or null if it has not been parsed yet
+     */
+    public String getProgramName() {
+        return programName;
+    }
+
+    /**
+     * Returns the number of tokens the parser consumed.
+     *
+     * @return the number of tokens
+     */
+    public long getTokenCount() {
+        return tokens;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * The StrengthReduction pass replaces multiplications and divisions by constant powers of two with
+ * shifts. A multiplication {@code x * 2^k} becomes {@code x << k}, which gives the same wrapped result for
+ * every int. A plain right shift rounds toward negative infinity while division rounds toward zero, so
+ * {@code x / 2^k} becomes {@code (x + ((x >> 31) >>> (32 - k))) >> k}, which adds the rounding bias
+ * only for negative {@code x}. Because that form reads {@code x} twice, divisions are only reduced when
+ * the dividend is a variable.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+public class StrengthReduction implements IrPass {
+
+    @Override
+    public String getName() {
+        return "strength-reduction";
+    }
+
+    @Override
+    public void run(Ir.Program program) {
+        Ir.rewriteExpressions(program.body, StrengthReduction::reduce);
+    }
+
+    /**
+     * Reduces the multiplications and divisions in an expression, children first.
+     *
+     * @param expr the expression
+     * @return the reduced expression, which may be the same node
+     */
+    static Ir.Expr reduce(Ir.Expr expr) {
+        if (expr instanceof Ir.Compare) {
+            Ir.Compare compare = (Ir.Compare) expr;
+            compare.left = reduce(compare.left);
+            compare.right = reduce(compare.right);
+            return compare;
+        }
+        if (!(expr instanceof Ir.Binary)) {
+            return expr;
+        }
+
+        Ir.Binary binary = (Ir.Binary) expr;
+        binary.left = reduce(binary.left);
+        binary.right = reduce(binary.right);
+
+        if (binary.operator == Ir.Operator.MUL) {
+            int shift = log2(binary.right);
+            if (shift > 0) {
+                return node(new Ir.Binary(Ir.Operator.SHL, binary.left, constant(shift, expr)), expr);
+            }
+            shift = log2(binary.left);
+            if (shift > 0) {
+                return node(new Ir.Binary(Ir.Operator.SHL, binary.right, constant(shift, expr)), expr);
+            }
+        } else if (binary.operator == Ir.Operator.DIV && binary.left instanceof Ir.Var) {
+            int shift = log2(binary.right);
+            if (shift > 0) {
+                Ir.Expr x = binary.left;
+                Ir.Expr sign = node(new Ir.Binary(Ir.Operator.SHR, x, constant(31, expr)), expr);
+                Ir.Expr bias = node(new Ir.Binary(Ir.Operator.USHR, sign, constant(32 - shift, expr)), expr);
+                Ir.Expr biased = node(new Ir.Binary(Ir.Operator.ADD, x, bias), expr);
+                return node(new Ir.Binary(Ir.Operator.SHR, biased, constant(shift, expr)), expr);
+            }
+        }
+        return binary;
+    }
+
+    /**
+     * Returns the exponent of a constant power of two between 2 and 2^30.
+     *
+     * @param expr the expression
+     * @return the exponent, or 0 if the expression is not such a constant
+     */
+    private static int log2(Ir.Expr expr) {
+        if (!(expr instanceof Ir.IntConst)) {
+            return 0;
+        }
+        int value = ((Ir.IntConst) expr).value;
+        if (value < 2 || Integer.bitCount(value) != 1) {
+            return 0;
+        }
+        return Integer.numberOfTrailingZeros(value);
+    }
+
+    private static Ir.IntConst constant(int value, Ir.Expr replaced) {
+        return node(new Ir.IntConst(value), replaced);
+    }
+
+    private static <T extends Ir.Expr> T node(T node, Ir.Expr replaced) {
+        node.line = replaced.line;
+        return node;
+    }
+}
@@ -1,6 +1,8 @@
 /**
- * The SymbolTable class manages variable information. It stores variable
- * types and their corresponding indexes which are used for bytecode generation and variable management.
+ * The SymbolTable class manages variable information. Every declared variable is interned to a dense
+ * id, its position in declaration order, and the name and type of each id are kept in arrays. A name
+ * is resolved to its id once, through an open addressing hash table of ids, and everything after that
+ * works with the id and the VarType, so no later phase compares type names or looks a name up again.
  *
  * @author Brent Reynolds
  * @version 1.0
@@ -10,64 +12,67 @@
  */
 package compiler;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class SymbolTable {
-    private final Map<String, VariableInfo> variables = new HashMap<>();
-    private int nextIndex = 1; // Tracks the next available index for local variables
+    private static final int INITIAL_CAPACITY = 16;
 
-    /**
-     * Represents information about a variable including its type and index.
-     */
-    private static class VariableInfo {
-        String type; // Type of the variable (INTEGER or STRING)
-        int index; // Index of the variable
-
-        /**
-         * Constructs a new VariableInfo object.
-         *
-         * @param type  the type of the variable
-         * @param index the index where the variable is stored
-         */
-        VariableInfo(String type, int index) {
-            this.type = type;
-            this.index = index;
-        }
-    }
+    private String[] names = new String[INITIAL_CAPACITY]; // the name of every id
+    private byte[] types = new byte[INITIAL_CAPACITY]; // the VarType tag of every id
+    private int[] table = new int[2 * INITIAL_CAPACITY]; // id + 1 of the name hashed to each bucket, 0 if empty
+    private int size;
 
     /**
-     * Registers a new variable in the symbol table with its type. Assigns an index automatically.
+     * Registers a new variable in the symbol table with its type and assigns it the next id. A variable
+     * declared again keeps its first id and type.
      *
      * @param name the name of the variable to register
      * @param type the type of the variable to register
+     * @return the id of the variable
      */
-    public void register(String name, String type) {
-        if (!variables.containsKey(name)) {
-            variables.put(name, new VariableInfo(type, nextIndex++));
+    public int register(String name, VarType type) {
+        int bucket = bucket(name);
+        if (table[bucket] != 0) {
+            return table[bucket] - 1;
+        }
+        if (size == names.length) {
+            grow();
+            bucket = bucket(name);
         }
+        names[size] = name;
+        types[size] = (byte) type.ordinal();
+        table[bucket] = ++size;
+        return size - 1;
     }
 
     /**
-     * Retrieves the type of a variable by its name.
+     * Resolves the name of a variable to its id.
      *
      * @param name the name of the variable
-     * @return the type of the variable if it exists, null otherwise
+     * @return the id of the variable if it is declared, -1 otherwise
      */
-    public String getType(String name) {
-        VariableInfo info = variables.get(name);
-        return (info != null) ? info.type : null;
+    public int lookup(String name) {
+        return table[bucket(name)] - 1;
     }
 
     /**
-     * Retrieves the index of a variable by its name.
+     * Returns the name of a variable.
      *
-     * @param name the name of the variable
-     * @return the index of the variable if it exists, -1 otherwise
+     * @param id the id of the variable
+     * @return the name of the variable
      */
-    public int getIndex(String name) {
-        VariableInfo info = variables.get(name);
-        return (info != null) ? info.index : -1;
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the type of a variable.
+     *
+     * @param id the id of the variable
+     * @return the type of the variable
+     */
+    public VarType getType(int id) {
+        return VarType.ofTag(types[id]);
     }
 
     /**
@@ -77,7 +82,51 @@ public class SymbolTable {
      * @return true if the variable is declared, false otherwise
      */
     public boolean isDeclared(String name) {
-        return variables.containsKey(name);
+        return lookup(name) >= 0;
+    }
+
+    /**
+     * Returns the number of variables declared in the symbol table, which is one more than the largest id.
+     *
+     * @return the number of variables
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the bucket of a name: the bucket holding it, or the empty bucket it would be placed in. The
+     * table is kept at most half full, so the linear probing ends quickly.
+     *
+     * @param name the name
+     * @return the index of the bucket
+     */
+    private int bucket(String name) {
+        int mask = table.length - 1;
+        int hash = name.hashCode();
+        int bucket = (hash ^ (hash >>> 16)) & mask;
+        while (table[bucket] != 0 && !names[table[bucket] - 1].equals(name)) {
+            bucket = (bucket + 1) & mask;
+        }
+        return bucket;
+    }
+
+    /**
+     * Doubles the capacity of the arrays and rehashes the names.
+     */
+    private void grow() {
+        names = Arrays.copyOf(names, names.length * 2);
+        types = Arrays.copyOf(types, types.length * 2);
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int hash = names[id].hashCode();
+            int bucket = (hash ^ (hash >>> 16)) & mask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = id + 1;
+        }
     }
 
     /**
@@ -89,12 +138,10 @@ public class SymbolTable {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Symbol Table Contents:\n");
-        for (Map.Entry<String, VariableInfo> entry : variables.entrySet()) {
-            String name = entry.getKey();
-            VariableInfo info = entry.getValue();
-            sb.append("Name: ").append(name)
-            .append(", Type: ").append(info.type)
-            .append(", Index: ").append(info.index)
+        for (int id = 0; id < size; id++) {
+            sb.append("Name: ").append(names[id])
+            .append(", Type: ").append(getType(id))
+            .append(", Id: ").append(id)
             .append("\n");
         }
         return sb.toString();
@@ -0,0 +1,77 @@
+/**
+ * The VarType enum lists the types of KnightCode variables together with what the bytecode generator
+ * needs to know about each: its descriptor, its verification type in stack map frames and the opcodes
+ * that load and store it in a local variable or an array element. The symbol table keeps the type of
+ * every variable as one of these instead of as the keyword from the source.
+ *
+ * @author Brent Reynolds
+ * @version 1.0
+ * @assignment Assignment 5
+ * @course CS322 - Compiler Construction
+ * @term Spring 2024
+ */
+package compiler;
+
+import org.objectweb.asm.Opcodes;
+
+public enum VarType {
+    INTEGER("I", Opcodes.INTEGER, Opcodes.ILOAD, Opcodes.ISTORE, Opcodes.IALOAD, Opcodes.IASTORE),
+    STRING("Ljava/lang/String;", "java/lang/String", Opcodes.ALOAD, Opcodes.ASTORE, Opcodes.AALOAD, Opcodes.AASTORE);
+
+    private static final VarType[] TYPES = values();
+
+    final String descriptor;
+    final Object verificationType;
+    final int loadOpcode;
+    final int storeOpcode;
+    final int arrayLoadOpcode;
+    final int arrayStoreOpcode;
+
+    /**
+     * Constructs a type.
+     *
+     * @param descriptor the field descriptor of the type
+     * @param verificationType the verification type of the type, as used in stack map frames
+     * @param loadOpcode the opcode loading a local variable of the type
+     * @param storeOpcode the opcode storing a local variable of the type
+     * @param arrayLoadOpcode the opcode loading an element of an array of the type
+     * @param arrayStoreOpcode the opcode storing an element of an array of the type
+     */
+    VarType(String descriptor, Object verificationType, int loadOpcode, int storeOpcode, int arrayLoadOpcode,
+            int arrayStoreOpcode) {
+        this.descriptor = descriptor;
+        this.verificationType = verificationType;
+        this.loadOpcode = loadOpcode;
+        this.storeOpcode = storeOpcode;
+        this.arrayLoadOpcode = arrayLoadOpcode;
+        this.arrayStoreOpcode = arrayStoreOpcode;
+    }
+
+    /**
+     * Returns the type of a tag, the ordinal of the type.
+     *
+     * @param tag the tag
+     * @return the type
+     */
+    static VarType ofTag(int tag) {
+        return TYPES[tag];
+    }
+
+    /**
+     * Returns the type named by a type keyword of the source.
+     *
+     * @param keyword the keyword, INTEGER or STRING
+     * @return the type
+     * @throws RuntimeException if the keyword names no type
+     */
+    public static VarType of(String keyword) {
+        switch (keyword) {
+            case "INTEGER":
+                return INTEGER;
+            case "STRING":
+                return STRING;
+            default:
+                throw new RuntimeException("Unsupported variable type: " + keyword);
+        }
+    }
+}
@@ -10,13 +10,11 @@
  */
 package compiler;
 
-import org.antlr.v4.runtime.CharStreams;
-import lexparse.KnightCodeLexer;
-import lexparse.KnightCodeParser;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.CharStreams;
 
 public class kcc {
 
@@ -24,15 +22,46 @@ public class kcc {
      * Entry point for the compiler. It processes command line arguments to get input and output file paths,
      * sets up the parsing and compiling environment, and initiates the compilation process.
      *
-     * @param args command line arguments expecting two entries: the path to the input .kc file and the path for the output .class file.
+     * @param args command line arguments expecting two entries: the path to the input .kc file and the path for the output .class file,
+     *             {@code --batch} followed by the batch mode arguments described in {@link BatchCompiler},
+     *             {@code --run} and the path to the input .kc file to run it in the {@link Interpreter}, or
+     *             {@code --server} followed by the server arguments described in {@link KccServer}.
      */
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.out.println("Usage: java compiler/kcc <path to inputFile.kc> <path to outputFile>");
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            BatchCompiler.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "--server".equals(args[0])) {
+            KccServer.main(Arrays.copyOfRange(args, 1, args.length));
             return;
         }
-        String inputFile = args[0];
-        String outputFile = args[1];
+        CompilerOptions options;
+        try {
+            options = CompilerOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (options.getJar() != null) {
+            System.out.println("--jar can only be used with --batch");
+            return;
+        }
+        if (options.isRun()) {
+            run(options);
+            return;
+        }
+        if (options.getArguments().size() != 2) {
+            System.out.println("Usage: java compiler/kcc [options] <path to inputFile.kc> <path to outputFile>");
+            System.out.println("       java compiler/kcc --batch [options] <output directory> <file.kc | directory>...");
+            System.out.println("       java compiler/kcc --batch [options] --jar <file.jar> <file.kc | directory>...");
+            System.out.println("       java compiler/kcc --run [--tier-up <back-edges>] [options] <path to inputFile.kc>");
+            System.out.println("       java compiler/kcc --server [--port N | --socket path] [--threads N] [--max-cache N]");
+            System.out.println("Options: -O0 | -O1 | -O2, --opt-report, --buffered-output, --max-method-size <bytes>, --unroll N, --target 8|17|21, --verify, --strip-debug, --stats, --profile, --stream, --run, --tier-up N, --threads N, --cache <directory>, --cache-size <MB>");
+            return;
+        }
+        String inputFile = options.getArguments().get(0);
+        String outputFile = options.getArguments().get(1);
         
         // Ensure the output file has a .class extension
         if (!outputFile.endsWith(".class")) {
@@ -40,38 +69,28 @@ public class kcc {
         }
         
         try {
-            var input = CharStreams.fromFileName(inputFile);
-
-            // Initialize the lexer and parser
-            var lexer = new KnightCodeLexer(input);
-            var tokens = new CommonTokenStream(lexer);
-            var parser = new KnightCodeParser(tokens);
-
-            // Generate the parse tree
-            ParseTree tree = parser.file(); 
-
-            // Initialize SymbolTable and BytecodeGenerator
-            SymbolTable symbolTable = new SymbolTable();
-            BytecodeGenerator bytecodeGenerator = new BytecodeGenerator();
+            CompileCache cache = CompileCache.open(options);
 
-            String className = extractClassName(outputFile);
-            bytecodeGenerator.startClass(className); // Initialize class generation
-            bytecodeGenerator.startMainMethod();
-
-            // Instantiate KccVisitor with SymbolTable and BytecodeGenerator
-            KccVisitor visitor = new KccVisitor(symbolTable, bytecodeGenerator);
-            
-            // Visit the parse tree to generate bytecode
-            visitor.visit(tree);
-            
-            // Finalize the main method and class generation
-            bytecodeGenerator.finalizeMainMethod(); 
-            byte[] bytecode = bytecodeGenerator.getBytecode(); 
+            // Lex, parse and generate the bytecode for the class
+            String className = KccCompiler.extractClassName(outputFile);
+            KccCompiler compiler = new KccCompiler(options);
+            CompileStats stats = options.isStats() ? new CompileStats(inputFile) : CompileStats.forEvents(inputFile);
+            byte[] bytecode = compiler.compile(Paths.get(inputFile), className, cache, stats);
             
             // Write the generated bytecode to the specified output file
+            stats.begin("write");
             Files.write(Paths.get(outputFile), bytecode);
+            stats.end();
             System.out.println("Bytecode successfully written to " + outputFile);
-            //System.out.println(symbolTable);
+            if (options.isStats()) {
+                System.out.print(stats.report());
+            }
+            if (cache != null) {
+                System.out.println(cache);
+            }
+            if (options.isOptimizationReport()) {
+                System.out.print(compiler.optimizationReport());
+            }
             System.out.println("----------------------------------------------------------------------------------------------------------------------------------");
             System.out.println("To run the file, use this command: java output/filename");
             System.out.println("----------------------------------------------------------------------------------------------------------------------------------");
@@ -83,16 +102,39 @@ public class kcc {
         
     }
 
-     /**
-     * Extracts the class name from the output file path.
+    /**
+     * Runs a KnightCode file in the interpreter without writing a class file. Hot loops are compiled in
+     * memory as the interpreter reaches the tier-up threshold. With {@code --stats}, how much was
+     * interpreted and compiled is printed to standard error at the end.
      *
-     * @param outputFile the output file path from which to extract the class name
-     * @return the extracted class name
+     * @param options the parsed options, with the path to the input file as the only argument
      */
-    private static String extractClassName(String outputFile) {
-        String fileName = new java.io.File(outputFile).getName();
-        int dotIndex = fileName.lastIndexOf('.');
-        return dotIndex == -1 ? fileName : fileName.substring(0, dotIndex);
+    private static void run(CompilerOptions options) {
+        if (options.getArguments().size() != 1) {
+            System.out.println("Usage: java compiler/kcc --run [--tier-up <back-edges>] [options] <path to inputFile.kc>");
+            return;
+        }
+        if (options.isProfile() || options.isStream()) {
+            System.out.println("--profile and --stream cannot be used with --run");
+            return;
+        }
+        String inputFile = options.getArguments().get(0);
+        Interpreter interpreter;
+        try {
+            Ir.Program program = new KccCompiler(options).buildIr(CharStreams.fromPath(Paths.get(inputFile)),
+                    CompileStats.forEvents(inputFile));
+            interpreter = new Interpreter(program, options);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Error processing input file: " + inputFile);
+            return;
+        }
+        try {
+            interpreter.run();
+        } finally {
+            if (options.isStats()) {
+                System.err.print(interpreter.report());
+            }
+        }
     }
 }
-
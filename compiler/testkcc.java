@@ -1,5 +1,9 @@
 package compiler;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
 import org.antlr.v4.runtime.CharStreams;
 import lexparse.KnightCodeLexer;
 import lexparse.KnightCodeParser;
@@ -7,7 +11,7 @@ import lexparse.KnightCodeLexer;
 import lexparse.KnightCodeParser;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.IterativeParseTreeWalker;
 
 public class testkcc {
     public static void main(String[] args) {
@@ -26,12 +30,12 @@ public class testkcc {
             KnightCodeParser parser = new KnightCodeParser(tokens);
             ParseTree tree = parser.file(); 
 
-            // Walk the parse tree with the debug listener
-            ParseTreeWalker walker = new ParseTreeWalker();
-            DebugListener listener = new DebugListener();
-            walker.walk(listener, tree);
+            // Walk the parse tree with the parse tracer
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            new IterativeParseTreeWalker().walk(new ParseTracer(out, false, Integer.MAX_VALUE, null), tree);
+            out.flush();
 
-            System.out.println("Parse tree walking complete with DebugListener.");
+            System.out.println("Parse tree walking complete with ParseTracer.");
 
         } catch (Exception e) {
             e.printStackTrace();
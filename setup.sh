@@ -28,6 +28,16 @@ sudo wget http://www.antlr.org/download/antlr-4.13.1-complete.jar
 echo "Download ASM 9.6"
 echo "###############################"
 sudo wget "https://repository.ow2.org/nexus/service/local/repositories/releases/content/org/ow2/asm/asm/9.6/asm-9.6.jar"
+sudo wget "https://repository.ow2.org/nexus/service/local/repositories/releases/content/org/ow2/asm/asm-tree/9.6/asm-tree-9.6.jar"
+sudo wget "https://repository.ow2.org/nexus/service/local/repositories/releases/content/org/ow2/asm/asm-analysis/9.6/asm-analysis-9.6.jar"
+sudo wget "https://repository.ow2.org/nexus/service/local/repositories/releases/content/org/ow2/asm/asm-util/9.6/asm-util-9.6.jar"
+
+echo "Download JMH 1.37"
+echo "###############################"
+sudo wget "https://repo1.maven.org/maven2/org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar"
+sudo wget "https://repo1.maven.org/maven2/org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar"
+sudo wget "https://repo1.maven.org/maven2/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar"
+sudo wget "https://repo1.maven.org/maven2/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"
 
 echo "Move jar files to correct location"
 echo "###############################"
@@ -37,7 +47,7 @@ echo "Set Environment Variables"
 echo "###############################"
 echo "export JAVA_HOME=/usr/lib/jvm/default-java" >> /home/$USER/.bashrc
 echo "export PATH=$PATH:$JAVA_HOME/bin" >> /home/$USER/.bashrc
-echo "export CLASSPATH=$CLASSPATH:./:/usr/local/lib/antlr-4.13.1-complete.jar:/usr/local/lib/asm-9.6.jar" >> /home/$USER/.bashrc
+echo "export CLASSPATH=$CLASSPATH:./:/usr/local/lib/antlr-4.13.1-complete.jar:/usr/local/lib/asm-9.6.jar:/usr/local/lib/asm-tree-9.6.jar:/usr/local/lib/asm-analysis-9.6.jar:/usr/local/lib/asm-util-9.6.jar" >> /home/$USER/.bashrc
 echo "export KC=/home/$USER/Documents/KnightCodeSkeleton" >> /home/$USER/.bashrc
 
 echo "Create Aliases"